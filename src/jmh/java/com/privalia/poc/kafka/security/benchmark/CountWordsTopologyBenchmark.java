@@ -0,0 +1,105 @@
+package com.privalia.poc.kafka.security.benchmark;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import com.privalia.poc.kafka.security.streams.KafkaStreamsReducerStream;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end throughput of the count-words topology (messages per millisecond)
+ * with a TopologyTestDriver, so no broker is required.
+ * The wall clock of the driver advances a millisecond per message, so the batch pre-aggregation flushes
+ * its partial counts every pre-aggregation-flush-ms messages, as it does with a real clock.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CountWordsTopologyBenchmark {
+
+    private static final String INPUT_TOPIC = "sim-poc-test1";
+
+    private static final String OUTPUT_TOPIC = "sim-poc-test2";
+
+    private static final int TEXTS = 1024;
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    @Param({"none", "message", "batch"})
+    public String preAggregation;
+
+    private final String[] texts = new String[TEXTS];
+
+    private final ConsumerRecordFactory<String, String> recordFactory =
+            new ConsumerRecordFactory<>(INPUT_TOPIC, new StringSerializer(), new StringSerializer());
+
+    private TopologyTestDriver driver;
+
+    private int index = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        RandomTextGenerator generator = new RandomTextGenerator();
+        for (int num = 0; num < TEXTS; num++) {
+            texts[num] = generator.getRandomText();
+        }
+
+        KafkaStreamsReducerStream stream = new KafkaStreamsReducerStream(
+                INPUT_TOPIC,
+                OUTPUT_TOPIC,
+                new WordTokenizer(false),
+                preAggregation,
+                10000,
+                FLUSH_INTERVAL_MS,
+                Stores.inMemoryKeyValueStore("count-words-benchmark-store"),
+                Serdes.String(),
+                Serdes.Long(),
+                new SampledLoggerFactory(new StandardEnvironment())
+        );
+        StreamsBuilder builder = stream.startProcessing(new StreamsBuilder());
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "count-words-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("count-words-benchmark").toString());
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        driver = new TopologyTestDriver(builder.build(), props);
+    }
+
+    @TearDown
+    public void tearDown() {
+        driver.close();
+    }
+
+    @Benchmark
+    public void countWords(Blackhole blackhole) {
+        index = (index + 1) % TEXTS;
+        driver.pipeInput(recordFactory.create(INPUT_TOPIC, null, texts[index]));
+        driver.advanceWallClockTime(1);
+        for (Object record = driver.readOutput(OUTPUT_TOPIC); null != record; record = driver.readOutput(OUTPUT_TOPIC)) {
+            blackhole.consume(record);
+        }
+    }
+}
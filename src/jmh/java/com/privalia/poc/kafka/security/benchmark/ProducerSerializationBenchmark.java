@@ -0,0 +1,68 @@
+package com.privalia.poc.kafka.security.benchmark;
+
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the value serializers available for the producer configuration:
+ * the StringSerializer configured today against a ByteArraySerializer fed with pre-encoded values
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProducerSerializationBenchmark {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private static final int TEXTS = 1024;
+
+    private final String[] texts = new String[TEXTS];
+
+    private final byte[][] encodedTexts = new byte[TEXTS][];
+
+    private final StringSerializer stringSerializer = new StringSerializer();
+
+    private final ByteArraySerializer byteArraySerializer = new ByteArraySerializer();
+
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        RandomTextGenerator generator = new RandomTextGenerator();
+        for (int num = 0; num < TEXTS; num++) {
+            texts[num] = generator.getRandomText();
+            encodedTexts[num] = texts[num].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public byte[] stringSerializer() {
+        return stringSerializer.serialize(TOPIC, texts[nextIndex()]);
+    }
+
+    @Benchmark
+    public byte[] encodeAndByteArraySerializer() {
+        return byteArraySerializer.serialize(TOPIC, texts[nextIndex()].getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] preEncodedByteArraySerializer() {
+        return byteArraySerializer.serialize(TOPIC, encodedTexts[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        index = (index + 1) % TEXTS;
+        return index;
+    }
+}
@@ -0,0 +1,76 @@
+package com.privalia.poc.kafka.security.benchmark;
+
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import com.privalia.poc.kafka.security.service.TextCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of the random texts used as message values, with several threads sharing the generator,
+ * against the original implementation (a new Random, a stream, an array and String.join for every text)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class RandomTextGeneratorBenchmark {
+
+    private final RandomTextGenerator generator = new RandomTextGenerator();
+
+    private final RandomTextGenerator zipfGenerator = new RandomTextGenerator(
+            TextCorpus.of(generator.getCorpus().toArray(new String[0])), RandomTextGenerator.Distribution.ZIPF, 1.0, 1, 20);
+
+    private final String[] source = generator.getCorpus().toArray(new String[0]);
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final RandomTextGenerator.TextStream stream = new RandomTextGenerator().newStream(42);
+
+        private ByteBuffer buffer;
+    }
+
+    @Benchmark
+    public String legacyGetRandomText() {
+        Random random = new Random();
+        int maxWords = source.length;
+        int firstWord = random.nextInt(maxWords / 2);
+        int lastWord = firstWord + random.nextInt(maxWords - firstWord);
+        String[] subarray = Arrays.stream(source, firstWord, lastWord).toArray(String[]::new);
+        return String.join(" ", subarray);
+    }
+
+    @Benchmark
+    public String getRandomText() {
+        return generator.getRandomText();
+    }
+
+    @Benchmark
+    public int writeRandomText(ThreadState state) {
+        if (null == state.buffer) {
+            state.buffer = ByteBuffer.allocate(generator.getMaxTextBytes());
+        }
+        state.buffer.clear();
+        return generator.writeRandomText(state.buffer);
+    }
+
+    @Benchmark
+    public String seededStreamNextText(ThreadState state) {
+        return state.stream.nextText();
+    }
+
+    @Benchmark
+    public String zipfGetRandomText() {
+        return zipfGenerator.getRandomText();
+    }
+}
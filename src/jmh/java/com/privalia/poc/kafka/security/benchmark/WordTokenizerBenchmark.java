@@ -0,0 +1,64 @@
+package com.privalia.poc.kafka.security.benchmark;
+
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.streams.KeyValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the word splitting of the count-words stream: the former split-based flatMap against the tokenizer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WordTokenizerBenchmark {
+
+    private static final int TEXTS = 1024;
+
+    private final String[] texts = new String[TEXTS];
+
+    private final WordTokenizer tokenizer = new WordTokenizer(false);
+
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        RandomTextGenerator generator = new RandomTextGenerator();
+        for (int num = 0; num < TEXTS; num++) {
+            texts[num] = generator.getRandomText();
+        }
+    }
+
+    @Benchmark
+    public void splitIntoLinkedList(Blackhole blackhole) {
+        List<KeyValue<String, String>> result = new LinkedList<>();
+        Arrays.stream(nextText().split(" ")).forEach(word -> result.add(KeyValue.pair(word, word)));
+        for (KeyValue<String, String> pair : result) {
+            blackhole.consume(pair);
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        for (KeyValue<String, String> pair : tokenizer.words(nextText(), word -> KeyValue.pair(word, word))) {
+            blackhole.consume(pair);
+        }
+    }
+
+    private String nextText() {
+        index = (index + 1) % TEXTS;
+        return texts[index];
+    }
+}
@@ -0,0 +1,100 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.CompressionType;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.WriteBufferManager;
+
+import java.util.Map;
+
+/**
+ * RocksDB configuration for all the persistent state stores of the JVM.
+ * All the stores share one block cache, and the memtables are charged to that cache,
+ * so the off-heap memory used by RocksDB is bounded no matter how many stores or stream apps are running.
+ *
+ * @author david.amigo
+ */
+public class BoundedMemoryRocksDBConfig implements RocksDBConfigSetter {
+
+    /** Size in bytes of the block cache shared by all the stores (includes the memtables) */
+    public static final String BLOCK_CACHE_SIZE_CONFIG = "rocksdb.block-cache-size";
+
+    /** Size in bytes of the block cache used by the memtables of all the stores */
+    public static final String TOTAL_MEMTABLE_SIZE_CONFIG = "rocksdb.total-memtable-size";
+
+    /** Size in bytes of a single memtable */
+    public static final String WRITE_BUFFER_SIZE_CONFIG = "rocksdb.write-buffer-size";
+
+    /** Maximum number of memtables of a store */
+    public static final String MAX_WRITE_BUFFERS_CONFIG = "rocksdb.max-write-buffers";
+
+    /** Whether the stores use bloom filters */
+    public static final String BLOOM_FILTER_CONFIG = "rocksdb.bloom-filter";
+
+    /** The compression library: none, snappy, lz4, zstd... */
+    public static final String COMPRESSION_CONFIG = "rocksdb.compression";
+
+    /** The block cache shared by all the stores */
+    private static Cache cache;
+
+    /** The manager which charges the memtables of all the stores to the shared cache */
+    private static WriteBufferManager writeBufferManager;
+
+    /** The bloom filter of the store, closed with the store */
+    private BloomFilter bloomFilter;
+
+    @Override
+    public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+        initSharedMemory(configs);
+
+        BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+        tableConfig.setBlockCache(cache);
+        tableConfig.setCacheIndexAndFilterBlocks(true);
+        if (Boolean.parseBoolean(getConfig(configs, BLOOM_FILTER_CONFIG, "true"))) {
+            bloomFilter = new BloomFilter();
+            tableConfig.setFilter(bloomFilter);
+        }
+        options.setTableFormatConfig(tableConfig);
+
+        options.setWriteBufferManager(writeBufferManager);
+        options.setWriteBufferSize(Long.parseLong(getConfig(configs, WRITE_BUFFER_SIZE_CONFIG, "16777216")));
+        options.setMaxWriteBufferNumber(Integer.parseInt(getConfig(configs, MAX_WRITE_BUFFERS_CONFIG, "3")));
+        options.setCompressionType(CompressionType.getCompressionType(getConfig(configs, COMPRESSION_CONFIG, "lz4")));
+    }
+
+    @Override
+    public void close(String storeName, Options options) {
+        if (null != bloomFilter) {
+            bloomFilter.close();
+        }
+    }
+
+    /**
+     * Creates the shared cache and write buffer manager the first time a store is configured
+     *
+     * @param configs the configuration of the stream app
+     */
+    private static synchronized void initSharedMemory(Map<String, Object> configs) {
+        if (null == cache) {
+            long blockCacheSize = Long.parseLong(getConfig(configs, BLOCK_CACHE_SIZE_CONFIG, "134217728"));
+            long totalMemtableSize = Long.parseLong(getConfig(configs, TOTAL_MEMTABLE_SIZE_CONFIG, "33554432"));
+            cache = new LRUCache(blockCacheSize);
+            writeBufferManager = new WriteBufferManager(totalMemtableSize, cache);
+        }
+    }
+
+    /**
+     * @param configs      the configuration of the stream app
+     * @param name         the name of the config
+     * @param defaultValue the value when it is not configured
+     * @return the value of the config
+     */
+    private static String getConfig(Map<String, Object> configs, String name, String defaultValue) {
+        Object value = configs.get(name);
+        return null == value ? defaultValue : value.toString();
+    }
+}
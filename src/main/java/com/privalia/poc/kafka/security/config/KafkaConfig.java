@@ -1,27 +1,47 @@
 package com.privalia.poc.kafka.security.config;
 
+import com.privalia.poc.kafka.security.consumer.KafkaCommitStrategy;
+import com.privalia.poc.kafka.security.consumer.RecordEngineRebalanceListener;
+import com.privalia.poc.kafka.security.consumer.RecordProcessingEngine;
 import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.TopicDescription;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.clients.consumer.StickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
 
-import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * Configuration class for Apache Kafka
@@ -32,11 +52,70 @@ import java.util.Map;
 @Configuration
 public class KafkaConfig {
 
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaConfig.class);
+
+    /**
+     * Value of the consumer concurrency to use as many consumer threads as partitions has the topic
+     */
+    private static final String AUTO_CONCURRENCY = "auto";
+
+    /**
+     * Default partition assignors: sticky, keeping the range assignor of the previous versions for a rolling upgrade
+     */
+    private static final String DEFAULT_ASSIGNMENT_STRATEGY = StickyAssignor.class.getName() + "," + RangeAssignor.class.getName();
+
+    /**
+     * Prefix of the properties of the producer profiles: spring.kafka.producer.profiles.<profile>.<property>
+     */
+    private static final String PRODUCER_PROFILES_PREFIX = "spring.kafka.producer.profiles.";
+
+    /**
+     * The producer configurations which can be set by a producer profile (property name -> producer config)
+     */
+    private static final Map<String, String> PRODUCER_PROFILE_PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        PRODUCER_PROFILE_PROPERTIES.put("compression-type", ProducerConfig.COMPRESSION_TYPE_CONFIG);
+        PRODUCER_PROFILE_PROPERTIES.put("batch-size", ProducerConfig.BATCH_SIZE_CONFIG);
+        PRODUCER_PROFILE_PROPERTIES.put("linger-ms", ProducerConfig.LINGER_MS_CONFIG);
+        PRODUCER_PROFILE_PROPERTIES.put("buffer-memory", ProducerConfig.BUFFER_MEMORY_CONFIG);
+        PRODUCER_PROFILE_PROPERTIES.put("max-in-flight-requests", ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION);
+        PRODUCER_PROFILE_PROPERTIES.put("enable-idempotence", ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG);
+    }
+
     /**
      * The environment object where to get the config options
      */
     private Environment environment;
 
+    /**
+     * The number of consumer threads of the listener containers (resolved once)
+     */
+    private Integer consumerConcurrency;
+
+    /**
+     * The SSL stores shared by all the Kafka clients (loaded once)
+     */
+    private KafkaSslStores sslStores;
+
+    /**
+     * The watcher which reloads the SSL stores into the running Kafka clients (null when disabled)
+     */
+    private KafkaSslReloader sslReloader;
+
+    /**
+     * The common configuration values of all the Kafka clients (built once)
+     */
+    private Map<String, Object> commonConfigs;
+
+    /**
+     * The identity of the instance for the static group membership (resolved once)
+     */
+    private String groupInstanceId;
+
     /**
      * Autowired Constructor
      *
@@ -48,36 +127,76 @@ public class KafkaConfig {
     }
 
     /**
-     * Global common configuration values
+     * Global common configuration values.
+     * The SSL stores are resolved and loaded once and the values are cached: every call returns a copy.
      *
      * @return the default configurations
      */
-    Map<String, Object> commonConfigs() {
+    synchronized Map<String, Object> commonConfigs() {
+        if (null == commonConfigs) {
+            KafkaSslStores stores = sslStores();
+            String bootstrapServers = environment.getProperty("spring.kafka.bootstrap-servers");
 
-        @SuppressWarnings("ConstantConditions")
-        Resource sslKeystoreResource = new ClassPathResource(environment.getProperty("spring.kafka.ssl.keystore.location"));
+            Map<String, Object> props = new HashMap<>();
+            props.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+            props.put(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG, "SSL");
+            props.put(SslConfigs.SSL_KEYSTORE_LOCATION_CONFIG, stores.getKeystorePath());
+            props.put(SslConfigs.SSL_KEYSTORE_TYPE_CONFIG, stores.getKeystoreType());
+            props.put(SslConfigs.SSL_KEYSTORE_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.keystore.password"));
+            props.put(SslConfigs.SSL_KEY_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.key.password"));
+            props.put(SslConfigs.SSL_TRUSTSTORE_LOCATION_CONFIG, stores.getTruststorePath());
+            props.put(SslConfigs.SSL_TRUSTSTORE_TYPE_CONFIG, stores.getTruststoreType());
+            props.put(SslConfigs.SSL_TRUSTSTORE_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.truststore.password"));
+            if (null != sslReloader()) {
+                props.put(SslConfigs.SSL_KEYMANAGER_ALGORITHM_CONFIG, ReloadingSslProvider.ALGORITHM);
+                props.put(SslConfigs.SSL_TRUSTMANAGER_ALGORITHM_CONFIG, ReloadingSslProvider.ALGORITHM);
+            }
+            commonConfigs = Collections.unmodifiableMap(props);
 
-        @SuppressWarnings("ConstantConditions")
-        Resource sslTrusSttoreResource = new ClassPathResource(environment.getProperty("spring.kafka.ssl.truststore.location"));
+            if (null != bootstrapServers && Boolean.parseBoolean(environment.getProperty("spring.kafka.ssl.handshake-probe.enabled", "false"))) {
+                stores.probeHandshakeInBackground(bootstrapServers, Integer.parseInt(environment.getProperty("spring.kafka.ssl.handshake-probe.timeout-ms", "5000")));
+            }
+        }
+        return new HashMap<>(commonConfigs);
+    }
 
-        String sslKeystorePath = "";
-        String sslTrusstorePath = "";
-        try {
-            sslKeystorePath = sslKeystoreResource.getFile().getAbsolutePath();
-            sslTrusstorePath = sslTrusSttoreResource.getFile().getAbsolutePath();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * The SSL keystore and truststore shared by all the Kafka clients (resolved and loaded once)
+     *
+     * @return the SSL stores
+     */
+    synchronized KafkaSslStores sslStores() {
+        if (null == sslStores) {
+            sslStores = new KafkaSslStores(environment);
         }
+        return sslStores;
+    }
 
-        Map<String, Object> props = new HashMap<>();
-        props.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.bootstrap-servers"));
-        props.put(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG, "SSL");
-        props.put(SslConfigs.SSL_KEYSTORE_LOCATION_CONFIG, sslKeystorePath);
-        props.put(SslConfigs.SSL_KEYSTORE_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.keystore.password"));
-        props.put(SslConfigs.SSL_KEY_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.key.password"));
-        props.put(SslConfigs.SSL_TRUSTSTORE_LOCATION_CONFIG, sslTrusstorePath);
-        props.put(SslConfigs.SSL_TRUSTSTORE_PASSWORD_CONFIG, environment.getProperty("spring.kafka.ssl.truststore.password"));
-        return props;
+    /**
+     * @return the SSL stores if they are already loaded, or null
+     */
+    synchronized KafkaSslStores loadedSslStores() {
+        return sslStores;
+    }
+
+    /**
+     * @return the SSL stores reloader if it is already created, or null
+     */
+    synchronized KafkaSslReloader loadedSslReloader() {
+        return sslReloader;
+    }
+
+    /**
+     * The watcher which reloads the SSL stores into the running Kafka clients, created once
+     * when the property spring.kafka.ssl.reload.enabled is true
+     *
+     * @return the SSL stores reloader or null if it is disabled
+     */
+    synchronized KafkaSslReloader sslReloader() {
+        if (null == sslReloader && Boolean.parseBoolean(environment.getProperty("spring.kafka.ssl.reload.enabled", "false"))) {
+            sslReloader = new KafkaSslReloader(sslStores(), environment);
+        }
+        return sslReloader;
     }
 
     /**
@@ -97,6 +216,44 @@ public class KafkaConfig {
         return props;
     }
 
+    /**
+     * Configuration values for the Kafka producers of a producer profile
+     *
+     * @param profile the name of the producer profile (low-latency, high-throughput, bulk-load...)
+     * @return the default configurations for all the Kafka producers with the values of the profile
+     */
+    Map<String, Object> producerConfigs(String profile) {
+        Map<String, Object> props = producerConfigs();
+        props.putAll(producerProfileConfigs(profile));
+        return props;
+    }
+
+    /**
+     * Configuration values of a producer profile: compression, batch size, linger, buffer memory,
+     * max in flight requests and idempotence. An empty profile name means no profile.
+     *
+     * @param profile the name of the producer profile
+     * @return the configurations set by the profile
+     * @throws IllegalArgumentException when the profile doesn't exist
+     */
+    Map<String, Object> producerProfileConfigs(String profile) throws IllegalArgumentException {
+        Map<String, Object> props = new HashMap<>();
+        if (null == profile || profile.isEmpty()) {
+            return props;
+        }
+
+        PRODUCER_PROFILE_PROPERTIES.forEach((property, config) -> {
+            String value = environment.getProperty(PRODUCER_PROFILES_PREFIX + profile + "." + property);
+            if (null != value) {
+                props.put(config, value);
+            }
+        });
+        if (props.isEmpty()) {
+            throw new IllegalArgumentException("KafkaConfig: Unknown producer profile " + profile);
+        }
+        return props;
+    }
+
     /**
      * Global configuration values for all Kafka consumers
      *
@@ -106,12 +263,120 @@ public class KafkaConfig {
         Map<String, Object> props = commonConfigs();
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, environment.getProperty("spring.kafka.consumer.auto-offset-reset"));
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, environment.getProperty("spring.kafka.consumer.enable-auto-commit"));
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, environment.getProperty("spring.kafka.consumer.max-poll-records", "500"));
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, environment.getProperty("spring.kafka.consumer.fetch-min-bytes", "1"));
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, environment.getProperty("spring.kafka.consumer.fetch-max-wait-ms", "500"));
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, environment.getProperty("spring.kafka.consumer.partition-assignment-strategy", DEFAULT_ASSIGNMENT_STRATEGY));
+        putIfPresent(props, ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, "spring.kafka.consumer.session-timeout-ms");
+        putIfPresent(props, ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, "spring.kafka.consumer.heartbeat-interval-ms");
+        putIfPresent(props, ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "spring.kafka.consumer.max-poll-interval-ms");
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
 
         return props;
     }
 
+    /**
+     * Copies a config option from the environment if it is present. Shared with the Kafka streams configuration
+     *
+     * @param props    the configuration values
+     * @param name     the name of the configuration value
+     * @param property the name of the property in the environment
+     */
+    void putIfPresent(Map<String, Object> props, String name, String property) {
+        String value = environment.getProperty(property);
+        if (null != value) {
+            props.put(name, value);
+        }
+    }
+
+    /**
+     * Identity of the instance for the static group membership: the property spring.kafka.static-membership.instance-id,
+     * or the HOSTNAME variable (the pod name in Kubernetes), or the host name.
+     * It must be stable across restarts and unique within the group, e.g. the pods of a StatefulSet.
+     *
+     * @return the identity of the instance, or null if the static membership is disabled
+     */
+    synchronized String groupInstanceId() {
+        if (null == groupInstanceId && Boolean.parseBoolean(environment.getProperty("spring.kafka.static-membership.enabled", "false"))) {
+            groupInstanceId = environment.getProperty("spring.kafka.static-membership.instance-id", hostName());
+            LOGGER.info(">>> Static group membership with instance id {}", groupInstanceId);
+        }
+        return groupInstanceId;
+    }
+
+    /**
+     * Prefix of the transactional.id of the producers of the transactional template: the property
+     * spring.kafka.producer.transactional.transaction-id-prefix followed by the identity of the instance
+     * (the static membership instance id or the host name), so the instances don't fence each other.
+     * A restarted instance keeps its prefix and fences the producers of its previous run.
+     *
+     * @return the transaction id prefix of the instance
+     */
+    String transactionIdPrefix() {
+        String instanceId = groupInstanceId();
+        if (null == instanceId) {
+            instanceId = hostName();
+        }
+        return environment.getProperty("spring.kafka.producer.transactional.transaction-id-prefix") + instanceId + "-";
+    }
+
+    /**
+     * @return the HOSTNAME variable (the pod name in Kubernetes), or the host name
+     */
+    private String hostName() {
+        String hostName = environment.getProperty("HOSTNAME", "");
+        if (hostName.isEmpty()) {
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException exc) {
+                throw new KafkaException("KafkaConfig: Can't resolve the host name of the instance", exc);
+            }
+        }
+        return hostName;
+    }
+
+    /**
+     * Number of consumer threads of the listener containers.
+     * When the value is "auto" it is the number of partitions of the topic, read from the cluster on startup.
+     *
+     * @return the number of consumer threads
+     */
+    synchronized Integer consumerConcurrency() {
+        if (null == consumerConcurrency) {
+            String concurrency = environment.getProperty("spring.kafka.consumer.concurrency", "1");
+            consumerConcurrency = AUTO_CONCURRENCY.equalsIgnoreCase(concurrency)
+                    ? topicPartitions(environment.getProperty("spring.kafka.topics.sim-test1"))
+                    : Integer.valueOf(concurrency);
+        }
+        return consumerConcurrency;
+    }
+
+    /**
+     * Reads the number of partitions of a topic from the cluster
+     *
+     * @param topic the name of the topic
+     * @return the number of partitions of the topic or 1 if it can't be read
+     */
+    private int topicPartitions(String topic) {
+        try (AdminClient adminClient = AdminClient.create(commonConfigs())) {
+            TopicDescription description = adminClient
+                    .describeTopics(Collections.singleton(topic))
+                    .all()
+                    .get(30, TimeUnit.SECONDS)
+                    .get(topic);
+            int partitions = description.partitions().size();
+            LOGGER.info(">>> Consumer concurrency for topic {}: {} partitions", topic, partitions);
+            return partitions;
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            LOGGER.error(">>> Interrupted reading the partitions of the topic {}", topic, exc);
+        } catch (ExecutionException | TimeoutException | KafkaException exc) {
+            LOGGER.error(">>> An error occurred reading the partitions of the topic {}", topic, exc);
+        }
+        return 1;
+    }
+
     /**
      * Creates a factory for producing messages to Kafka
      *
@@ -122,35 +387,269 @@ public class KafkaConfig {
         return new DefaultKafkaProducerFactory<>(props);
     }
 
+    /**
+     * Creates a factory for producing messages to Kafka in transactions
+     *
+     * @param props               the configuration for the Kafka producer
+     * @param transactionIdPrefix the prefix of the transactional.id of the producers
+     * @return the transactional kafka producer factory
+     */
+    ProducerFactory<String, String> producerFactory(Map<String, Object> props, String transactionIdPrefix) {
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.setTransactionIdPrefix(transactionIdPrefix);
+        return factory;
+    }
+
     /**
      * Creates a factory for consuming messages from Kafka
      *
      * @return the default kafka consumer factory.
      */
     ConsumerFactory<String, String> consumerFactory() {
-        return new DefaultKafkaConsumerFactory<>(consumerConfigs());
+        return newConsumerFactory(consumerConfigs());
     }
 
     /**
-     * Kafka template bean for producing messages to Kafka
+     * Creates a factory for consuming only the messages of committed transactions from Kafka
+     *
+     * @return the read committed kafka consumer factory.
+     */
+    ConsumerFactory<String, String> readCommittedConsumerFactory() {
+        Map<String, Object> props = consumerConfigs();
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        return newConsumerFactory(props);
+    }
+
+    /**
+     * Creates a factory for consuming messages from Kafka, with static group membership if it is enabled
+     *
+     * @param props the configuration for the Kafka consumer
+     * @return the kafka consumer factory
+     */
+    private ConsumerFactory<String, String> newConsumerFactory(Map<String, Object> props) {
+        String instanceId = groupInstanceId();
+        return null == instanceId
+                ? new DefaultKafkaConsumerFactory<>(props)
+                : new StaticMembershipConsumerFactory<>(props, instanceId);
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka.
+     * It uses the producer profile of the property spring.kafka.producer.profile, if any.
      *
      * @return a new Kafka template for producing messages
      */
     @Bean
+    @Primary
     public KafkaTemplate<String, String> kafkaProducerTemplate() {
-        return new KafkaTemplate<>(producerFactory(producerConfigs()));
+        return new KafkaTemplate<>(producerFactory(producerConfigs(environment.getProperty("spring.kafka.producer.profile", ""))));
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka with the low-latency producer profile
+     *
+     * @return a new Kafka template for producing messages
+     */
+    @Bean("sim-kafka-producer-low-latency-template")
+    public KafkaTemplate<String, String> kafkaLowLatencyProducerTemplate() {
+        return new KafkaTemplate<>(producerFactory(producerConfigs("low-latency")));
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka with the high-throughput producer profile
+     *
+     * @return a new Kafka template for producing messages
+     */
+    @Bean("sim-kafka-producer-high-throughput-template")
+    public KafkaTemplate<String, String> kafkaHighThroughputProducerTemplate() {
+        return new KafkaTemplate<>(producerFactory(producerConfigs("high-throughput")));
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka with the bulk-load producer profile
+     *
+     * @return a new Kafka template for producing messages
+     */
+    @Bean("sim-kafka-producer-bulk-load-template")
+    public KafkaTemplate<String, String> kafkaBulkLoadProducerTemplate() {
+        return new KafkaTemplate<>(producerFactory(producerConfigs("bulk-load")));
     }
 
     /**
-     * Kafka listener container factory bean for consuming messages from Kafka
+     * Kafka listener container factory bean for consuming messages from Kafka.
+     * With the commit strategy enabled the container commits nothing: the strategy commits the offsets
+     * on the records, on the idle events (every commit interval) and on the partitions revoked.
+     * With an engine enabled the records in process of the revoked partitions are dropped before the commit,
+     * and the idle events resume the partitions paused by the engine when no records arrive.
      *
+     * @param commitStrategy the strategy to commit the offsets
+     * @param engines        the engines to process the records out of the poll thread
      * @return the kafka listener container factory for consumer.
      */
     @Bean
-    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaListenerContainerFactory() {
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaListenerContainerFactory(
+            KafkaCommitStrategy commitStrategy,
+            List<RecordProcessingEngine> engines
+    ) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(consumerConcurrency());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        List<RecordProcessingEngine> enabledEngines = engines.stream().filter(RecordProcessingEngine::isEnabled).collect(Collectors.toList());
+        if (commitStrategy.isEnabled() || !enabledEngines.isEmpty()) {
+            factory.getContainerProperties().setConsumerRebalanceListener(new RecordEngineRebalanceListener(enabledEngines, commitStrategy));
+        }
+        if (commitStrategy.isEnabled()) {
+            factory.getContainerProperties().setIdleEventInterval(
+                    Long.parseLong(environment.getProperty("spring.kafka.consumer.commit.interval-ms", "1000")));
+        } else if (!enabledEngines.isEmpty()) {
+            factory.getContainerProperties().setIdleEventInterval(
+                    Long.parseLong(environment.getProperty("spring.kafka.consumer.resume-interval-ms", "500")));
+        }
+        return factory;
+    }
+
+    /**
+     * Kafka batch listener container factory bean for consuming messages from Kafka.
+     * The listener receives all the records of a poll and acknowledges them once.
+     *
+     * @return the kafka batch listener container factory for consumer.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaBatchListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(consumerConcurrency());
+        factory.setBatchListener(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
+
+    /**
+     * Kafka listener container factory bean for consuming the retry topics.
+     * The listener pauses the partitions whose next record is not due yet; the idle events are published
+     * every few milliseconds so the partitions are resumed even when no records arrive.
+     *
+     * @return the kafka listener container factory for the retry consumer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.kafka.consumer.retry.enabled", havingValue = "true")
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaRetryListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(
+                Long.parseLong(environment.getProperty("spring.kafka.consumer.retry.idle-interval-ms", "500")));
+        return factory;
+    }
+
+    /**
+     * Kafka admin bean which creates the retry and dead letter topics declared by the RetryTopicsRegistrar on startup,
+     * with the same SSL configuration as the rest of the clients
+     *
+     * @return the kafka admin
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.kafka.consumer.retry.enabled", havingValue = "true")
+    public KafkaAdmin kafkaAdmin() {
+        return new KafkaAdmin(commonConfigs());
+    }
+
+    /**
+     * Transactional Kafka producer factory bean for the transactions started by the application.
+     * The prefix of the transactional.id includes the identity of the instance.
+     *
+     * @return the transactional kafka producer factory
+     */
+    @Bean("sim-kafka-transactional-producer-factory")
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public ProducerFactory<String, String> kafkaTransactionalProducerFactory() {
+        return producerFactory(
+                producerConfigs(environment.getProperty("spring.kafka.producer.profile", "")),
+                transactionIdPrefix()
+        );
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka in transactions
+     *
+     * @param producerFactory the transactional kafka producer factory
+     * @return a new Kafka template for producing messages in transactions
+     */
+    @Bean("sim-kafka-transactional-template")
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public KafkaTemplate<String, String> kafkaTransactionalProducerTemplate(
+            @Qualifier("sim-kafka-transactional-producer-factory") ProducerFactory<String, String> producerFactory
+    ) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
+    /**
+     * Transactional Kafka producer factory bean for the transactions started by the listener containers,
+     * shared by the transform template and the transaction manager.
+     * The container appends the group, topic and partition to the prefix, without the identity of the instance:
+     * the new owner of a partition must fence the producer of the previous owner.
+     *
+     * @return the transactional kafka producer factory of the consume-transform-produce
+     */
+    @Bean("sim-kafka-transform-producer-factory")
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public ProducerFactory<String, String> kafkaTransformProducerFactory() {
+        return producerFactory(
+                producerConfigs(environment.getProperty("spring.kafka.producer.profile", "")),
+                environment.getProperty("spring.kafka.producer.transactional.transaction-id-prefix")
+        );
+    }
+
+    /**
+     * Kafka template bean for producing messages to Kafka in the transactions of the listener containers
+     *
+     * @param producerFactory the transactional kafka producer factory of the consume-transform-produce
+     * @return a new Kafka template for producing messages in the transactions of the containers
+     */
+    @Bean("sim-kafka-transform-template")
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public KafkaTemplate<String, String> kafkaTransformProducerTemplate(
+            @Qualifier("sim-kafka-transform-producer-factory") ProducerFactory<String, String> producerFactory
+    ) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
+    /**
+     * Kafka transaction manager bean to consume, transform and produce in a single transaction
+     *
+     * @param producerFactory the transactional kafka producer factory of the consume-transform-produce
+     * @return a new Kafka transaction manager
+     */
+    @Bean("sim-kafka-transaction-manager")
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public KafkaTransactionManager<String, String> kafkaTransactionManager(
+            @Qualifier("sim-kafka-transform-producer-factory") ProducerFactory<String, String> producerFactory
+    ) {
+        return new KafkaTransactionManager<>(producerFactory);
+    }
+
+    /**
+     * Kafka transactional batch listener container factory bean for consuming messages from Kafka.
+     * Every poll is processed in a transaction of the transaction manager: the messages produced by the listener
+     * and the offsets of the records are committed together.
+     *
+     * @param transactionManager the Kafka transaction manager
+     * @return the kafka transactional listener container factory for consumer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaTransactionalListenerContainerFactory(
+            @Qualifier("sim-kafka-transaction-manager") KafkaTransactionManager<String, String> transactionManager
+    ) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(readCommittedConsumerFactory());
+        factory.setConcurrency(consumerConcurrency());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.getContainerProperties().setTransactionManager(transactionManager);
+        return factory;
+    }
 }
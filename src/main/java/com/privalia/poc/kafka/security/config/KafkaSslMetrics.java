@@ -0,0 +1,93 @@
+package com.privalia.poc.kafka.security.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Binds the SSL metrics to Micrometer: the load time of the stores, the time of the TLS handshake on startup,
+ * the last reload of the stores and the expiry of the certificates
+ *
+ * @author david.amigo
+ */
+public class KafkaSslMetrics implements MeterBinder {
+
+    /** The configuration class for Apache Kafka, which owns the SSL stores */
+    private final KafkaConfig kafkaConfig;
+
+    /**
+     * Constructor
+     *
+     * @param kafkaConfig the configuration class for Apache Kafka
+     */
+    public KafkaSslMetrics(KafkaConfig kafkaConfig) {
+        this.kafkaConfig = kafkaConfig;
+    }
+
+    /**
+     * Binds the SSL metrics. The values are NaN until the stores are loaded (and while the reload is disabled).
+     *
+     * @param registry the registry where the meters are bound
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TimeGauge.builder("kafka.ssl.stores.load.time", kafkaConfig, TimeUnit.MILLISECONDS,
+                config -> millis(config.loadedSslStores(), KafkaSslStores::getLoadTime))
+                .description("Time spent resolving and loading the SSL stores")
+                .register(registry);
+
+        TimeGauge.builder("kafka.ssl.handshake.time", kafkaConfig, TimeUnit.MILLISECONDS,
+                config -> millis(config.loadedSslStores(), KafkaSslStores::getHandshakeTime))
+                .description("Time of the TLS handshake with the first bootstrap server on startup")
+                .register(registry);
+
+        Gauge.builder("kafka.ssl.reload.last", kafkaConfig,
+                config -> epochSeconds(config.loadedSslReloader(), KafkaSslReloader::getLastReloadTime))
+                .description("Epoch seconds of the last reload of the SSL stores")
+                .baseUnit("seconds")
+                .register(registry);
+
+        Gauge.builder("kafka.ssl.certificate.expiry", kafkaConfig,
+                config -> epochSeconds(config.loadedSslReloader(), KafkaSslReloader::getCertificateExpiry))
+                .description("Epoch seconds of the earliest expiry of the certificates of the keystore")
+                .baseUnit("seconds")
+                .register(registry);
+
+        FunctionCounter.builder("kafka.ssl.reloads", kafkaConfig,
+                config -> null == config.loadedSslReloader() ? 0 : config.loadedSslReloader().getReloads())
+                .description("Number of reloads of the SSL stores")
+                .register(registry);
+
+        FunctionCounter.builder("kafka.ssl.reload.failures", kafkaConfig,
+                config -> null == config.loadedSslReloader() ? 0 : config.loadedSslReloader().getFailures())
+                .description("Number of failed reloads of the SSL stores")
+                .register(registry);
+    }
+
+    /**
+     * @param target the owner of the duration
+     * @param getter the getter of the duration
+     * @return the duration in milliseconds or NaN
+     */
+    private static <T> double millis(T target, Function<T, Duration> getter) {
+        Duration duration = null == target ? null : getter.apply(target);
+        return null == duration ? Double.NaN : duration.toNanos() / 1e6;
+    }
+
+    /**
+     * @param target the owner of the instant
+     * @param getter the getter of the instant
+     * @return the instant in epoch seconds or NaN
+     */
+    private static <T> double epochSeconds(T target, Function<T, Instant> getter) {
+        Instant instant = null == target ? null : getter.apply(target);
+        return null == instant ? Double.NaN : instant.getEpochSecond();
+    }
+}
@@ -0,0 +1,209 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.KafkaException;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the keystore and truststore files and reloads them into the running Kafka clients.
+ * The clients keep their SSL contexts and connections: only the new handshakes use the new material,
+ * so the stream threads and their state stores are not rebuilt.
+ * The stores must be files: the ones extracted from the jar to a temporary file never change.
+ *
+ * @author david.amigo
+ */
+public class KafkaSslReloader {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaSslReloader.class);
+
+    /** The SSL stores loaded on startup */
+    private final KafkaSslStores stores;
+
+    /** The password of the keystore */
+    private final String keystorePassword;
+
+    /** The password of the truststore */
+    private final String truststorePassword;
+
+    /** The password of the key */
+    private final char[] keyPassword;
+
+    /** The scheduler which checks the files */
+    private final ScheduledExecutorService scheduler;
+
+    /** The last modification time of the keystore file loaded */
+    private long keystoreModified;
+
+    /** The last modification time of the truststore file loaded */
+    private long truststoreModified;
+
+    /** The time of the last reload */
+    private volatile Instant lastReloadTime;
+
+    /** The earliest expiry time of the certificates of the keystore */
+    private volatile Instant certificateExpiry;
+
+    /** The number of reloads */
+    private final AtomicLong reloads = new AtomicLong();
+
+    /** The number of failed reloads */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Installs the reloadable key and trust managers with the stores loaded on startup and starts watching the files
+     *
+     * @param stores      the SSL stores loaded on startup
+     * @param environment the environment object where to get the config options
+     * @throws KafkaException when a store is not a file or the stores can't be installed
+     */
+    public KafkaSslReloader(KafkaSslStores stores, Environment environment) throws KafkaException {
+        if (stores.isKeystoreExtracted() || stores.isTruststoreExtracted()) {
+            throw new KafkaException("KafkaSslReloader: The SSL stores inside a jar can't be reloaded,"
+                    + " use a \"file:\" location or disable spring.kafka.ssl.reload.enabled");
+        }
+        this.stores = stores;
+        this.keystorePassword = environment.getProperty("spring.kafka.ssl.keystore.password");
+        this.truststorePassword = environment.getProperty("spring.kafka.ssl.truststore.password");
+        String keyPassword = environment.getProperty("spring.kafka.ssl.key.password");
+        this.keyPassword = null == keyPassword ? null : keyPassword.toCharArray();
+
+        ReloadingSslProvider.install();
+        this.keystoreModified = new File(stores.getKeystorePath()).lastModified();
+        this.truststoreModified = new File(stores.getTruststorePath()).lastModified();
+        update(stores.getKeystore(), stores.getTruststore());
+
+        long interval = Long.parseLong(environment.getProperty("spring.kafka.ssl.reload.interval-ms", "30000"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-ssl-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::checkFiles, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the time of the last reload
+     */
+    public Instant getLastReloadTime() {
+        return lastReloadTime;
+    }
+
+    /**
+     * @return the earliest expiry time of the certificates of the keystore
+     */
+    public Instant getCertificateExpiry() {
+        return certificateExpiry;
+    }
+
+    /**
+     * @return the number of reloads, the one on startup included
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    /**
+     * @return the number of failed reloads
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Loads the keystore and truststore files again and installs them
+     *
+     * @throws KafkaException when the stores can't be loaded
+     */
+    public synchronized void reload() throws KafkaException {
+        long keystoreModified = new File(stores.getKeystorePath()).lastModified();
+        long truststoreModified = new File(stores.getTruststorePath()).lastModified();
+        KeyStore keystore = KafkaSslStores.load(stores.getKeystorePath(), stores.getKeystoreType(), keystorePassword);
+        KeyStore truststore = KafkaSslStores.load(stores.getTruststorePath(), stores.getTruststoreType(), truststorePassword);
+        update(keystore, truststore);
+        this.keystoreModified = keystoreModified;
+        this.truststoreModified = truststoreModified;
+    }
+
+    /**
+     * Stops watching the files
+     */
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Reloads the stores when a file has changed.
+     * A failed reload (e.g. a file half written) is retried on the next check.
+     */
+    private synchronized void checkFiles() {
+        if (new File(stores.getKeystorePath()).lastModified() == keystoreModified
+                && new File(stores.getTruststorePath()).lastModified() == truststoreModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (KafkaException exc) {
+            failures.incrementAndGet();
+            LOGGER.error(">>> An error occurred reloading the SSL stores", exc);
+        }
+    }
+
+    /**
+     * Installs the key and trust material in the shared managers
+     *
+     * @param keystore   the keystore
+     * @param truststore the truststore
+     * @throws KafkaException when the material can't be installed
+     */
+    private void update(KeyStore keystore, KeyStore truststore) throws KafkaException {
+        try {
+            ReloadingSslProvider.KEY_MANAGER.update(keystore, keyPassword);
+            ReloadingSslProvider.TRUST_MANAGER.update(truststore);
+            certificateExpiry = earliestExpiry(keystore);
+        } catch (GeneralSecurityException exc) {
+            throw new KafkaException("KafkaSslReloader: Can't install the SSL stores", exc);
+        }
+        lastReloadTime = Instant.now();
+        reloads.incrementAndGet();
+        LOGGER.info(">>> SSL stores installed - Keystore={} - Truststore={} - Certificate expiry={}",
+                stores.getKeystorePath(), stores.getTruststorePath(), certificateExpiry);
+    }
+
+    /**
+     * @param keystore the keystore
+     * @return the earliest expiry time of the certificates of the keystore, or null if there are no certificates
+     * @throws GeneralSecurityException when the keystore can't be read
+     */
+    private static Instant earliestExpiry(KeyStore keystore) throws GeneralSecurityException {
+        Instant expiry = null;
+        for (String alias : Collections.list(keystore.aliases())) {
+            Certificate[] chain = keystore.getCertificateChain(alias);
+            if (null == chain) {
+                chain = new Certificate[] { keystore.getCertificate(alias) };
+            }
+            for (Certificate certificate : chain) {
+                if (certificate instanceof X509Certificate) {
+                    Instant notAfter = ((X509Certificate) certificate).getNotAfter().toInstant();
+                    if (null == expiry || notAfter.isBefore(expiry)) {
+                        expiry = notAfter;
+                    }
+                }
+            }
+        }
+        return expiry;
+    }
+}
@@ -0,0 +1,284 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.kafka.KafkaException;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+
+/**
+ * The SSL keystore and truststore shared by all the Kafka clients, resolved and loaded once.
+ * The stores packaged inside the jar are extracted to a temporary file, because the Kafka clients need a file path.
+ *
+ * @author david.amigo
+ */
+public class KafkaSslStores {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaSslStores.class);
+
+    /** The path of the keystore file */
+    private final String keystorePath;
+
+    /** The path of the truststore file */
+    private final String truststorePath;
+
+    /** Whether the keystore was extracted to a temporary file, so changes to its location are not seen */
+    private final boolean keystoreExtracted;
+
+    /** Whether the truststore was extracted to a temporary file, so changes to its location are not seen */
+    private final boolean truststoreExtracted;
+
+    /** The type of the keystore */
+    private final String keystoreType;
+
+    /** The type of the truststore */
+    private final String truststoreType;
+
+    /** The loaded keystore */
+    private final KeyStore keystore;
+
+    /** The loaded truststore */
+    private final KeyStore truststore;
+
+    /** The password of the key */
+    private final char[] keyPassword;
+
+    /** The time spent resolving and loading the stores */
+    private final Duration loadTime;
+
+    /** The time of the TLS handshake with the first bootstrap server, or null if it wasn't probed (yet) */
+    private volatile Duration handshakeTime;
+
+    /**
+     * Resolves and loads the keystore and the truststore.
+     * The locations are Spring resources: classpath (default) or file ("file:" prefix).
+     *
+     * @param environment the environment object where to get the config options
+     * @throws KafkaException when a store can't be resolved or loaded
+     */
+    public KafkaSslStores(Environment environment) throws KafkaException {
+        long start = System.nanoTime();
+        this.keystoreType = environment.getProperty("spring.kafka.ssl.keystore.type", KeyStore.getDefaultType());
+        this.truststoreType = environment.getProperty("spring.kafka.ssl.truststore.type", KeyStore.getDefaultType());
+        String keystoreLocation = environment.getProperty("spring.kafka.ssl.keystore.location");
+        String truststoreLocation = environment.getProperty("spring.kafka.ssl.truststore.location");
+        this.keystorePath = resolve(keystoreLocation);
+        this.truststorePath = resolve(truststoreLocation);
+        this.keystoreExtracted = !isFile(keystoreLocation);
+        this.truststoreExtracted = !isFile(truststoreLocation);
+        this.keystore = load(keystorePath, keystoreType, environment.getProperty("spring.kafka.ssl.keystore.password"));
+        this.truststore = load(truststorePath, truststoreType, environment.getProperty("spring.kafka.ssl.truststore.password"));
+        String keyPassword = environment.getProperty("spring.kafka.ssl.key.password");
+        this.keyPassword = null == keyPassword ? null : keyPassword.toCharArray();
+        this.loadTime = Duration.ofNanos(System.nanoTime() - start);
+        LOGGER.info(">>> SSL stores loaded in {} ms - Keystore={} - Truststore={}", loadTime.toMillis(), keystorePath, truststorePath);
+    }
+
+    /**
+     * @return the path of the keystore file
+     */
+    public String getKeystorePath() {
+        return keystorePath;
+    }
+
+    /**
+     * @return the path of the truststore file
+     */
+    public String getTruststorePath() {
+        return truststorePath;
+    }
+
+    /**
+     * @return whether the keystore was extracted to a temporary file (e.g. from the jar)
+     */
+    public boolean isKeystoreExtracted() {
+        return keystoreExtracted;
+    }
+
+    /**
+     * @return whether the truststore was extracted to a temporary file (e.g. from the jar)
+     */
+    public boolean isTruststoreExtracted() {
+        return truststoreExtracted;
+    }
+
+    /**
+     * @return the type of the keystore
+     */
+    public String getKeystoreType() {
+        return keystoreType;
+    }
+
+    /**
+     * @return the type of the truststore
+     */
+    public String getTruststoreType() {
+        return truststoreType;
+    }
+
+    /**
+     * @return the loaded keystore
+     */
+    public KeyStore getKeystore() {
+        return keystore;
+    }
+
+    /**
+     * @return the loaded truststore
+     */
+    public KeyStore getTruststore() {
+        return truststore;
+    }
+
+    /**
+     * @return the time spent resolving and loading the stores
+     */
+    public Duration getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * @return the time of the TLS handshake with the first bootstrap server, or null if it wasn't probed
+     */
+    public Duration getHandshakeTime() {
+        return handshakeTime;
+    }
+
+    /**
+     * Measures the TLS handshake with the first bootstrap server using the loaded stores in a daemon thread,
+     * so the lookup, the connection and the handshake don't delay the startup.
+     *
+     * @param bootstrapServers the list of bootstrap servers (host:port,...)
+     * @param timeout          the maximum milliseconds to connect and to finish the handshake
+     */
+    public void probeHandshakeInBackground(String bootstrapServers, int timeout) {
+        Thread thread = new Thread(() -> probeHandshake(bootstrapServers, timeout), "kafka-ssl-handshake-probe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Measures the TLS handshake with the first bootstrap server using the loaded stores.
+     * The host name of the server is verified against its certificate, as the Kafka clients do by default.
+     * An error is logged, not thrown: the Kafka clients report the connection errors themselves.
+     *
+     * @param bootstrapServers the list of bootstrap servers (host:port,...)
+     * @param timeout          the maximum milliseconds to connect and to finish the handshake
+     * @return the time of the handshake, or null if it failed
+     */
+    public Duration probeHandshake(String bootstrapServers, int timeout) {
+        String server = bootstrapServers.split(",")[0].trim();
+        int separator = server.lastIndexOf(':');
+        if (separator < 0) {
+            LOGGER.error(">>> Can't probe the TLS handshake: the bootstrap server {} has no port", server);
+            return null;
+        }
+        String host = server.substring(0, separator);
+        int port = Integer.parseInt(server.substring(separator + 1));
+        try {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keystore, keyPassword);
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(truststore);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+            try (Socket plain = new Socket()) {
+                plain.connect(new InetSocketAddress(host, port), timeout);
+                plain.setSoTimeout(timeout);
+                try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(plain, host, port, false)) {
+                    SSLParameters parameters = socket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    socket.setSSLParameters(parameters);
+                    long start = System.nanoTime();
+                    socket.startHandshake();
+                    handshakeTime = Duration.ofNanos(System.nanoTime() - start);
+                }
+            }
+            LOGGER.info(">>> TLS handshake with {} in {} ms", server, handshakeTime.toMillis());
+            return handshakeTime;
+        } catch (IOException | GeneralSecurityException exc) {
+            LOGGER.error(">>> An error occurred probing the TLS handshake with {}", server, exc);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the path of a store, extracting it to a temporary file when it is not a file (e.g. inside a jar)
+     *
+     * @param location the location of the store
+     * @return the absolute path of the store file
+     * @throws KafkaException when the store can't be resolved
+     */
+    private static String resolve(String location) throws KafkaException {
+        if (null == location) {
+            throw new KafkaException("KafkaSslStores: The location of a SSL store is not configured");
+        }
+
+        Resource resource = new DefaultResourceLoader().getResource(location);
+        try {
+            if (isFile(location)) {
+                return resource.getFile().getAbsolutePath();
+            }
+
+            Path path = Files.createTempFile("kafka-ssl-", "-" + resource.getFilename());
+            File file = path.toFile();
+            file.deleteOnExit();
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            try (InputStream input = resource.getInputStream()) {
+                Files.copy(input, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOGGER.info(">>> SSL store {} extracted to {}", location, path);
+            return file.getAbsolutePath();
+        } catch (IOException exc) {
+            throw new KafkaException("KafkaSslStores: Can't resolve the SSL store " + location, exc);
+        }
+    }
+
+    /**
+     * @param location the location of a store
+     * @return whether the store is a file in the file system, and not inside a jar
+     */
+    private static boolean isFile(String location) {
+        return new DefaultResourceLoader().getResource(location).isFile();
+    }
+
+    /**
+     * Loads a store file
+     *
+     * @param path     the path of the store file
+     * @param type     the type of the store
+     * @param password the password of the store
+     * @return the loaded store
+     * @throws KafkaException when the store can't be loaded
+     */
+    static KeyStore load(String path, String type, String password) throws KafkaException {
+        try (InputStream input = Files.newInputStream(new File(path).toPath())) {
+            KeyStore store = KeyStore.getInstance(type);
+            store.load(input, null == password ? null : password.toCharArray());
+            return store;
+        } catch (IOException | GeneralSecurityException exc) {
+            throw new KafkaException("KafkaSslStores: Can't load the SSL store " + path, exc);
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package com.privalia.poc.kafka.security.config;
 
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import com.privalia.poc.kafka.security.streams.DictionaryWordSerde;
+import com.privalia.poc.kafka.security.streams.VarLongSerde;
+import com.privalia.poc.kafka.security.streams.WordDictionary;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.Stores;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,7 +18,10 @@ import org.springframework.core.env.Environment;
 import org.springframework.kafka.config.KafkaStreamsConfiguration;
 import org.springframework.kafka.config.StreamsBuilderFactoryBean;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Configuration class for Kafka Streams
@@ -20,6 +31,9 @@ import java.util.Map;
 @Configuration
 public class KafkaStreamsConfig {
 
+    /** The name of the state store with the count of every word */
+    public static final String COUNT_WORDS_STORE_NAME = "sim-kafka-steams-count-words-store";
+
     /* The environment object where to get the config options */
     private Environment environment;
 
@@ -54,7 +68,26 @@ public class KafkaStreamsConfig {
         props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
         props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, "default");
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, environment.getProperty("spring.kafka.streams.cache-max-bytes-buffering", "10485760"));
+        kafkaConfig.putIfPresent(props, StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, "spring.kafka.streams.num-standby-replicas");
+        kafkaConfig.putIfPresent(props, StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, "spring.kafka.streams.commit-interval-ms");
+        kafkaConfig.putIfPresent(props, StreamsConfig.APPLICATION_SERVER_CONFIG, "spring.kafka.streams.application-server");
+        kafkaConfig.putIfPresent(props, StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, "spring.kafka.streams.metrics-recording-level");
+        String rocksDBConfigSetter = environment.getProperty("spring.kafka.streams.rocksdb.config-setter", BoundedMemoryRocksDBConfig.class.getName());
+        if (!rocksDBConfigSetter.isEmpty()) {
+            props.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, rocksDBConfigSetter);
+        }
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.BLOCK_CACHE_SIZE_CONFIG, "spring.kafka.streams.rocksdb.block-cache-size");
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.TOTAL_MEMTABLE_SIZE_CONFIG, "spring.kafka.streams.rocksdb.total-memtable-size");
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.WRITE_BUFFER_SIZE_CONFIG, "spring.kafka.streams.rocksdb.write-buffer-size");
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.MAX_WRITE_BUFFERS_CONFIG, "spring.kafka.streams.rocksdb.max-write-buffers");
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.BLOOM_FILTER_CONFIG, "spring.kafka.streams.rocksdb.bloom-filter");
+        kafkaConfig.putIfPresent(props, BoundedMemoryRocksDBConfig.COMPRESSION_CONFIG, "spring.kafka.streams.rocksdb.compression");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        kafkaConfig.putIfPresent(props, StreamsConfig.mainConsumerPrefix(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG), "spring.kafka.streams.rebalance.session-timeout-ms");
+        kafkaConfig.putIfPresent(props, StreamsConfig.mainConsumerPrefix(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG), "spring.kafka.streams.rebalance.heartbeat-interval-ms");
+        kafkaConfig.putIfPresent(props, StreamsConfig.mainConsumerPrefix(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG), "spring.kafka.streams.rebalance.max-poll-interval-ms");
+        kafkaConfig.putIfPresent(props, StreamsConfig.mainConsumerPrefix(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG), "spring.kafka.streams.rebalance.request-timeout-ms");
         return props;
     }
 
@@ -62,15 +95,23 @@ public class KafkaStreamsConfig {
      * Create custom streams builder factory
      *
      * @param applicationId an identifier for the stream processing application.
+     * @param process       the name of the process in the config options (spring.kafka.streams.[process].*)
      * @return A factory to build the stream process
      */
-    private StreamsBuilderFactoryBean newCustomStreamsBuilderFactoryBean(String applicationId) {
+    private StreamsBuilderFactoryBean newCustomStreamsBuilderFactoryBean(String applicationId, String process) {
 
         Map<String, Object> props = streamsConfigs();
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        kafkaConfig.putIfPresent(props, StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, "spring.kafka.streams." + process + ".num-standby-replicas");
+        String instanceId = kafkaConfig.groupInstanceId();
+        if (null != instanceId) {
+            // Kafka Streams adds the suffix of every stream thread
+            props.put(StreamsConfig.mainConsumerPrefix(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG), instanceId);
+        }
 
         StreamsBuilderFactoryBean bean = new StreamsBuilderFactoryBean(new KafkaStreamsConfiguration(props));
         bean.setAutoStartup(Boolean.parseBoolean(environment.getProperty("spring.kafka.streams.auto-startup", "true")));
+        bean.setCloseTimeout(Integer.parseInt(environment.getProperty("spring.kafka.streams.close-timeout-s", "10")));
 
         return bean;
     }
@@ -82,6 +123,92 @@ public class KafkaStreamsConfig {
      */
     @Bean("sim-kafka-steams-count-words-bean")
     public StreamsBuilderFactoryBean kafkaStreamsCountWordsStreamBuilderFactoryBean() {
-        return newCustomStreamsBuilderFactoryBean("sim-kafka-steams-count-words");
+        return newCustomStreamsBuilderFactoryBean("sim-kafka-steams-count-words", "count-words");
+    }
+
+    /**
+     * Creates a bean for the Kafka Streams process of the trending words
+     *
+     * @return A factory to build the stream process
+     */
+    @Bean("sim-kafka-steams-trending-words-bean")
+    public StreamsBuilderFactoryBean kafkaStreamsTrendingWordsStreamBuilderFactoryBean() {
+        return newCustomStreamsBuilderFactoryBean("sim-kafka-steams-trending-words", "trending-words");
+    }
+
+    /**
+     * Creates the state store for the count of every word.
+     * The type is "rocksdb" (persistent, default), "in-memory" or "lru" (in-memory, bounded to a number of words).
+     *
+     * @return the supplier of the state store
+     */
+    @Bean("sim-kafka-steams-count-words-store")
+    public KeyValueBytesStoreSupplier kafkaStreamsCountWordsStoreSupplier() {
+        String type = environment.getProperty("spring.kafka.streams.count-words.store.type", "rocksdb");
+        switch (type) {
+            case "in-memory":
+                return Stores.inMemoryKeyValueStore(COUNT_WORDS_STORE_NAME);
+
+            case "lru":
+                int maxEntries = Integer.parseInt(environment.getProperty("spring.kafka.streams.count-words.store.lru-max-entries", "100000"));
+                return Stores.lruMap(COUNT_WORDS_STORE_NAME, maxEntries);
+
+            case "rocksdb":
+                return Stores.persistentKeyValueStore(COUNT_WORDS_STORE_NAME);
+
+            default:
+                throw new IllegalArgumentException("KafkaStreamsConfig: Unknown state store type " + type);
+        }
+    }
+
+    /**
+     * Creates the serde of the words in the repartition topic and the state store of the word count.
+     * With the dictionary encoding enabled the words are written as the varint ID of a shared dictionary,
+     * seeded with the words of the random text generator.
+     *
+     * @param wordTokenizer       the service to split the messages into words
+     * @param randomTextGenerator the service which generates the messages
+     * @return the serde of the words
+     */
+    @Bean("sim-kafka-steams-count-words-word-serde")
+    public Serde<String> kafkaStreamsCountWordsWordSerde(
+            WordTokenizer wordTokenizer,
+            RandomTextGenerator randomTextGenerator
+    ) {
+        if (!isDictionaryEncoding()) {
+            return Serdes.String();
+        }
+
+        WordDictionary dictionary = new WordDictionary(
+                environment.getProperty("spring.kafka.topics.sim-words-dictionary", "sim-poc-words-dictionary"),
+                Short.parseShort(environment.getProperty("spring.kafka.streams.replication-factor", "1")),
+                kafkaConfig.commonConfigs(),
+                Duration.ofMillis(Long.parseLong(environment.getProperty("spring.kafka.streams.count-words.dictionary-load-timeout-ms", "30000")))
+        );
+        dictionary.load();
+
+        Set<String> words = new LinkedHashSet<>();
+        wordTokenizer.words(String.join(" ", randomTextGenerator.getCorpus())).forEach(words::add);
+        dictionary.seed(words);
+
+        return new DictionaryWordSerde(dictionary);
+    }
+
+    /**
+     * Creates the serde of the counts in the repartition topic and the state store of the word count.
+     * With the dictionary encoding enabled the counts are written as varints.
+     *
+     * @return the serde of the counts
+     */
+    @Bean("sim-kafka-steams-count-words-count-serde")
+    public Serde<Long> kafkaStreamsCountWordsCountSerde() {
+        return isDictionaryEncoding() ? new VarLongSerde() : Serdes.Long();
+    }
+
+    /**
+     * @return true if the words and counts of the internal topics are encoded with the dictionary
+     */
+    private boolean isDictionaryEncoding() {
+        return Boolean.parseBoolean(environment.getProperty("spring.kafka.streams.count-words.dictionary-encoding", "false"));
     }
 }
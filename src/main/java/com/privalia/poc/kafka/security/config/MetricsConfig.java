@@ -0,0 +1,96 @@
+package com.privalia.poc.kafka.security.config;
+
+import com.privalia.poc.kafka.security.metrics.KafkaJmxMetrics;
+import com.privalia.poc.kafka.security.metrics.PrometheusHttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Configuration class for the metrics: an in-process Micrometer registry
+ * with the metrics of the Kafka clients, the SSL metrics and the application timers
+ *
+ * @author david.amigo
+ */
+@Configuration
+public class MetricsConfig {
+
+    /** The environment object where to get the config options */
+    private Environment environment;
+
+    /** The configuration class for Apache Kafka */
+    private KafkaConfig kafkaConfig;
+
+    /**
+     * Autowired Constructor
+     *
+     * @param environment the environment object where to get the config options
+     * @param kafkaConfig the configuration class for Apache Kafka
+     */
+    @Autowired
+    public MetricsConfig(
+            Environment environment,
+            KafkaConfig kafkaConfig
+    ) {
+        this.environment = environment;
+        this.kafkaConfig = kafkaConfig;
+    }
+
+    /**
+     * The in-process registry of the meters, which can be scraped as Prometheus text
+     *
+     * @return the meter registry
+     */
+    @Bean
+    public PrometheusMeterRegistry prometheusMeterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+
+    /**
+     * Binds the metrics of all the Kafka clients (producers, consumers and streams) to the registry
+     *
+     * @param registry the meter registry
+     * @return the binder of the Kafka client metrics
+     */
+    @Bean(destroyMethod = "close")
+    public KafkaJmxMetrics kafkaJmxMetrics(MeterRegistry registry) {
+        KafkaJmxMetrics metrics = new KafkaJmxMetrics(
+                ManagementFactory.getPlatformMBeanServer(),
+                Long.parseLong(environment.getProperty("spring.kafka.metrics.rescan-ms", "10000"))
+        );
+        metrics.bindTo(registry);
+        return metrics;
+    }
+
+    /**
+     * Binds the SSL metrics to the registry
+     *
+     * @param registry the meter registry
+     * @return the binder of the SSL metrics
+     */
+    @Bean
+    public KafkaSslMetrics kafkaSslMetrics(MeterRegistry registry) {
+        KafkaSslMetrics metrics = new KafkaSslMetrics(kafkaConfig);
+        metrics.bindTo(registry);
+        return metrics;
+    }
+
+    /**
+     * Exports the meters as Prometheus text on http://host:port/metrics
+     *
+     * @param registry the meter registry
+     * @return the HTTP server
+     */
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(name = "spring.kafka.metrics.prometheus.port")
+    public PrometheusHttpServer prometheusHttpServer(PrometheusMeterRegistry registry) {
+        return new PrometheusHttpServer(registry, Integer.parseInt(environment.getProperty("spring.kafka.metrics.prometheus.port")));
+    }
+}
@@ -0,0 +1,98 @@
+package com.privalia.poc.kafka.security.config;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactorySpi;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactorySpi;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.UnrecoverableKeyException;
+
+/**
+ * Security provider with the key manager and trust manager factories of the reloadable SSL material.
+ * The Kafka clients use it through the configs ssl.keymanager.algorithm and ssl.trustmanager.algorithm.
+ * All the factories return the same shared managers, so a reload reaches every client of the JVM.
+ *
+ * @author david.amigo
+ */
+public final class ReloadingSslProvider extends Provider {
+
+    /** The name of the provider */
+    public static final String NAME = "SimPocReloadingSsl";
+
+    /** The name of the key manager and trust manager algorithm */
+    public static final String ALGORITHM = "SimPocReloading";
+
+    /** The key manager shared by all the Kafka clients */
+    static final ReloadingX509KeyManager KEY_MANAGER = new ReloadingX509KeyManager();
+
+    /** The trust manager shared by all the Kafka clients */
+    static final ReloadingX509TrustManager TRUST_MANAGER = new ReloadingX509TrustManager();
+
+    /**
+     * Constructor
+     */
+    private ReloadingSslProvider() {
+        super(NAME, 1.0, "Reloadable SSL key and trust managers for the Kafka clients");
+        put("KeyManagerFactory." + ALGORITHM, ReloadingKeyManagerFactory.class.getName());
+        put("TrustManagerFactory." + ALGORITHM, ReloadingTrustManagerFactory.class.getName());
+    }
+
+    /**
+     * Registers the provider in the JVM if it is not registered yet
+     */
+    static synchronized void install() {
+        if (null == Security.getProvider(NAME)) {
+            Security.addProvider(new ReloadingSslProvider());
+        }
+    }
+
+    /**
+     * Key manager factory which returns the shared key manager,
+     * updated with the keystore loaded by the Kafka client
+     */
+    public static class ReloadingKeyManagerFactory extends KeyManagerFactorySpi {
+
+        @Override
+        protected void engineInit(KeyStore keystore, char[] keyPassword) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
+            KEY_MANAGER.update(keystore, keyPassword);
+        }
+
+        @Override
+        protected void engineInit(ManagerFactoryParameters parameters) throws InvalidAlgorithmParameterException {
+            throw new InvalidAlgorithmParameterException("ReloadingKeyManagerFactory: Manager factory parameters are not supported");
+        }
+
+        @Override
+        protected KeyManager[] engineGetKeyManagers() {
+            return new KeyManager[] { KEY_MANAGER };
+        }
+    }
+
+    /**
+     * Trust manager factory which returns the shared trust manager,
+     * updated with the truststore loaded by the Kafka client
+     */
+    public static class ReloadingTrustManagerFactory extends TrustManagerFactorySpi {
+
+        @Override
+        protected void engineInit(KeyStore truststore) throws KeyStoreException {
+            TRUST_MANAGER.update(truststore);
+        }
+
+        @Override
+        protected void engineInit(ManagerFactoryParameters parameters) throws InvalidAlgorithmParameterException {
+            throw new InvalidAlgorithmParameterException("ReloadingTrustManagerFactory: Manager factory parameters are not supported");
+        }
+
+        @Override
+        protected TrustManager[] engineGetTrustManagers() {
+            return new TrustManager[] { TRUST_MANAGER };
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.privalia.poc.kafka.security.config;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Key manager which delegates to the key manager of the last keystore loaded.
+ * The SSL contexts of the Kafka clients keep this instance, so the new connections use the new key material.
+ *
+ * @author david.amigo
+ */
+public class ReloadingX509KeyManager extends X509ExtendedKeyManager {
+
+    /** The key manager of the last keystore loaded */
+    private volatile X509ExtendedKeyManager delegate;
+
+    /**
+     * Replaces the key material
+     *
+     * @param keystore    the keystore
+     * @param keyPassword the password of the keys
+     * @throws KeyStoreException         when the keystore has no X509 key manager
+     * @throws NoSuchAlgorithmException  when the default algorithm is not available
+     * @throws UnrecoverableKeyException when a key can't be recovered
+     */
+    public void update(KeyStore keystore, char[] keyPassword) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
+        KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        factory.init(keystore, keyPassword);
+        for (KeyManager keyManager : factory.getKeyManagers()) {
+            if (keyManager instanceof X509ExtendedKeyManager) {
+                delegate = (X509ExtendedKeyManager) keyManager;
+                return;
+            }
+        }
+        throw new KeyStoreException("ReloadingX509KeyManager: No X509 key manager for the keystore");
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+        return delegate.chooseClientAlias(keyTypes, issuers, socket);
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        return delegate.chooseServerAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        return delegate.getCertificateChain(alias);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        return delegate.getPrivateKey(alias);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyTypes, Principal[] issuers, SSLEngine engine) {
+        return delegate.chooseEngineClientAlias(keyTypes, issuers, engine);
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        return delegate.chooseEngineServerAlias(keyType, issuers, engine);
+    }
+}
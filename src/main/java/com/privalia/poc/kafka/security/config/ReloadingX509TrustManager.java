@@ -0,0 +1,82 @@
+package com.privalia.poc.kafka.security.config;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Trust manager which delegates to the trust manager of the last truststore loaded.
+ * The SSL contexts of the Kafka clients keep this instance, so the new connections use the new trust material.
+ *
+ * @author david.amigo
+ */
+public class ReloadingX509TrustManager extends X509ExtendedTrustManager {
+
+    /** The trust manager of the last truststore loaded */
+    private volatile X509ExtendedTrustManager delegate;
+
+    /**
+     * Replaces the trust material
+     *
+     * @param truststore the truststore
+     * @throws KeyStoreException when the truststore has no X509 trust manager
+     */
+    public void update(KeyStore truststore) throws KeyStoreException {
+        TrustManagerFactory factory;
+        try {
+            factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        } catch (NoSuchAlgorithmException exc) {
+            throw new KeyStoreException("ReloadingX509TrustManager: The default algorithm is not available", exc);
+        }
+        factory.init(truststore);
+        for (TrustManager trustManager : factory.getTrustManagers()) {
+            if (trustManager instanceof X509ExtendedTrustManager) {
+                delegate = (X509ExtendedTrustManager) trustManager;
+                return;
+            }
+        }
+        throw new KeyStoreException("ReloadingX509TrustManager: No X509 trust manager for the truststore");
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        delegate.checkClientTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        delegate.checkClientTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        delegate.checkServerTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        delegate.checkServerTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+}
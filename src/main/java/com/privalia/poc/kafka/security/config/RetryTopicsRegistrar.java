@@ -0,0 +1,88 @@
+package com.privalia.poc.kafka.security.config;
+
+import com.privalia.poc.kafka.security.consumer.RetryTopicPublisher;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Declares a NewTopic bean for every retry topic and for the dead letter topic when the retry topics are enabled,
+ * so the Kafka admin creates them on startup, before the listeners subscribe to them.
+ * The number of retry topics depends on the delays configured, so the beans are registered one by one.
+ *
+ * @author david.amigo
+ */
+@Component
+public class RetryTopicsRegistrar implements BeanDefinitionRegistryPostProcessor, EnvironmentAware {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryTopicsRegistrar.class);
+
+    /** The prefix of the names of the NewTopic beans */
+    private static final String BEAN_PREFIX = "sim-kafka-topic-";
+
+    /** The environment object where to get the config options */
+    private Environment environment;
+
+    /**
+     * @param environment the environment object where to get the config options
+     */
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Registers the NewTopic beans of the retry topics and of the dead letter topic
+     *
+     * @param registry the registry of the bean definitions
+     */
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+        if (!environment.getProperty("spring.kafka.consumer.retry.enabled", Boolean.class, false)) {
+            return;
+        }
+
+        String topicName = environment.getRequiredProperty("spring.kafka.topics.sim-test1");
+        long[] delays = environment.getProperty("spring.kafka.consumer.retry.delays-ms", long[].class, new long[] { 1000, 10000, 60000 });
+        int partitions = environment.getProperty("spring.kafka.consumer.retry.partitions", Integer.class, 1);
+        short replicationFactor = environment.getProperty("spring.kafka.consumer.retry.replication-factor", Short.class, (short) 1);
+
+        for (long delay : delays) {
+            registerTopic(registry, RetryTopicPublisher.retryTopic(topicName, delay), partitions, replicationFactor);
+        }
+        registerTopic(registry, RetryTopicPublisher.deadLetterTopic(topicName), partitions, replicationFactor);
+    }
+
+    /**
+     * @param beanFactory the bean factory
+     */
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        // The beans are registered in postProcessBeanDefinitionRegistry
+    }
+
+    /**
+     * Registers the NewTopic bean of a topic
+     *
+     * @param registry          the registry of the bean definitions
+     * @param topic             the name of the topic
+     * @param partitions        the number of partitions of the topic
+     * @param replicationFactor the replication factor of the topic
+     */
+    private static void registerTopic(BeanDefinitionRegistry registry, String topic, int partitions, short replicationFactor) {
+        registry.registerBeanDefinition(
+                BEAN_PREFIX + topic,
+                BeanDefinitionBuilder.genericBeanDefinition(NewTopic.class, () -> new NewTopic(topic, partitions, replicationFactor))
+                        .getBeanDefinition()
+        );
+        LOGGER.info(">>> Topic declared: {} - Partitions={} - Replication factor={}", topic, partitions, replicationFactor);
+    }
+}
@@ -0,0 +1,79 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Factory of Kafka consumers which are static members of their group (KIP-345): every consumer has a group.instance.id
+ * derived from the identity of the host or pod, so a restart within the session timeout doesn't trigger a rebalance.
+ * The consumers of a concurrent listener container get the suffix of the container (-0, -1...), which is the same
+ * after every restart.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author david.amigo
+ */
+public class StaticMembershipConsumerFactory<K, V> extends DefaultKafkaConsumerFactory<K, V> {
+
+    /** The identity of the instance, the prefix of the group.instance.id of every consumer */
+    private final String instanceId;
+
+    /**
+     * Constructor
+     *
+     * @param configs    the configuration of the consumers
+     * @param instanceId the identity of the instance (host or pod name)
+     */
+    public StaticMembershipConsumerFactory(Map<String, Object> configs, String instanceId) {
+        super(configs);
+        if (null == instanceId || instanceId.isEmpty()) {
+            throw new IllegalArgumentException("StaticMembershipConsumerFactory: The instance id can't be empty");
+        }
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * @return the identity of the instance, the prefix of the group.instance.id of every consumer
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Creates a consumer with the group.instance.id of the instance
+     *
+     * @param groupId        the group id
+     * @param clientIdPrefix the prefix of the client id
+     * @param clientIdSuffix the suffix of the client id, also the suffix of the group.instance.id
+     * @return the consumer
+     */
+    @Override
+    public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix) {
+        return createConsumer(groupId, clientIdPrefix, clientIdSuffix, null);
+    }
+
+    /**
+     * Creates a consumer with the group.instance.id of the instance, unless the properties already have one
+     *
+     * @param groupId        the group id
+     * @param clientIdPrefix the prefix of the client id
+     * @param clientIdSuffix the suffix of the client id, also the suffix of the group.instance.id
+     * @param properties     the properties which override the configuration of the factory
+     * @return the consumer
+     */
+    @Override
+    public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix, Properties properties) {
+        Properties staticProperties = new Properties();
+        if (null != properties) {
+            staticProperties.putAll(properties);
+        }
+        if (!staticProperties.containsKey(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG)) {
+            staticProperties.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, instanceId + (null == clientIdSuffix ? "" : clientIdSuffix));
+        }
+        return super.createConsumer(groupId, clientIdPrefix, clientIdSuffix, staticProperties);
+    }
+}
@@ -0,0 +1,211 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Engine to process the consumed records concurrently, for handlers which spend most of the time waiting for I/O.
+ * Every record is processed by its own virtual thread when the JVM has them (Java 21+), or by a bounded pool
+ * of platform threads otherwise. The records of a partition are processed in parallel, up to a maximum
+ * in flight per partition, so they are NOT processed in order; the offsets are acknowledged in order,
+ * only when all the records before them are completed.
+ * When a partition has the maximum records in flight it is paused (backpressure) and resumed when half of them
+ * are completed, so the poll thread never waits and the group doesn't see it as stuck.
+ * A record which fails stops the acknowledgments of its partition, which is paused and consumed again from the
+ * failed record after a backoff. The records in flight of the revoked partitions are dropped.
+ *
+ * @author david.amigo
+ */
+@Component
+public class ConcurrentRecordEngine implements RecordProcessingEngine, DisposableBean {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentRecordEngine.class);
+
+    /** Whether the records are processed by this engine */
+    private final boolean enabled;
+
+    /** The maximum number of records in flight of every partition */
+    private final int maxInFlightPerPartition;
+
+    /** The executor of the records: virtual threads or a bounded pool */
+    private final ExecutorService executor;
+
+    /** The permits of the records in flight of every partition */
+    private final Map<TopicPartition, Semaphore> inFlight = new ConcurrentHashMap<>();
+
+    /** The tracker of the offsets to acknowledge */
+    private final PartitionOffsetTracker offsetTracker = new PartitionOffsetTracker();
+
+    /** The partitions paused while they can't take more records */
+    private final PausedPartitions pausedPartitions = new PausedPartitions();
+
+    /** The milliseconds to wait before consuming a failed partition again */
+    private final long failureBackoff;
+
+    /**
+     * Autowired constructor
+     *
+     * @param enabled                 whether the records are processed by this engine
+     * @param maxInFlightPerPartition the maximum number of records in flight of every partition
+     * @param virtualThreads          whether to use virtual threads when the JVM has them
+     * @param threads                 the number of platform threads when virtual threads are not used
+     * @param failureBackoff          the milliseconds to wait before consuming a failed partition again
+     */
+    @Autowired
+    public ConcurrentRecordEngine(
+            @Value("${spring.kafka.consumer.concurrent-engine.enabled:false}") boolean enabled,
+            @Value("${spring.kafka.consumer.concurrent-engine.max-in-flight-per-partition:100}") int maxInFlightPerPartition,
+            @Value("${spring.kafka.consumer.concurrent-engine.virtual-threads:true}") boolean virtualThreads,
+            @Value("${spring.kafka.consumer.concurrent-engine.threads:64}") int threads,
+            @Value("${spring.kafka.consumer.concurrent-engine.failure-backoff-ms:1000}") long failureBackoff
+    ) {
+        if (maxInFlightPerPartition < 1 || threads < 1) {
+            throw new IllegalArgumentException("ConcurrentRecordEngine: max-in-flight-per-partition and threads must be greater than zero");
+        }
+        this.enabled = enabled;
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+        this.failureBackoff = failureBackoff;
+        this.executor = enabled ? newExecutor(virtualThreads, threads) : null;
+    }
+
+    /**
+     * @return whether the records are processed by this engine
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands a record to a new task, or pauses its partition when it has the maximum records in flight
+     * or a record of the partition failed. Must be called from the poll thread, in poll order.
+     *
+     * @param record   the record
+     * @param ack      the acknowledgment object of the record
+     * @param consumer the Kafka consumer, to pause, seek and resume the partitions in the poll thread
+     * @param handler  the logic to process the record
+     */
+    @Override
+    public void submit(ConsumerRecord<String, String> record, Acknowledgment ack, org.apache.kafka.clients.consumer.Consumer<?, ?> consumer,
+                       Consumer<ConsumerRecord<String, String>> handler) {
+        pausedPartitions.resumeReady(consumer);
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        if (pausedPartitions.isPaused(consumer, partition)) {
+            return;
+        }
+        long failedOffset = offsetTracker.failedOffset(partition);
+        if (failedOffset >= 0) {
+            pausedPartitions.pauseFailed(consumer, partition, failedOffset, offsetTracker, failureBackoff);
+            return;
+        }
+
+        Semaphore permits = inFlight.computeIfAbsent(partition, tp -> new Semaphore(maxInFlightPerPartition));
+        if (!permits.tryAcquire()) {
+            // The record is consumed again when half of the records in flight are completed
+            pausedPartitions.pause(consumer, partition, record.offset(),
+                    () -> permits.availablePermits() >= Math.max(1, maxInFlightPerPartition / 2));
+            return;
+        }
+
+        PartitionOffsetTracker.PartitionRecords partitionRecords = offsetTracker.register(record, ack);
+        try {
+            executor.execute(() -> {
+                try {
+                    handler.accept(record);
+                    partitionRecords.complete(record.offset());
+                } catch (RuntimeException exc) {
+                    LOGGER.error(">>> An error occurred processing a record, the partition is stopped: Topic={}, Partition={}, Offset={}, Key={}",
+                            record.topic(), record.partition(), record.offset(), record.key(), exc);
+                    partitionRecords.fail(record.offset());
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException exc) {
+            partitionRecords.fail(record.offset());
+            permits.release();
+            throw exc;
+        }
+    }
+
+    /**
+     * Resumes the paused partitions of a consumer with room for more records or whose failure backoff is over
+     *
+     * @param consumer the Kafka consumer
+     */
+    @Override
+    public void resumePartitions(org.apache.kafka.clients.consumer.Consumer<?, ?> consumer) {
+        pausedPartitions.resumeReady(consumer);
+    }
+
+    /**
+     * Drops the records in flight of the revoked partitions: they are acknowledged no more
+     *
+     * @param partitions the revoked partitions
+     */
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        offsetTracker.revoke(partitions);
+        pausedPartitions.revoke(partitions);
+    }
+
+    /**
+     * Stops the executor waiting for the records in flight
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (null != executor) {
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Creates the executor of the records: a virtual thread per record if the JVM has them (found by reflection,
+     * the project is compiled for Java 8), or a fixed pool of platform threads
+     *
+     * @param virtualThreads whether to use virtual threads when the JVM has them
+     * @param threads        the number of platform threads when virtual threads are not used
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(boolean virtualThreads, int threads) {
+        if (virtualThreads) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService executor = (ExecutorService) factory.invoke(null);
+                LOGGER.info(">>> Concurrent record engine with virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException exc) {
+                LOGGER.info(">>> Virtual threads are not available in this JVM: using a pool of {} threads", threads);
+            }
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "kafka-record-engine-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import com.privalia.poc.kafka.security.logging.SampledLogger;
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka consumer to receive messages from a Kafka topic in batches (all the records of a poll).
+ * The failed records are not published to the retry topics: a failed record and the rest of its batch
+ * are redelivered after the nack sleep, so a record which always fails stops its partition.
+ *
+ * @author david.amigo
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.batch-listener", havingValue = "true")
+public class KafkaBatchConsumer {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaBatchConsumer.class);
+
+    /** Sampled logger for the diagnostics of every record */
+    private final SampledLogger diagnostics;
+
+    /** Milliseconds to wait before the failed record and the rest of the batch are redelivered */
+    private final long nackSleep;
+
+    /** Timer of the processing of every batch */
+    private final Timer listenTimer;
+
+    /**
+     * Autowired constructor
+     *
+     * @param nackSleep     milliseconds to wait before the failed record and the rest of the batch are redelivered
+     * @param retryEnabled  whether the retry topics are enabled, they are not used by the batch listener
+     * @param meterRegistry the registry of the application timers
+     * @param loggerFactory the factory of the sampled loggers for the diagnostics
+     */
+    @Autowired
+    public KafkaBatchConsumer(
+            @Value("${spring.kafka.consumer.nack-sleep-ms:1000}") long nackSleep,
+            @Value("${spring.kafka.consumer.retry.enabled:false}") boolean retryEnabled,
+            MeterRegistry meterRegistry,
+            SampledLoggerFactory loggerFactory
+    ) {
+        if (retryEnabled) {
+            LOGGER.warn(">>> The retry topics are not used by the batch listener: the failed records are redelivered with the rest of their batch");
+        }
+        this.nackSleep = nackSleep;
+        this.diagnostics = loggerFactory.getLogger("consumer", KafkaBatchConsumer.class);
+        this.listenTimer = Timer.builder("kafka.app.listen")
+                .description("Time processing the records, without the time waiting for the broker")
+                .tag("listener", "batch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Kafka batch listener. Acknowledges the whole batch once.
+     * When a record fails, the offsets of the records before it are committed
+     * and the failed record and the rest of the batch are redelivered in the next poll.
+     *
+     * @param records the records of the poll
+     * @param ack     the acknowledgment object
+     */
+    @KafkaListener(
+            topics = "${spring.kafka.topics.sim-test1}",
+            groupId = "${spring.kafka.group-ids.sim-test1}",
+            containerFactory = "kafkaBatchListenerContainerFactory",
+            autoStartup = "false"
+    )
+    public void listen(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+        long start = System.nanoTime();
+        try {
+            processAll(records, ack);
+        } finally {
+            listenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Processes the records of the batch and acknowledges them
+     *
+     * @param records the records of the poll
+     * @param ack     the acknowledgment object
+     */
+    private void processAll(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+        for (int index = 0; index < records.size(); index++) {
+            ConsumerRecord<String, String> record = records.get(index);
+            try {
+                process(record);
+            } catch (RuntimeException exc) {
+                diagnostics.error(">>> An error occurred consuming from Kafka: Topic={}, Partition={}, Offset={}, Key={}",
+                        record.topic(), record.partition(), record.offset(), record.key(), exc);
+                ack.nack(index, nackSleep);
+                return;
+            }
+        }
+        ack.acknowledge();
+    }
+
+    /**
+     * Processes a single record of the batch
+     *
+     * @param record the record
+     */
+    void process(ConsumerRecord<String, String> record) {
+        diagnostics.info(">>> Consuming from Kafka: Topic={}, Key={}, Value={}", record.topic(), record.key(), record.value());
+    }
+}
@@ -0,0 +1,379 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strategy to commit the offsets of the consumer: the acknowledgments are coalesced and committed asynchronously
+ * every N records or T milliseconds of a partition, whichever comes first, instead of once per poll.
+ * The commits are always done in the consumer thread: when a record is received and on the idle events.
+ * The offsets are committed synchronously when the partitions are revoked, when a partition reaches
+ * the maximum replay window (records processed but not committed), and when the application is closed.
+ * The semantics are at-least-once: after a crash the records of the replay window are processed again.
+ *
+ * @author david.amigo
+ */
+@Component
+public class KafkaCommitStrategy implements ConsumerAwareRebalanceListener, ApplicationListener<ContextClosedEvent> {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaCommitStrategy.class);
+
+    /** Whether the offsets are committed by this strategy or by the container once per poll */
+    private final boolean enabled;
+
+    /** The number of records of a partition which triggers an asynchronous commit */
+    private final int commitRecords;
+
+    /** The milliseconds after which the acknowledged records of a partition are committed */
+    private final long commitInterval;
+
+    /** The maximum number of records of a partition processed but not committed */
+    private final int maxReplayRecords;
+
+    /** The maximum milliseconds to wait for the last commits when the application is closed */
+    private final long closeTimeout;
+
+    /** The acknowledged offsets of every partition which are not committed yet */
+    private final Map<TopicPartition, PendingOffset> pending = new ConcurrentHashMap<>();
+
+    /** Whether the application is closing: every consumer commits all its offsets synchronously */
+    private volatile boolean closing = false;
+
+    /** Timer of the asynchronous commits, from the request to the callback */
+    private final Timer asyncCommitTimer;
+
+    /** Timer of the synchronous commits */
+    private final Timer syncCommitTimer;
+
+    /** Counter of the failed commits */
+    private final Counter failedCommits;
+
+    /**
+     * Autowired constructor
+     *
+     * @param enabled          whether the offsets are committed by this strategy
+     * @param commitRecords    the number of records of a partition which triggers an asynchronous commit
+     * @param commitInterval   the milliseconds after which the acknowledged records of a partition are committed
+     * @param maxReplayRecords the maximum number of records of a partition processed but not committed
+     * @param closeTimeout     the maximum milliseconds to wait for the last commits when the application is closed
+     * @param meterRegistry    the registry of the commit meters
+     */
+    @Autowired
+    public KafkaCommitStrategy(
+            @Value("${spring.kafka.consumer.commit.enabled:false}") boolean enabled,
+            @Value("${spring.kafka.consumer.commit.records:500}") int commitRecords,
+            @Value("${spring.kafka.consumer.commit.interval-ms:1000}") long commitInterval,
+            @Value("${spring.kafka.consumer.commit.max-replay-records:5000}") int maxReplayRecords,
+            @Value("${spring.kafka.consumer.commit.close-timeout-ms:5000}") long closeTimeout,
+            MeterRegistry meterRegistry
+    ) {
+        if (commitRecords < 1 || commitInterval < 1 || maxReplayRecords < commitRecords) {
+            throw new IllegalArgumentException("KafkaCommitStrategy: records and interval-ms must be greater than zero and max-replay-records not lower than records");
+        }
+        this.enabled = enabled;
+        this.commitRecords = commitRecords;
+        this.commitInterval = commitInterval;
+        this.maxReplayRecords = maxReplayRecords;
+        this.closeTimeout = closeTimeout;
+        this.asyncCommitTimer = Timer.builder("kafka.app.commit")
+                .description("Time of the offset commits")
+                .tag("mode", "async")
+                .register(meterRegistry);
+        this.syncCommitTimer = Timer.builder("kafka.app.commit")
+                .description("Time of the offset commits")
+                .tag("mode", "sync")
+                .register(meterRegistry);
+        this.failedCommits = Counter.builder("kafka.app.commit.failures")
+                .description("Offset commits which failed")
+                .register(meterRegistry);
+        Gauge.builder("kafka.app.commit.uncommitted", this, KafkaCommitStrategy::getUncommittedRecords)
+                .description("Records processed but not committed (the replay window)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return whether the offsets are committed by this strategy or by the container once per poll
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the acknowledgment of a record, which only registers its offset to be committed later.
+     * It must be called in the consumer thread, when the record is received; the acknowledgment can be called
+     * from any thread. It is bound to the current assignment of the partition: when the partition is revoked
+     * the acknowledgment is ignored, even if the partition is assigned again later.
+     *
+     * @param record the record
+     * @return the acknowledgment of the record
+     */
+    public Acknowledgment acknowledgment(ConsumerRecord<?, ?> record) {
+        PendingOffset pendingOffset = pending.computeIfAbsent(
+                new TopicPartition(record.topic(), record.partition()), tp -> new PendingOffset());
+        long offset = record.offset() + 1;
+        return () -> pendingOffset.acknowledge(offset);
+    }
+
+    /**
+     * Commits the offsets of the partitions of a consumer which are due: asynchronously when they reach
+     * the number of records or the interval, synchronously when they reach the replay window or the application
+     * is closing. The partitions with an asynchronous commit in flight are skipped, except when closing.
+     * Must be called in the consumer thread.
+     *
+     * @param consumer the Kafka consumer
+     */
+    public void maybeCommit(Consumer<?, ?> consumer) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean sync = closing;
+        Map<TopicPartition, PendingOffset> due = new HashMap<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            PendingOffset offset = pending.get(partition);
+            if (null == offset) {
+                continue;
+            }
+            synchronized (offset) {
+                long records = offset.uncommitted();
+                if (records == 0 || (offset.committing && !closing)) {
+                    continue;
+                }
+                sync |= records >= maxReplayRecords;
+                if (closing || records >= commitRecords || now - offset.lastCommit >= commitInterval) {
+                    due.put(partition, offset);
+                }
+            }
+        }
+        commit(consumer, due, sync);
+    }
+
+    /**
+     * Creates the pending offsets of the partitions assigned
+     *
+     * @param consumer   the Kafka consumer
+     * @param partitions the assigned partitions
+     */
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            pending.computeIfAbsent(partition, tp -> new PendingOffset());
+        }
+    }
+
+    /**
+     * Commits the acknowledged offsets of the revoked partitions synchronously.
+     * The partitions are forgotten: the acknowledgments which arrive later are ignored.
+     *
+     * @param consumer   the Kafka consumer
+     * @param partitions the revoked partitions
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, PendingOffset> revoked = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            PendingOffset offset = pending.remove(partition);
+            if (null != offset) {
+                offset.revoke();
+                if (offset.uncommitted() > 0) {
+                    revoked.put(partition, offset);
+                }
+            }
+        }
+        commit(consumer, revoked, true);
+    }
+
+    /**
+     * Commits the due offsets when the consumer doesn't receive records
+     *
+     * @param event the idle event of a listener container
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (enabled) {
+            maybeCommit(event.getConsumer());
+        }
+    }
+
+    /**
+     * Makes every consumer commit all the offsets of its partitions synchronously, and waits for it,
+     * when the application is closed
+     *
+     * @param event the event of the application context closed
+     */
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        closing = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeout);
+        while (getUncommittedRecords() > 0) {
+            if (System.nanoTime() >= deadline) {
+                LOGGER.error(">>> The last offsets weren't committed in {} ms: the records will be replayed", closeTimeout);
+                return;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        LOGGER.info(">>> The last offsets were committed");
+    }
+
+    /**
+     * @return the number of records acknowledged and not committed of the partitions assigned (the replay window)
+     */
+    public long getUncommittedRecords() {
+        return pending.values().stream().mapToLong(PendingOffset::uncommitted).sum();
+    }
+
+    /**
+     * Commits the offsets. They are marked as committed only when the commit succeeds:
+     * the offsets of a failed commit are still pending and they are committed again.
+     *
+     * @param consumer the Kafka consumer
+     * @param due      the pending offsets to commit, by partition
+     * @param sync     whether the commit is synchronous
+     */
+    private void commit(Consumer<?, ?> consumer, Map<TopicPartition, PendingOffset> due, boolean sync) {
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Map<PendingOffset, Long> acknowledged = new HashMap<>();
+        due.forEach((partition, pendingOffset) -> {
+            synchronized (pendingOffset) {
+                offsets.put(partition, new OffsetAndMetadata(pendingOffset.offset));
+                acknowledged.put(pendingOffset, pendingOffset.acknowledged);
+                pendingOffset.committing = true;
+            }
+        });
+
+        long start = System.nanoTime();
+        if (sync) {
+            try {
+                consumer.commitSync(offsets);
+                syncCommitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                acknowledged.forEach(PendingOffset::committed);
+            } catch (WakeupException exc) {
+                acknowledged.keySet().forEach(PendingOffset::failed);
+                throw exc;
+            } catch (KafkaException exc) {
+                acknowledged.keySet().forEach(PendingOffset::failed);
+                failedCommits.increment();
+                LOGGER.error(">>> An error occurred committing the offsets {}", offsets, exc);
+            }
+        } else {
+            consumer.commitAsync(offsets, (result, exc) -> {
+                asyncCommitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (null == exc) {
+                    acknowledged.forEach(PendingOffset::committed);
+                } else {
+                    // The offsets are still pending: they are committed again on the next interval
+                    acknowledged.keySet().forEach(PendingOffset::failed);
+                    failedCommits.increment();
+                    LOGGER.error(">>> An error occurred committing the offsets {}", offsets, exc);
+                }
+            });
+        }
+    }
+
+    /**
+     * The acknowledged offset of a partition while it is assigned, and the records acknowledged since the last commit
+     */
+    private static class PendingOffset {
+
+        /** The next offset to consume: the last acknowledged record plus one */
+        private long offset = -1;
+
+        /** The number of records acknowledged while the partition is assigned */
+        private long acknowledged = 0;
+
+        /** The number of records acknowledged when the last successful commit was requested */
+        private long committedAcknowledged = 0;
+
+        /** The time of the last commit, in epoch milliseconds */
+        private long lastCommit = System.currentTimeMillis();
+
+        /** Whether a commit of the partition is in flight */
+        private boolean committing = false;
+
+        /** Whether the partition was revoked: the acknowledgments are ignored */
+        private boolean revoked = false;
+
+        /**
+         * @param offset the next offset to consume
+         */
+        synchronized void acknowledge(long offset) {
+            if (revoked) {
+                return;
+            }
+            if (offset > this.offset) {
+                this.offset = offset;
+            }
+            acknowledged++;
+        }
+
+        /**
+         * @return the number of records acknowledged since the last successful commit
+         */
+        synchronized long uncommitted() {
+            return acknowledged - committedAcknowledged;
+        }
+
+        /**
+         * @param acknowledgedAtCommit the records acknowledged when the commit was requested
+         */
+        synchronized void committed(long acknowledgedAtCommit) {
+            committedAcknowledged = Math.max(committedAcknowledged, acknowledgedAtCommit);
+            lastCommit = System.currentTimeMillis();
+            committing = false;
+        }
+
+        /**
+         * The commit failed: the records are still pending
+         */
+        synchronized void failed() {
+            committing = false;
+        }
+
+        /**
+         * The partition was revoked: the acknowledgments which arrive later are ignored
+         */
+        synchronized void revoke() {
+            revoked = true;
+        }
+    }
+}
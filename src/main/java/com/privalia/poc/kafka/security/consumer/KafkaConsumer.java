@@ -1,44 +1,162 @@
 package com.privalia.poc.kafka.security.consumer;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.privalia.poc.kafka.security.load.EndToEndLatencyRecorder;
+import com.privalia.poc.kafka.security.logging.SampledLogger;
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.lang.Nullable;
-import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
- * Kafka consumer to receive messages from a Kafka topic
+ * Kafka consumer to receive messages from a Kafka topic one by one
  */
 @Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.batch-listener", havingValue = "false", matchIfMissing = true)
 public class KafkaConsumer {
 
-    /** Logger */
-    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaConsumer.class);
+    /** The ID of the listener */
+    private static final String LISTENER_ID = "sim-kafka-listener";
+
+    /** Sampled logger for the diagnostics of every record */
+    private final SampledLogger diagnostics;
+
+    /** The engine to process the records out of the poll thread, or null to process them in the poll thread */
+    private final RecordProcessingEngine engine;
+
+    /** Timer of the processing of every record */
+    private final Timer listenTimer;
+
+    /** The recorder of the end-to-end latency of the messages of the load generator */
+    private final EndToEndLatencyRecorder endToEndLatencyRecorder;
+
+    /** The publisher of the failed records to the retry topics */
+    private final RetryTopicPublisher retryTopicPublisher;
+
+    /** The strategy to commit the offsets, when enabled */
+    private final KafkaCommitStrategy commitStrategy;
+
+    /**
+     * Autowired constructor
+     *
+     * @param engines                 the engines to process the records out of the poll thread (at most one enabled)
+     * @param meterRegistry           the registry of the application timers
+     * @param loggerFactory           the factory of the sampled loggers for the diagnostics
+     * @param endToEndLatencyRecorder the recorder of the end-to-end latency of the messages of the load generator
+     * @param retryTopicPublisher     the publisher of the failed records to the retry topics
+     * @param commitStrategy          the strategy to commit the offsets
+     */
+    @Autowired
+    public KafkaConsumer(
+            List<RecordProcessingEngine> engines,
+            MeterRegistry meterRegistry,
+            SampledLoggerFactory loggerFactory,
+            EndToEndLatencyRecorder endToEndLatencyRecorder,
+            RetryTopicPublisher retryTopicPublisher,
+            KafkaCommitStrategy commitStrategy
+    ) {
+        List<RecordProcessingEngine> enabled = engines.stream().filter(RecordProcessingEngine::isEnabled).collect(Collectors.toList());
+        if (enabled.size() > 1) {
+            throw new IllegalStateException("KafkaConsumer: Only one record processing engine can be enabled");
+        }
+        this.engine = enabled.isEmpty() ? null : enabled.get(0);
+        this.endToEndLatencyRecorder = endToEndLatencyRecorder;
+        this.retryTopicPublisher = retryTopicPublisher;
+        this.commitStrategy = commitStrategy;
+        this.diagnostics = loggerFactory.getLogger("consumer", KafkaConsumer.class);
+        this.listenTimer = Timer.builder("kafka.app.listen")
+                .description("Time processing the records, without the time waiting for the broker")
+                .tag("listener", "record")
+                .register(meterRegistry);
+    }
 
     /**
-     * Kafka listener
+     * Kafka listener.
+     * With the retry topics enabled a failed record is published to the first retry topic and acknowledged,
+     * so the partition doesn't stop.
+     * With the commit strategy enabled the records are acknowledged to the strategy, which commits them
+     * in batches in the consumer thread.
      *
-     * @param value The value of the message
-     * @param ack   The acknowledgment object
-     * @param key   The key of the message
-     * @param topic The name of the topic
+     * @param record   The record
+     * @param ack      The acknowledgment object
+     * @param consumer The Kafka consumer, to commit the offsets and to pause the partitions in the consumer thread
      */
     @KafkaListener(
+            id = LISTENER_ID,
             topics = "${spring.kafka.topics.sim-test1}",
             groupId = "${spring.kafka.group-ids.sim-test1}",
             containerFactory = "kafkaListenerContainerFactory",
             autoStartup = "false"
     )
-    public void listen(
-            String value,
-            Acknowledgment ack,
-            @Nullable @Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) String key,
-            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic
-    ) {
-        LOGGER.info(">>> Consuming from Kafka: Topic={}, Key={}, Value={}", topic, key, value);
-        ack.acknowledge();
+    public void listen(ConsumerRecord<String, String> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (commitStrategy.isEnabled()) {
+            commitStrategy.maybeCommit(consumer);
+            ack = commitStrategy.acknowledgment(record);
+        }
+
+        if (null != engine) {
+            engine.submit(record, ack, consumer, this::processOrRetry);
+        } else {
+            processOrRetry(record);
+            ack.acknowledge();
+        }
+    }
+
+    /**
+     * Resumes the partitions paused by the engine when the consumer doesn't receive records:
+     * all its partitions may be paused
+     *
+     * @param event the idle event of the listener container
+     */
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (null != engine) {
+            engine.resumePartitions(event.getConsumer());
+        }
+    }
+
+    /**
+     * Processes a single record, publishing it to the retry topics if it fails
+     *
+     * @param record the record
+     */
+    private void processOrRetry(ConsumerRecord<String, String> record) {
+        try {
+            process(record);
+        } catch (RuntimeException exc) {
+            if (!retryTopicPublisher.isEnabled()) {
+                throw exc;
+            }
+            retryTopicPublisher.publishFailure(record, exc);
+        }
+    }
+
+    /**
+     * Processes a single record, measuring the time spent
+     *
+     * @param record the record
+     */
+    void process(ConsumerRecord<String, String> record) {
+        listenTimer.record(() -> handle(record));
+    }
+
+    /**
+     * Handles a single record
+     *
+     * @param record the record
+     */
+    private void handle(ConsumerRecord<String, String> record) {
+        endToEndLatencyRecorder.record(record);
+        diagnostics.info(">>> Consuming from Kafka: Topic={}, Key={}, Value={}", record.topic(), record.key(), record.value());
     }
 }
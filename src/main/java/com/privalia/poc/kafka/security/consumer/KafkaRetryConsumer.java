@@ -0,0 +1,142 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kafka consumer of the retry topics.
+ * A record is processed again when its delay has passed since it failed; until then its partition is paused
+ * and the consumer seeks back to it, so no thread sleeps and the other partitions keep moving.
+ * When the record fails again it goes to the next retry topic, and after the last one to the dead letter topic.
+ * The listener subscribes to the retry topics by name: with a pattern the topics created later would only be seen
+ * after the next refresh of the metadata (metadata.max.age.ms).
+ *
+ * @author david.amigo
+ */
+@Component
+@ConditionalOnExpression("${spring.kafka.consumer.retry.enabled:false} and !${spring.kafka.consumer.batch-listener:false}")
+public class KafkaRetryConsumer {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaRetryConsumer.class);
+
+    /** The ID of the listener */
+    private static final String LISTENER_ID = "sim-kafka-retry-listener";
+
+    /** The consumer of the main topic, which processes the records */
+    private final KafkaConsumer kafkaConsumer;
+
+    /** The publisher of the records which fail again */
+    private final RetryTopicPublisher retryTopicPublisher;
+
+    /** The time when every paused partition is due, in epoch milliseconds */
+    private final Map<TopicPartition, Long> pausedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Autowired constructor
+     *
+     * @param kafkaConsumer       the consumer of the main topic, which processes the records
+     * @param retryTopicPublisher the publisher of the records which fail again
+     */
+    @Autowired
+    public KafkaRetryConsumer(KafkaConsumer kafkaConsumer, RetryTopicPublisher retryTopicPublisher) {
+        this.kafkaConsumer = kafkaConsumer;
+        this.retryTopicPublisher = retryTopicPublisher;
+    }
+
+    /**
+     * Kafka listener of the retry topics
+     *
+     * @param record   the record
+     * @param ack      the acknowledgment object
+     * @param consumer the Kafka consumer, to pause, seek and resume the partitions in the consumer thread
+     */
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = "#{@retryTopicPublisher.retryTopics}",
+            groupId = "${spring.kafka.group-ids.sim-test1-retry}",
+            containerFactory = "kafkaRetryListenerContainerFactory",
+            autoStartup = "false"
+    )
+    public void listen(ConsumerRecord<String, String> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        resumeDuePartitions(consumer);
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        if (pausedUntil.containsKey(partition)) {
+            if (consumer.paused().contains(partition)) {
+                // A record of the same poll after the paused one: it is fetched again after the seek
+                return;
+            }
+            // The pause was lost in a rebalance
+            pausedUntil.remove(partition);
+        }
+
+        long delay = retryTopicPublisher.delayOf(record.topic());
+        long due = record.timestamp() + Math.max(0, delay);
+        if (due > System.currentTimeMillis()) {
+            consumer.pause(Collections.singleton(partition));
+            consumer.seek(partition, record.offset());
+            pausedUntil.put(partition, due);
+            return;
+        }
+
+        try {
+            kafkaConsumer.process(record);
+        } catch (RuntimeException exc) {
+            retryTopicPublisher.publishFailure(record, exc);
+        }
+        ack.acknowledge();
+    }
+
+    /**
+     * Resumes the due partitions when the consumer doesn't receive records: all its partitions are paused
+     * or the retry topics are empty
+     *
+     * @param event the idle event of a listener container
+     */
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        resumeDuePartitions(event.getConsumer());
+    }
+
+    /**
+     * Resumes the paused partitions of a consumer whose time has come. Must be called in the consumer thread.
+     *
+     * @param consumer the Kafka consumer
+     */
+    void resumeDuePartitions(Consumer<?, ?> consumer) {
+        if (pausedUntil.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<TopicPartition> due = new ArrayList<>();
+        for (TopicPartition partition : consumer.paused()) {
+            Long until = pausedUntil.get(partition);
+            if (null != until && until <= now) {
+                due.add(partition);
+                pausedUntil.remove(partition);
+            }
+        }
+        if (!due.isEmpty()) {
+            consumer.resume(due);
+            LOGGER.info(">>> Retry partitions resumed: {}", due);
+        }
+    }
+}
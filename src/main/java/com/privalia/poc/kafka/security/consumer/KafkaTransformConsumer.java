@@ -0,0 +1,108 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Kafka consumer to consume, transform and produce messages with exactly-once semantics.
+ * The records of every poll are transformed into the output topic in a single transaction
+ * which also commits the offsets of the records.
+ * It needs the transaction id prefix of the producers.
+ *
+ * @author david.amigo
+ */
+@Component
+@ConditionalOnExpression("${spring.kafka.consumer.transform.enabled:false} and '${spring.kafka.producer.transactional.transaction-id-prefix:}' != ''")
+public class KafkaTransformConsumer {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaTransformConsumer.class);
+
+    /** Kafka template for sending the transformed messages in the transaction of the container */
+    private final KafkaTemplate<String, String> kafkaTransformTemplate;
+
+    /** The name of the output topic */
+    private final String outputTopic;
+
+    /** The service to split the messages into words */
+    private final WordTokenizer wordTokenizer;
+
+    /** Timer of the processing of every batch */
+    private final Timer listenTimer;
+
+    /**
+     * Autowired constructor
+     *
+     * @param kafkaTransformTemplate the Kafka template for sending the transformed messages in the transaction of the container
+     * @param outputTopic            the name of the output topic
+     * @param wordTokenizer          the service to split the messages into words
+     * @param meterRegistry          the registry of the application timers
+     */
+    @Autowired
+    public KafkaTransformConsumer(
+            @Qualifier("sim-kafka-transform-template") KafkaTemplate<String, String> kafkaTransformTemplate,
+            @Value("${spring.kafka.topics.sim-transformed}") String outputTopic,
+            WordTokenizer wordTokenizer,
+            MeterRegistry meterRegistry
+    ) {
+        this.kafkaTransformTemplate = kafkaTransformTemplate;
+        this.outputTopic = outputTopic;
+        this.wordTokenizer = wordTokenizer;
+        this.listenTimer = Timer.builder("kafka.app.listen")
+                .description("Time processing the records, without the time waiting for the broker")
+                .tag("listener", "transform")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Kafka transactional batch listener.
+     * The container starts the transaction before the call and commits it, with the offsets, after it;
+     * when the listener fails the transaction is aborted and the records are redelivered.
+     *
+     * @param records the records of the poll
+     */
+    @KafkaListener(
+            topics = "${spring.kafka.topics.sim-test1}",
+            groupId = "${spring.kafka.group-ids.sim-test1-transform}",
+            containerFactory = "kafkaTransactionalListenerContainerFactory",
+            autoStartup = "false"
+    )
+    public void listen(List<ConsumerRecord<String, String>> records) {
+        listenTimer.record(() -> {
+            for (ConsumerRecord<String, String> record : records) {
+                kafkaTransformTemplate.send(outputTopic, record.key(), transform(record.value()));
+            }
+        });
+        LOGGER.info(">>> Transformed from Kafka: Topic={}, Records={}, Output={}", records.get(0).topic(), records.size(), outputTopic);
+    }
+
+    /**
+     * Transforms the value of a record into the list of its words separated by spaces
+     *
+     * @param value the value of the record
+     * @return the transformed value
+     */
+    private String transform(String value) {
+        StringBuilder builder = new StringBuilder();
+        for (String word : wordTokenizer.words(value)) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(word);
+        }
+        return builder.toString();
+    }
+}
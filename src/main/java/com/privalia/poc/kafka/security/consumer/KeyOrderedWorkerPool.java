@@ -0,0 +1,196 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Pool of workers to process the consumed records out of the poll thread.
+ * The records with the same key are always processed in order by the same worker
+ * and the offsets are acknowledged only up to the lowest record not completed yet.
+ * When the queue of a worker is full the partition of the record is paused (backpressure) and resumed when
+ * the queue is half empty, so the poll thread never waits and the group doesn't see it as stuck.
+ * A record which fails stops the acknowledgments of its partition, which is paused and consumed again from the
+ * failed record after a backoff. The records in the queues of the revoked partitions are dropped.
+ *
+ * @author david.amigo
+ */
+@Component
+public class KeyOrderedWorkerPool implements RecordProcessingEngine, DisposableBean {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyOrderedWorkerPool.class);
+
+    /** Whether the records are processed by the pool or by the poll thread */
+    private final boolean enabled;
+
+    /** The single thread workers */
+    private final ThreadPoolExecutor[] workers;
+
+    /** The maximum number of records waiting in the queue of each worker */
+    private final int queueCapacity;
+
+    /** The milliseconds to wait before consuming a failed partition again */
+    private final long failureBackoff;
+
+    /** The partitions paused while they can't take more records */
+    private final PausedPartitions pausedPartitions = new PausedPartitions();
+
+    /** The tracker of the offsets to acknowledge */
+    private final PartitionOffsetTracker offsetTracker = new PartitionOffsetTracker();
+
+    /**
+     * Autowired constructor
+     *
+     * @param enabled       whether the records are processed by the pool or by the poll thread
+     * @param threads       the number of workers
+     * @param queueCapacity  the maximum number of records waiting in the queue of each worker
+     * @param failureBackoff the milliseconds to wait before consuming a failed partition again
+     */
+    @Autowired
+    public KeyOrderedWorkerPool(
+            @Value("${spring.kafka.consumer.worker-pool.enabled:false}") boolean enabled,
+            @Value("${spring.kafka.consumer.worker-pool.threads:4}") int threads,
+            @Value("${spring.kafka.consumer.worker-pool.queue-capacity:1000}") int queueCapacity,
+            @Value("${spring.kafka.consumer.worker-pool.failure-backoff-ms:1000}") long failureBackoff
+    ) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("KeyOrderedWorkerPool: threads and queue-capacity must be greater than zero");
+        }
+        this.enabled = enabled;
+        this.queueCapacity = queueCapacity;
+        this.failureBackoff = failureBackoff;
+        this.workers = new ThreadPoolExecutor[enabled ? threads : 0];
+        for (int num = 0; num < workers.length; num++) {
+            workers[num] = newWorker(queueCapacity);
+        }
+    }
+
+    /**
+     * @return whether the records are processed by the pool or by the poll thread
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands a record to the worker of its key, or pauses its partition when the queue of the worker is full
+     * or a record of the partition failed. Must be called from the poll thread, in poll order.
+     *
+     * @param record   the record
+     * @param ack      the acknowledgment object of the record
+     * @param consumer the Kafka consumer, to pause, seek and resume the partitions in the poll thread
+     * @param handler  the logic to process the record
+     */
+    @Override
+    public void submit(ConsumerRecord<String, String> record, Acknowledgment ack, org.apache.kafka.clients.consumer.Consumer<?, ?> consumer,
+                       Consumer<ConsumerRecord<String, String>> handler) {
+        pausedPartitions.resumeReady(consumer);
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        if (pausedPartitions.isPaused(consumer, partition)) {
+            return;
+        }
+        long failedOffset = offsetTracker.failedOffset(partition);
+        if (failedOffset >= 0) {
+            pausedPartitions.pauseFailed(consumer, partition, failedOffset, offsetTracker, failureBackoff);
+            return;
+        }
+
+        ThreadPoolExecutor worker = workerFor(record);
+        PartitionOffsetTracker.PartitionRecords partitionRecords = offsetTracker.register(record, ack);
+        try {
+            worker.execute(() -> {
+                try {
+                    handler.accept(record);
+                    partitionRecords.complete(record.offset());
+                } catch (RuntimeException exc) {
+                    LOGGER.error(">>> An error occurred processing a record, the partition is stopped: Topic={}, Partition={}, Offset={}, Key={}",
+                            record.topic(), record.partition(), record.offset(), record.key(), exc);
+                    partitionRecords.fail(record.offset());
+                }
+            });
+        } catch (RejectedExecutionException exc) {
+            if (worker.isShutdown()) {
+                partitionRecords.fail(record.offset());
+                throw exc;
+            }
+            // The queue of the worker is full: the record is consumed again when it is half empty
+            partitionRecords.cancel(record.offset());
+            pausedPartitions.pause(consumer, partition, record.offset(),
+                    () -> worker.getQueue().remainingCapacity() >= Math.max(1, queueCapacity / 2));
+        }
+    }
+
+    /**
+     * Resumes the paused partitions of a consumer whose worker queue is half empty or whose failure backoff is over
+     *
+     * @param consumer the Kafka consumer
+     */
+    @Override
+    public void resumePartitions(org.apache.kafka.clients.consumer.Consumer<?, ?> consumer) {
+        pausedPartitions.resumeReady(consumer);
+    }
+
+    /**
+     * Drops the records of the revoked partitions waiting in the queues or in process: they are acknowledged no more
+     *
+     * @param partitions the revoked partitions
+     */
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        offsetTracker.revoke(partitions);
+        pausedPartitions.revoke(partitions);
+    }
+
+    /**
+     * Stops the workers waiting for the records in their queues
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * The records without key are distributed by partition to keep their order within the partition
+     *
+     * @param record the record
+     * @return the worker of the record
+     */
+    private ThreadPoolExecutor workerFor(ConsumerRecord<String, String> record) {
+        int hash = null == record.key() ? record.partition() : record.key().hashCode();
+        return workers[Utils.toPositive(hash) % workers.length];
+    }
+
+    /**
+     * Creates a single thread worker which rejects the records while its queue is full
+     *
+     * @param queueCapacity the maximum number of records waiting in the queue
+     * @return the worker
+     */
+    private static ThreadPoolExecutor newWorker(int queueCapacity) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,183 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the records of each partition which are processed out of the poll thread and acknowledges them
+ * in offset order: a record is acknowledged only when it and all the records before it are completed,
+ * so the committed offset never goes beyond the lowest record still in process.
+ *
+ * A record which fails stops the acknowledgments of its partition: the records before it are still acknowledged,
+ * but neither it nor the records after it. The engine then seeks back to the failed record and resets the partition
+ * once its records in process are completed, so the records are consumed again from the failed one.
+ *
+ * The records of the revoked partitions are dropped: their acknowledgments are ignored, so a record completed
+ * after a rebalance can't commit a partition owned by another member of the group.
+ *
+ * @author david.amigo
+ */
+class PartitionOffsetTracker {
+
+    /** The records in process of each partition */
+    private final Map<TopicPartition, PartitionRecords> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a record before it is handed to another thread. Must be called in poll order.
+     *
+     * @param record the record
+     * @param ack    the acknowledgment object of the record
+     * @return the records in process of the partition, to complete, fail or cancel the record
+     */
+    PartitionRecords register(ConsumerRecord<?, ?> record, Acknowledgment ack) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        PartitionRecords partitionRecords = partitions.computeIfAbsent(partition, tp -> new PartitionRecords());
+        partitionRecords.register(record.offset(), ack);
+        return partitionRecords;
+    }
+
+    /**
+     * @param partition the partition
+     * @return the offset of the first record failed in the partition, or -1 if none failed
+     */
+    long failedOffset(TopicPartition partition) {
+        PartitionRecords partitionRecords = partitions.get(partition);
+        return null == partitionRecords ? -1L : partitionRecords.failedOffset();
+    }
+
+    /**
+     * @param partition the partition
+     * @return whether the partition has records in process
+     */
+    boolean hasRecordsInProcess(TopicPartition partition) {
+        PartitionRecords partitionRecords = partitions.get(partition);
+        return null != partitionRecords && partitionRecords.hasRecordsInProcess();
+    }
+
+    /**
+     * Drops the records of the revoked partitions, or of a failed partition before it is consumed again from the
+     * failed record. Must be called in the poll thread before the offsets are committed.
+     *
+     * @param revoked the revoked partitions
+     */
+    void revoke(Collection<TopicPartition> revoked) {
+        for (TopicPartition partition : revoked) {
+            PartitionRecords partitionRecords = partitions.remove(partition);
+            if (null != partitionRecords) {
+                partitionRecords.revoke();
+            }
+        }
+    }
+
+    /**
+     * The records in process of a partition
+     */
+    static class PartitionRecords {
+
+        /** The acknowledgment of every record in process, by offset */
+        private final TreeMap<Long, Acknowledgment> inProcess = new TreeMap<>();
+
+        /** The acknowledgment of the records completed but waiting for a lower record, by offset */
+        private final TreeMap<Long, Acknowledgment> completed = new TreeMap<>();
+
+        /** The offset of the first record failed, or Long.MAX_VALUE */
+        private long failedOffset = Long.MAX_VALUE;
+
+        /** Whether the partition was revoked: nothing is acknowledged any more */
+        private boolean revoked;
+
+        /**
+         * @param offset the offset of the record
+         * @param ack    the acknowledgment object of the record
+         */
+        private synchronized void register(long offset, Acknowledgment ack) {
+            inProcess.put(offset, ack);
+        }
+
+        /**
+         * @return the offset of the first record failed, or -1 if none failed
+         */
+        private synchronized long failedOffset() {
+            return Long.MAX_VALUE == failedOffset ? -1L : failedOffset;
+        }
+
+        /**
+         * @return whether there are records in process
+         */
+        private synchronized boolean hasRecordsInProcess() {
+            return !inProcess.isEmpty();
+        }
+
+        /**
+         * Marks a record as completed and acknowledges the highest record whose previous records are all completed
+         *
+         * @param offset the offset of the record
+         */
+        synchronized void complete(long offset) {
+            Acknowledgment ack = inProcess.remove(offset);
+            if (null == ack || revoked) {
+                return;
+            }
+            if (offset < failedOffset) {
+                completed.put(offset, ack);
+            }
+            acknowledgeWatermark();
+        }
+
+        /**
+         * Marks a record as failed: the partition is not acknowledged beyond the record before it
+         *
+         * @param offset the offset of the record
+         */
+        synchronized void fail(long offset) {
+            if (null == inProcess.remove(offset) || revoked) {
+                return;
+            }
+            if (offset < failedOffset) {
+                failedOffset = offset;
+                completed.tailMap(offset).clear();
+            }
+            acknowledgeWatermark();
+        }
+
+        /**
+         * Forgets a record which was not handed to another thread: it is consumed again after a seek.
+         * Must be the last record registered of the partition.
+         *
+         * @param offset the offset of the record
+         */
+        synchronized void cancel(long offset) {
+            if (null == inProcess.remove(offset) || revoked) {
+                return;
+            }
+            acknowledgeWatermark();
+        }
+
+        /**
+         * Drops the records in process: their acknowledgments are ignored
+         */
+        private synchronized void revoke() {
+            revoked = true;
+            inProcess.clear();
+            completed.clear();
+        }
+
+        /**
+         * Acknowledges the highest record completed below the lowest record in process and the failed record
+         */
+        private void acknowledgeWatermark() {
+            long lowestInProcess = inProcess.isEmpty() ? Long.MAX_VALUE : inProcess.firstKey();
+            Map.Entry<Long, Acknowledgment> watermark = completed.lowerEntry(Math.min(lowestInProcess, failedOffset));
+            if (null != watermark) {
+                watermark.getValue().acknowledge();
+                completed.headMap(watermark.getKey(), true).clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The partitions paused by an engine, instead of blocking the poll thread, while they can't take more records:
+ * the engine is full or a record failed. The consumer seeks back to the first record not taken, so the records
+ * of the same poll after it are dropped and fetched again after the partition is resumed.
+ * All the methods must be called in the poll thread of the consumer of the partitions.
+ *
+ * @author david.amigo
+ */
+class PausedPartitions {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PausedPartitions.class);
+
+    /** The condition to resume every paused partition */
+    private final Map<TopicPartition, BooleanSupplier> resumeWhen = new ConcurrentHashMap<>();
+
+    /**
+     * @param consumer  the Kafka consumer
+     * @param partition the partition
+     * @return whether the partition is paused: its records must be dropped, they are fetched again after the seek
+     */
+    boolean isPaused(Consumer<?, ?> consumer, TopicPartition partition) {
+        if (!resumeWhen.containsKey(partition)) {
+            return false;
+        }
+        if (consumer.paused().contains(partition)) {
+            return true;
+        }
+        // The pause was lost in a rebalance
+        resumeWhen.remove(partition);
+        return false;
+    }
+
+    /**
+     * Pauses a partition and seeks back to a record
+     *
+     * @param consumer   the Kafka consumer
+     * @param partition  the partition
+     * @param offset     the offset of the first record to consume after the partition is resumed
+     * @param resumeWhen the condition to resume the partition, checked in the poll thread
+     */
+    void pause(Consumer<?, ?> consumer, TopicPartition partition, long offset, BooleanSupplier resumeWhen) {
+        consumer.pause(Collections.singleton(partition));
+        consumer.seek(partition, offset);
+        this.resumeWhen.put(partition, resumeWhen);
+    }
+
+    /**
+     * Pauses a failed partition and seeks back to the failed record. The partition is resumed after the backoff,
+     * once its records in process are completed: then the tracker forgets them, so the failed record
+     * and the ones after it are consumed and acknowledged again.
+     *
+     * @param consumer      the Kafka consumer
+     * @param partition     the failed partition
+     * @param failedOffset  the offset of the first record failed
+     * @param offsetTracker the tracker of the offsets of the engine
+     * @param backoff       the milliseconds to wait before consuming the partition again
+     */
+    void pauseFailed(Consumer<?, ?> consumer, TopicPartition partition, long failedOffset, PartitionOffsetTracker offsetTracker, long backoff) {
+        LOGGER.warn(">>> Partition {} paused by the record failed at offset {}: consumed again in {} ms", partition, failedOffset, backoff);
+        long due = System.currentTimeMillis() + backoff;
+        pause(consumer, partition, failedOffset, () -> {
+            if (System.currentTimeMillis() < due || offsetTracker.hasRecordsInProcess(partition)) {
+                return false;
+            }
+            offsetTracker.revoke(Collections.singleton(partition));
+            return true;
+        });
+    }
+
+    /**
+     * Resumes the paused partitions of a consumer whose condition is met
+     *
+     * @param consumer the Kafka consumer
+     */
+    void resumeReady(Consumer<?, ?> consumer) {
+        if (resumeWhen.isEmpty()) {
+            return;
+        }
+        List<TopicPartition> ready = new ArrayList<>();
+        for (TopicPartition partition : consumer.paused()) {
+            BooleanSupplier condition = resumeWhen.get(partition);
+            if (null != condition && condition.getAsBoolean()) {
+                resumeWhen.remove(partition);
+                ready.add(partition);
+            }
+        }
+        if (!ready.isEmpty()) {
+            consumer.resume(ready);
+            LOGGER.info(">>> Partitions resumed: {}", ready);
+        }
+    }
+
+    /**
+     * Forgets the pauses of the revoked partitions
+     *
+     * @param partitions the revoked partitions
+     */
+    void revoke(Collection<TopicPartition> partitions) {
+        partitions.forEach(resumeWhen::remove);
+    }
+}
@@ -0,0 +1,58 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Rebalance listener of the consumer of the main topic.
+ * When the partitions are revoked the engines drop their records in process first, so the acknowledgments
+ * which arrive later are ignored, and then the commit strategy commits the offsets acknowledged before.
+ *
+ * @author david.amigo
+ */
+public class RecordEngineRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    /** The enabled engines to process the records out of the poll thread */
+    private final List<RecordProcessingEngine> engines;
+
+    /** The strategy to commit the offsets */
+    private final KafkaCommitStrategy commitStrategy;
+
+    /**
+     * Constructor
+     *
+     * @param engines        the enabled engines to process the records out of the poll thread
+     * @param commitStrategy the strategy to commit the offsets
+     */
+    public RecordEngineRebalanceListener(List<RecordProcessingEngine> engines, KafkaCommitStrategy commitStrategy) {
+        this.engines = engines;
+        this.commitStrategy = commitStrategy;
+    }
+
+    /**
+     * @param consumer   the Kafka consumer
+     * @param partitions the assigned partitions
+     */
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (commitStrategy.isEnabled()) {
+            commitStrategy.onPartitionsAssigned(consumer, partitions);
+        }
+    }
+
+    /**
+     * @param consumer   the Kafka consumer
+     * @param partitions the revoked partitions
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        engines.forEach(engine -> engine.onPartitionsRevoked(partitions));
+        if (commitStrategy.isEnabled()) {
+            commitStrategy.onPartitionsRevokedBeforeCommit(consumer, partitions);
+        }
+    }
+}
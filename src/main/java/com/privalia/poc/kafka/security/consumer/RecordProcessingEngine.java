@@ -0,0 +1,54 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Engine to process the consumed records out of the poll thread.
+ * The engine acknowledges a record only when it and all the records before it in its partition are completed.
+ * The engine never blocks the poll thread: while a partition can't take more records, because the engine is full
+ * or a record failed, the partition is paused and the consumer seeks back to the first record not taken.
+ * A failed partition is consumed again from the failed record after a backoff, once its records in process
+ * are completed.
+ *
+ * @author david.amigo
+ */
+public interface RecordProcessingEngine {
+
+    /**
+     * @return whether the records are processed by this engine
+     */
+    boolean isEnabled();
+
+    /**
+     * Hands a record to the engine, or pauses its partition and seeks back to it when the partition can't take it.
+     * Must be called from the poll thread, in poll order.
+     *
+     * @param record   the record
+     * @param ack      the acknowledgment object of the record
+     * @param consumer the Kafka consumer, to pause, seek and resume the partitions in the poll thread
+     * @param handler  the logic to process the record
+     */
+    void submit(ConsumerRecord<String, String> record, Acknowledgment ack, org.apache.kafka.clients.consumer.Consumer<?, ?> consumer,
+                Consumer<ConsumerRecord<String, String>> handler);
+
+    /**
+     * Resumes the paused partitions of a consumer which can take records again.
+     * Must be called from the poll thread, also when it receives no records (all its partitions may be paused).
+     *
+     * @param consumer the Kafka consumer
+     */
+    void resumePartitions(org.apache.kafka.clients.consumer.Consumer<?, ?> consumer);
+
+    /**
+     * Drops the records in process of the revoked partitions, so their acknowledgments don't commit a partition
+     * assigned to another member. Must be called from the poll thread before the offsets are committed.
+     *
+     * @param partitions the revoked partitions
+     */
+    void onPartitionsRevoked(Collection<TopicPartition> partitions);
+}
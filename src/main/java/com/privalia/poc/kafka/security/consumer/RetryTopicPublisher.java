@@ -0,0 +1,204 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Publishes the records which failed to the retry topics and, after the last retry, to the dead letter topic.
+ * The retry topics are named [topic]-retry-[delay ms] and the dead letter topic [topic]-dlt.
+ * The headers of the original topic, partition, offset and timestamp are set on the first failure,
+ * and the headers of the exception on every failure.
+ *
+ * @author david.amigo
+ */
+@Component
+public class RetryTopicPublisher {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryTopicPublisher.class);
+
+    /** The infix of the names of the retry topics */
+    private static final String RETRY_INFIX = "-retry-";
+
+    /** The suffix of the name of the dead letter topic */
+    private static final String DLT_SUFFIX = "-dlt";
+
+    /** Whether the failed records are published to the retry topics */
+    private final boolean enabled;
+
+    /** Kafka template for sending the failed records */
+    private final KafkaTemplate<String, String> kafkaProducerTemplate;
+
+    /** The name of the main topic */
+    private final String topicName;
+
+    /** The delay of every retry topic, in milliseconds */
+    private final List<Long> delays;
+
+    /**
+     * Autowired constructor
+     *
+     * @param enabled               whether the failed records are published to the retry topics
+     * @param kafkaProducerTemplate the Kafka template for sending the failed records
+     * @param topicName             the name of the main topic
+     * @param delays                the delay of every retry topic, in milliseconds
+     */
+    @Autowired
+    public RetryTopicPublisher(
+            @Value("${spring.kafka.consumer.retry.enabled:false}") boolean enabled,
+            KafkaTemplate<String, String> kafkaProducerTemplate,
+            @Value("${spring.kafka.topics.sim-test1}") String topicName,
+            @Value("${spring.kafka.consumer.retry.delays-ms:1000,10000,60000}") long[] delays
+    ) {
+        List<Long> list = new ArrayList<>();
+        for (long delay : delays) {
+            if (delay < 1 || (!list.isEmpty() && delay <= list.get(list.size() - 1))) {
+                throw new IllegalArgumentException("RetryTopicPublisher: delays-ms must be greater than zero and ascending");
+            }
+            list.add(delay);
+        }
+        this.enabled = enabled;
+        this.kafkaProducerTemplate = kafkaProducerTemplate;
+        this.topicName = topicName;
+        this.delays = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return whether the failed records are published to the retry topics
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the names of the retry topics, in order
+     */
+    public List<String> getRetryTopics() {
+        List<String> topics = new ArrayList<>();
+        for (long delay : delays) {
+            topics.add(retryTopic(topicName, delay));
+        }
+        return topics;
+    }
+
+    /**
+     * @return the name of the dead letter topic
+     */
+    public String getDeadLetterTopic() {
+        return deadLetterTopic(topicName);
+    }
+
+    /**
+     * Gets the name of a retry topic
+     *
+     * @param topicName the name of the main topic
+     * @param delay     the delay of the retry topic, in milliseconds
+     * @return the name of the retry topic: [topic]-retry-[delay ms]
+     */
+    public static String retryTopic(String topicName, long delay) {
+        return topicName + RETRY_INFIX + delay;
+    }
+
+    /**
+     * Gets the name of the dead letter topic
+     *
+     * @param topicName the name of the main topic
+     * @return the name of the dead letter topic: [topic]-dlt
+     */
+    public static String deadLetterTopic(String topicName) {
+        return topicName + DLT_SUFFIX;
+    }
+
+    /**
+     * Gets the delay of a retry topic
+     *
+     * @param topic the name of the topic
+     * @return the delay in milliseconds, or -1 if it is not a retry topic
+     */
+    public long delayOf(String topic) {
+        if (topic.startsWith(topicName + RETRY_INFIX)) {
+            try {
+                long delay = Long.parseLong(topic.substring(topicName.length() + RETRY_INFIX.length()));
+                return delays.contains(delay) ? delay : -1;
+            } catch (NumberFormatException exc) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Publishes a failed record to the next retry topic, or to the dead letter topic after the last retry,
+     * and waits for the broker acknowledgement, so the record can be acknowledged in its topic
+     *
+     * @param record    the failed record
+     * @param exception the error
+     * @throws KafkaException when the record can't be published
+     */
+    public void publishFailure(ConsumerRecord<String, String> record, Exception exception) throws KafkaException {
+        long delay = delayOf(record.topic());
+        int next = delay < 0 ? 0 : delays.indexOf(delay) + 1;
+        String topic = next < delays.size() ? retryTopic(topicName, delays.get(next)) : getDeadLetterTopic();
+
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        if (null == headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC)) {
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP, ByteBuffer.allocate(Long.BYTES).putLong(record.timestamp()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP_TYPE, record.timestampType().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_FQCN);
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_STACKTRACE);
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, exception.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_EXCEPTION_STACKTRACE, stackTrace(exception).getBytes(StandardCharsets.UTF_8));
+
+        // The timestamp is the time of the failure: the retry consumer waits for the delay from it
+        ProducerRecord<String, String> failed = new ProducerRecord<>(topic, null, record.key(), record.value(), headers);
+        try {
+            kafkaProducerTemplate.send(failed).get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("RetryTopicPublisher: interrupted publishing to " + topic, exc);
+        } catch (ExecutionException exc) {
+            throw new KafkaException("RetryTopicPublisher: Can't publish to " + topic, exc.getCause());
+        }
+
+        if (next < delays.size()) {
+            LOGGER.info(">>> Record sent to retry: Topic={}, Partition={}, Offset={}, Retry={}", record.topic(), record.partition(), record.offset(), topic);
+        } else {
+            LOGGER.error(">>> Record sent to the dead letter topic: Topic={}, Partition={}, Offset={}, DLT={}", record.topic(), record.partition(), record.offset(), topic);
+        }
+    }
+
+    /**
+     * @param exception the error
+     * @return the stack trace of the error
+     */
+    private static String stackTrace(Exception exception) {
+        StringWriter writer = new StringWriter();
+        exception.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
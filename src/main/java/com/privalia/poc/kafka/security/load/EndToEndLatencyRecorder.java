@@ -0,0 +1,88 @@
+package com.privalia.poc.kafka.security.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the end-to-end latency of the messages of the load generator, from the time the send was scheduled
+ * to the consumer, reading it from a header. A send delayed by a stalled producer counts its delay as latency
+ * (no coordinated omission).
+ * The time is in microseconds since the epoch, so the producer and the consumer can run in different hosts
+ * with synchronized clocks.
+ *
+ * @author david.amigo
+ */
+@Component
+public class EndToEndLatencyRecorder {
+
+    /** The name of the header with the time the message was scheduled to be sent */
+    public static final String SENT_AT_HEADER = "sim-sent-at-us";
+
+    /** The offset from System.nanoTime() to the epoch, to get the epoch with microsecond resolution */
+    private static final long EPOCH_OFFSET_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+    /** The recorder of the latencies, in microseconds */
+    private final Recorder recorder = new Recorder(3);
+
+    /**
+     * @return the current time in microseconds since the epoch
+     */
+    public static long nowMicros() {
+        return toEpochMicros(System.nanoTime());
+    }
+
+    /**
+     * @param nanoTime a value of System.nanoTime()
+     * @return the same time in microseconds since the epoch
+     */
+    public static long toEpochMicros(long nanoTime) {
+        return TimeUnit.NANOSECONDS.toMicros(nanoTime + EPOCH_OFFSET_NANOS);
+    }
+
+    /**
+     * Adds the header with the time the message was scheduled to be sent to the headers of a message
+     *
+     * @param headers   the headers of the message
+     * @param scheduled the nanoTime when the message was scheduled to be sent
+     */
+    public static void stamp(Headers headers, long scheduled) {
+        headers.add(SENT_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(0, toEpochMicros(scheduled)).array());
+    }
+
+    /**
+     * Records the latency of a consumed record. The records without the header are ignored.
+     *
+     * @param record the consumed record
+     */
+    public void record(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(SENT_AT_HEADER);
+        if (null == header || header.value().length != Long.BYTES) {
+            return;
+        }
+        long latency = nowMicros() - ByteBuffer.wrap(header.value()).getLong();
+        recorder.recordValue(Math.max(0, latency));
+    }
+
+    /**
+     * Discards the latencies recorded until now
+     */
+    public void reset() {
+        recorder.reset();
+    }
+
+    /**
+     * Gets the latencies recorded since the last call (or reset) and starts a new interval
+     *
+     * @return the histogram of the latencies, in microseconds
+     */
+    public Histogram getIntervalHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+}
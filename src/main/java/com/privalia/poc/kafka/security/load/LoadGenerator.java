@@ -0,0 +1,310 @@
+package com.privalia.poc.kafka.security.load;
+
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator: publishes messages at a target rate for a duration, from several threads,
+ * with a number of distinct keys and a distribution of payload sizes.
+ * Every message has a header with the time it was sent, so the consumer measures the end-to-end latency.
+ * The send latency is measured from the time the message was scheduled, not from the time it was sent,
+ * so the stalls of the producer are not hidden (coordinated omission).
+ *
+ * @author david.amigo
+ */
+@Component
+public class LoadGenerator {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /** The maximum number of sends waiting for the broker acknowledgement */
+    private static final int MAX_IN_FLIGHT_SENDS = 10000;
+
+    /** The distributions of the payload sizes */
+    public enum PayloadDistribution {
+
+        /** All the payloads have the maximum size */
+        FIXED,
+
+        /** The sizes are uniformly distributed between the minimum and the maximum */
+        UNIFORM,
+
+        /** Most of the payloads are small: exponential distribution from the minimum, with a mean of 1/4 of the range */
+        EXPONENTIAL;
+
+        /**
+         * Parses a distribution, case insensitive
+         *
+         * @param value the name of the distribution
+         * @return the distribution
+         */
+        public static PayloadDistribution of(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /** Kafka template for sending messages to Kafka topic */
+    private final KafkaTemplate<String, String> kafkaProducerTemplate;
+
+    /** The name of the Kafka topic to publish the messages */
+    private final String topicName;
+
+    /** The recorder of the end-to-end latency, fed by the consumer */
+    private final EndToEndLatencyRecorder endToEndLatencyRecorder;
+
+    /** The target rate, in messages per second of all the threads */
+    private final int rate;
+
+    /** The duration of the run */
+    private final Duration duration;
+
+    /** The number of producer threads */
+    private final int threads;
+
+    /** The number of distinct keys, or 0 for messages without key */
+    private final int keyCardinality;
+
+    /** The minimum size of the payloads, in bytes */
+    private final int payloadMinBytes;
+
+    /** The maximum size of the payloads, in bytes */
+    private final int payloadMaxBytes;
+
+    /** The distribution of the payload sizes */
+    private final PayloadDistribution payloadDistribution;
+
+    /** The maximum time to wait for the consumer to receive the last messages */
+    private final Duration drainTimeout;
+
+    /** The text the payloads are cut from, of the maximum size */
+    private final String payloadSource;
+
+    /**
+     * Autowired constructor
+     *
+     * @param kafkaProducerTemplate   the Kafka template for producing messages
+     * @param topicName               the name of the Kafka topic to publish the messages
+     * @param endToEndLatencyRecorder the recorder of the end-to-end latency, fed by the consumer
+     * @param textGenerator           the generator of the text of the payloads
+     * @param rate                    the target rate, in messages per second of all the threads
+     * @param duration                the duration of the run, in seconds
+     * @param threads                 the number of producer threads
+     * @param keyCardinality          the number of distinct keys, or 0 for messages without key
+     * @param payloadMinBytes         the minimum size of the payloads, in bytes
+     * @param payloadMaxBytes         the maximum size of the payloads, in bytes
+     * @param payloadDistribution     the distribution of the payload sizes: fixed, uniform or exponential
+     * @param drainTimeout            the maximum milliseconds to wait for the consumer to receive the last messages
+     */
+    @Autowired
+    public LoadGenerator(
+            KafkaTemplate<String, String> kafkaProducerTemplate,
+            @Value("${spring.kafka.topics.sim-test1}") String topicName,
+            EndToEndLatencyRecorder endToEndLatencyRecorder,
+            RandomTextGenerator textGenerator,
+            @Value("${spring.kafka.load-test.rate:1000}") int rate,
+            @Value("${spring.kafka.load-test.duration-s:60}") int duration,
+            @Value("${spring.kafka.load-test.threads:1}") int threads,
+            @Value("${spring.kafka.load-test.key-cardinality:1000}") int keyCardinality,
+            @Value("${spring.kafka.load-test.payload.min-bytes:100}") int payloadMinBytes,
+            @Value("${spring.kafka.load-test.payload.max-bytes:1000}") int payloadMaxBytes,
+            @Value("${spring.kafka.load-test.payload.distribution:uniform}") String payloadDistribution,
+            @Value("${spring.kafka.load-test.drain-timeout-ms:10000}") long drainTimeout
+    ) {
+        if (rate < 1 || duration < 1 || threads < 1 || keyCardinality < 0) {
+            throw new IllegalArgumentException("LoadGenerator: rate, duration-s and threads must be greater than zero and key-cardinality can't be negative");
+        }
+        if (payloadMinBytes < 0 || payloadMaxBytes < payloadMinBytes) {
+            throw new IllegalArgumentException("LoadGenerator: payload.min-bytes can't be negative or greater than payload.max-bytes");
+        }
+        this.kafkaProducerTemplate = kafkaProducerTemplate;
+        this.topicName = topicName;
+        this.endToEndLatencyRecorder = endToEndLatencyRecorder;
+        this.rate = rate;
+        this.duration = Duration.ofSeconds(duration);
+        this.threads = threads;
+        this.keyCardinality = keyCardinality;
+        this.payloadMinBytes = payloadMinBytes;
+        this.payloadMaxBytes = payloadMaxBytes;
+        this.payloadDistribution = PayloadDistribution.of(payloadDistribution);
+        this.drainTimeout = Duration.ofMillis(drainTimeout);
+
+        StringBuilder builder = new StringBuilder(payloadMaxBytes + 100);
+        String corpus = String.join(" ", textGenerator.getCorpus());
+        while (builder.length() < payloadMaxBytes) {
+            builder.append(corpus).append(' ');
+        }
+        this.payloadSource = builder.substring(0, payloadMaxBytes);
+    }
+
+    /**
+     * Runs the load test: publishes the messages, waits for the acknowledgements and for the consumer
+     * to receive the last messages (if it is running)
+     *
+     * @return the report of the run
+     * @throws InterruptedException when interrupted while running
+     */
+    public LoadTestReport run() throws InterruptedException {
+        LOGGER.info(">>> Load test started - Topic={} - Rate={} records/sec - Duration={} s - Threads={} - Keys={} - Payload={}..{} bytes ({})",
+                topicName, rate, duration.getSeconds(), threads, keyCardinality, payloadMinBytes, payloadMaxBytes, payloadDistribution);
+
+        Recorder sendLatency = new Recorder(3);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_SENDS);
+        endToEndLatencyRecorder.reset();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "kafka-load-generator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long interval = TimeUnit.SECONDS.toNanos(threads) / rate;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int num = 0; num < threads; num++) {
+            long threadStart = start + interval * num / threads;
+            long seed = num;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (long scheduled = threadStart; scheduled < end && !Thread.currentThread().isInterrupted(); scheduled += interval) {
+                    long delay = scheduled - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    String payload = payloadSource.substring(0, payloadSize(random));
+                    String key = keyCardinality > 0 ? "key-" + random.nextInt(keyCardinality) : null;
+                    send(key, payload, scheduled, sendLatency, sent, failed, bytes, inFlight);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException exc) {
+            throw new KafkaException("LoadGenerator: A producer thread failed", exc.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        kafkaProducerTemplate.flush();
+        inFlight.acquire(MAX_IN_FLIGHT_SENDS);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Histogram endToEndLatency = waitForConsumer(sent.get());
+
+        LoadTestReport report = new LoadTestReport(sent.get(), failed.get(), bytes.get(), elapsed,
+                sendLatency.getIntervalHistogram(), endToEndLatency);
+        LOGGER.info(">>> Load test finished - {}", report);
+        return report;
+    }
+
+    /**
+     * Sends a message asynchronously and records its latency when it is acknowledged
+     *
+     * @param key         the key of the message
+     * @param payload     the value of the message
+     * @param scheduled   the nanoTime when the message was scheduled to be sent
+     * @param sendLatency the recorder of the send latency
+     * @param sent        the counter of the messages acknowledged
+     * @param failed      the counter of the messages failed
+     * @param bytes       the counter of the bytes acknowledged (UTF-8)
+     * @param inFlight    the semaphore of the sends in flight
+     */
+    private void send(String key, String payload, long scheduled, Recorder sendLatency,
+                      AtomicLong sent, AtomicLong failed, AtomicLong bytes, Semaphore inFlight) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(topicName, key, payload);
+        EndToEndLatencyRecorder.stamp(record.headers(), scheduled);
+        int payloadBytes = Utils.utf8Length(payload);
+        inFlight.acquireUninterruptibly();
+        try {
+            kafkaProducerTemplate.send(record).addCallback(
+                    result -> {
+                        sendLatency.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled)));
+                        sent.incrementAndGet();
+                        bytes.addAndGet(payloadBytes);
+                        inFlight.release();
+                    },
+                    exc -> {
+                        failed.incrementAndGet();
+                        inFlight.release();
+                    }
+            );
+        } catch (RuntimeException exc) {
+            // The errors thrown by the producer before the send, e.g. serialization or closed producer
+            failed.incrementAndGet();
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Gets the size of the next payload
+     *
+     * @param random the random generator of the thread
+     * @return the size of the payload, in bytes
+     */
+    private int payloadSize(Random random) {
+        int range = payloadMaxBytes - payloadMinBytes;
+        switch (payloadDistribution) {
+            case FIXED:
+                return payloadMaxBytes;
+
+            case EXPONENTIAL:
+                double size = -Math.log(1 - random.nextDouble()) * range / 4.0;
+                return payloadMinBytes + (int) Math.min(range, size);
+
+            case UNIFORM:
+            default:
+                return payloadMinBytes + random.nextInt(range + 1);
+        }
+    }
+
+    /**
+     * Waits until the consumer has received all the messages sent, or the drain timeout.
+     * When the consumer is not running (e.g. in another host) it returns after the timeout.
+     *
+     * @param expected the number of messages sent
+     * @return the end-to-end latencies of the messages received, in microseconds
+     * @throws InterruptedException when interrupted while waiting
+     */
+    private Histogram waitForConsumer(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        Histogram received = new Histogram(3);
+        while (true) {
+            received.add(endToEndLatencyRecorder.getIntervalHistogram());
+            if (received.getTotalCount() >= expected || System.nanoTime() >= deadline) {
+                return received;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.privalia.poc.kafka.security.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+
+/**
+ * The result of a run of the load generator
+ *
+ * @author david.amigo
+ */
+public class LoadTestReport {
+
+    /** The number of messages acknowledged by the broker */
+    private final long sent;
+
+    /** The number of messages which failed */
+    private final long failed;
+
+    /** The bytes of the payloads sent, encoded in UTF-8 */
+    private final long bytes;
+
+    /** The time spent sending the messages */
+    private final Duration elapsed;
+
+    /** The latencies from the scheduled send time to the broker acknowledgement, in microseconds */
+    private final Histogram sendLatency;
+
+    /** The latencies from the send to the consumer, in microseconds */
+    private final Histogram endToEndLatency;
+
+    /**
+     * Constructor
+     *
+     * @param sent            the number of messages acknowledged by the broker
+     * @param failed          the number of messages which failed
+     * @param bytes           the bytes of the payloads sent, encoded in UTF-8
+     * @param elapsed         the time spent sending the messages
+     * @param sendLatency     the latencies from the scheduled send time to the acknowledgement, in microseconds
+     * @param endToEndLatency the latencies from the send to the consumer, in microseconds
+     */
+    public LoadTestReport(long sent, long failed, long bytes, Duration elapsed, Histogram sendLatency, Histogram endToEndLatency) {
+        this.sent = sent;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.elapsed = elapsed;
+        this.sendLatency = sendLatency;
+        this.endToEndLatency = endToEndLatency;
+    }
+
+    /**
+     * @return the number of messages acknowledged by the broker
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return the number of messages which failed
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the bytes of the payloads sent, encoded in UTF-8
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time spent sending the messages
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return the achieved rate, in messages per second
+     */
+    public double getRate() {
+        return elapsed.isZero() ? 0 : sent * 1e9 / elapsed.toNanos();
+    }
+
+    /**
+     * @return the latencies from the scheduled send time to the broker acknowledgement, in microseconds
+     */
+    public Histogram getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * @return the latencies from the send to the consumer, in microseconds
+     */
+    public Histogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    /**
+     * @return a summary of the run with the p50, p99 and p999 latencies in milliseconds
+     */
+    @Override
+    public String toString() {
+        return String.format("Sent=%d - Failed=%d - Rate=%.0f records/sec - Throughput=%.2f MB/sec%n", sent, failed, getRate(),
+                elapsed.isZero() ? 0 : bytes * 1e9 / elapsed.toNanos() / (1024 * 1024))
+                + percentiles("Send latency      ", sendLatency) + String.format("%n")
+                + percentiles("End-to-end latency", endToEndLatency);
+    }
+
+    /**
+     * Formats the percentiles of a histogram
+     *
+     * @param name      the name of the histogram
+     * @param histogram the histogram, in microseconds
+     * @return the formatted percentiles, in milliseconds
+     */
+    private static String percentiles(String name, Histogram histogram) {
+        if (0 == histogram.getTotalCount()) {
+            return name + ": no records";
+        }
+        return String.format("%s: count=%d - p50=%.3f ms - p99=%.3f ms - p999=%.3f ms - max=%.3f ms", name, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,190 @@
+package com.privalia.poc.kafka.security.logging;
+
+import org.slf4j.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Logger for the diagnostics of every record, which logs only a sample of them:
+ * all, 1 in N, up to X per second, only the errors or nothing.
+ * The arguments are truncated and formatted only when the message is emitted.
+ *
+ * @author david.amigo
+ */
+public class SampledLogger {
+
+    /** The logger where the messages are emitted */
+    private final Logger logger;
+
+    /** Which messages are emitted */
+    private final Mode mode;
+
+    /** Emit 1 in N messages (mode sample) */
+    private final long sampleEvery;
+
+    /** Emit up to X messages per second (mode rate) */
+    private final long ratePerSecond;
+
+    /** The maximum length of the text arguments; longer ones are truncated */
+    private final int maxValueLength;
+
+    /** The number of messages received (mode sample) */
+    private final AtomicLong received = new AtomicLong();
+
+    /** The mask of the number of messages in the rate window */
+    private static final long WINDOW_COUNT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * The current second in the high 32 bits and the number of messages received in it in the low 32 bits (mode rate).
+     * Both are updated in a single atomic operation, so a message can't be counted in the window of another second.
+     * The initial value matches no second.
+     */
+    private final AtomicLong rateWindow = new AtomicLong(Long.MIN_VALUE);
+
+    /** The source of the time in nanoseconds (mode rate) */
+    private final LongSupplier nanoTime;
+
+    /**
+     * Constructor
+     *
+     * @param logger         the logger where the messages are emitted
+     * @param mode           which messages are emitted
+     * @param sampleEvery    emit 1 in N messages (mode sample)
+     * @param ratePerSecond  emit up to X messages per second (mode rate)
+     * @param maxValueLength the maximum length of the text arguments
+     */
+    public SampledLogger(Logger logger, Mode mode, long sampleEvery, long ratePerSecond, int maxValueLength) {
+        this(logger, mode, sampleEvery, ratePerSecond, maxValueLength, System::nanoTime);
+    }
+
+    /**
+     * Constructor with the source of the time
+     *
+     * @param logger         the logger where the messages are emitted
+     * @param mode           which messages are emitted
+     * @param sampleEvery    emit 1 in N messages (mode sample)
+     * @param ratePerSecond  emit up to X messages per second (mode rate)
+     * @param maxValueLength the maximum length of the text arguments
+     * @param nanoTime       the source of the time in nanoseconds
+     */
+    SampledLogger(Logger logger, Mode mode, long sampleEvery, long ratePerSecond, int maxValueLength, LongSupplier nanoTime) {
+        if (sampleEvery < 1 || ratePerSecond < 1 || maxValueLength < 1) {
+            throw new IllegalArgumentException("SampledLogger: sample-every, rate-per-second and max-value-length must be greater than zero");
+        }
+        if (ratePerSecond >= WINDOW_COUNT_MASK) {
+            throw new IllegalArgumentException("SampledLogger: rate-per-second must be lower than " + WINDOW_COUNT_MASK);
+        }
+        this.logger = logger;
+        this.mode = mode;
+        this.sampleEvery = sampleEvery;
+        this.ratePerSecond = ratePerSecond;
+        this.maxValueLength = maxValueLength;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return whether the info messages can be emitted at all (for stages which only exist to log)
+     */
+    public boolean isInfoEnabled() {
+        return mode != Mode.OFF && mode != Mode.ERROR && logger.isInfoEnabled();
+    }
+
+    /**
+     * Emits an info message if it is selected by the sampling
+     *
+     * @param format the format of the message
+     * @param args   the arguments of the message
+     */
+    public void info(String format, Object... args) {
+        if (isInfoEnabled() && sample()) {
+            logger.info(format, truncate(args));
+        }
+    }
+
+    /**
+     * Emits an error message unless the mode is off. The errors are not sampled.
+     *
+     * @param format the format of the message
+     * @param args   the arguments of the message, the last one can be the exception
+     */
+    public void error(String format, Object... args) {
+        if (mode != Mode.OFF && logger.isErrorEnabled()) {
+            logger.error(format, truncate(args));
+        }
+    }
+
+    /**
+     * @return whether the current message is selected by the sampling
+     */
+    private boolean sample() {
+        switch (mode) {
+            case SAMPLE:
+                return received.getAndIncrement() % sampleEvery == 0;
+
+            case RATE:
+                // Only the 31 low bits of the second: two consecutive seconds are still different
+                long second = (nanoTime.getAsLong() / 1_000_000_000L) & 0x7FFFFFFFL;
+                long window = rateWindow.updateAndGet(current -> {
+                    if ((current >>> 32) != second) {
+                        return (second << 32) | 1;
+                    }
+                    // Stop counting once over the rate, so the count never overflows into the second
+                    return (current & WINDOW_COUNT_MASK) > ratePerSecond ? current : current + 1;
+                });
+                return (window & WINDOW_COUNT_MASK) <= ratePerSecond;
+
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Truncates the text arguments longer than the maximum length
+     *
+     * @param args the arguments of the message
+     * @return the truncated arguments
+     */
+    private Object[] truncate(Object[] args) {
+        for (int index = 0; index < args.length; index++) {
+            if (args[index] instanceof CharSequence) {
+                CharSequence text = (CharSequence) args[index];
+                if (text.length() > maxValueLength) {
+                    args[index] = text.subSequence(0, maxValueLength) + "...(" + text.length() + " chars)";
+                }
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Which messages are emitted
+     */
+    public enum Mode {
+
+        /** All the messages */
+        ALL,
+
+        /** 1 in N info messages and all the errors */
+        SAMPLE,
+
+        /** Up to X info messages per second and all the errors */
+        RATE,
+
+        /** Only the errors */
+        ERROR,
+
+        /** Nothing */
+        OFF;
+
+        /**
+         * @param name the name of the mode: all, sample, rate, error (or error-only) or off
+         * @return the mode
+         */
+        public static Mode of(String name) {
+            String mode = name.trim().toUpperCase(Locale.ROOT);
+            return "ERROR-ONLY".equals(mode) ? ERROR : valueOf(mode);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.privalia.poc.kafka.security.logging;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the sampled loggers of the components from the properties spring.kafka.diagnostics.[component].*
+ *
+ * @author david.amigo
+ */
+@Component
+public class SampledLoggerFactory {
+
+    /** The environment object where to get the config options */
+    private final Environment environment;
+
+    /**
+     * Autowired constructor
+     *
+     * @param environment the environment object where to get the config options
+     */
+    @Autowired
+    public SampledLoggerFactory(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Creates the sampled logger of a component. A component without configuration logs up to 10 messages per second.
+     *
+     * @param component the name of the component: producer, consumer, streams...
+     * @param type      the class which logs
+     * @return the sampled logger
+     */
+    public SampledLogger getLogger(String component, Class<?> type) {
+        String prefix = "spring.kafka.diagnostics." + component + ".";
+        return new SampledLogger(
+                LoggerFactory.getLogger(type),
+                SampledLogger.Mode.of(environment.getProperty(prefix + "mode", "rate")),
+                Long.parseLong(environment.getProperty(prefix + "sample-every", "100")),
+                Long.parseLong(environment.getProperty(prefix + "rate-per-second", "10")),
+                Integer.parseInt(environment.getProperty(prefix + "max-value-length", "256"))
+        );
+    }
+}
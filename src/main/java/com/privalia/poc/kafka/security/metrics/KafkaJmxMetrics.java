@@ -0,0 +1,282 @@
+package com.privalia.poc.kafka.security.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds the metrics of all the Kafka clients of the JVM (producers, consumers and streams) to Micrometer.
+ * The Kafka clients publish their metrics as JMX MBeans: every numeric attribute becomes a gauge,
+ * tagged with the keys of the MBean (client-id, topic, partition, node-id, task-id...).
+ * The MBeans are bound when they are registered and unbound when they are unregistered;
+ * the attributes added later to an MBean are bound by a periodic rescan.
+ *
+ * @author david.amigo
+ */
+public class KafkaJmxMetrics implements MeterBinder, NotificationListener, AutoCloseable {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaJmxMetrics.class);
+
+    /** The JMX domains of the Kafka clients */
+    private static final List<String> DOMAINS = Arrays.asList("kafka.producer", "kafka.consumer", "kafka.streams");
+
+    /** The prefixes of the MBean types removed from the meter names */
+    private static final List<String> TYPE_PREFIXES = Arrays.asList("producer", "consumer", "streams", "stream");
+
+    /** The MBean keys which are not added to the meter names */
+    private static final List<String> CLIENT_KEYS = Arrays.asList("type", "client-id", "id");
+
+    /** The JMX attribute types bound as gauges */
+    private static final List<String> NUMERIC_TYPES = Arrays.asList(
+            "double", "long", "int", Double.class.getName(), Long.class.getName(), Integer.class.getName()
+    );
+
+    /** The MBean server of the Kafka clients */
+    private final MBeanServer mBeanServer;
+
+    /** Milliseconds between two rescans of the MBeans */
+    private final long rescanInterval;
+
+    /** The meters bound for every MBean and attribute */
+    private final Map<ObjectName, Map<String, Meter>> meters = new ConcurrentHashMap<>();
+
+    /** The registry where the meters are bound */
+    private volatile MeterRegistry registry;
+
+    /** The scheduler of the rescans */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor
+     *
+     * @param mBeanServer    the MBean server of the Kafka clients
+     * @param rescanInterval milliseconds between two rescans of the MBeans
+     */
+    public KafkaJmxMetrics(MBeanServer mBeanServer, long rescanInterval) {
+        this.mBeanServer = mBeanServer;
+        this.rescanInterval = rescanInterval;
+    }
+
+    /**
+     * Binds the current MBeans and starts listening to the new ones
+     *
+     * @param registry the registry where the meters are bound
+     */
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        scan();
+        try {
+            mBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, null, null);
+        } catch (InstanceNotFoundException exc) {
+            LOGGER.error(">>> Can't listen to the registration of the Kafka MBeans", exc);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-jmx-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scan, rescanInterval, rescanInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Binds or unbinds the MBeans of the Kafka clients when they are registered or unregistered
+     *
+     * @param notification the notification of the MBean server
+     * @param handback     not used
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!(notification instanceof MBeanServerNotification)) {
+            return;
+        }
+        ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+        if (!DOMAINS.contains(name.getDomain())) {
+            return;
+        }
+        if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+            bind(name);
+        } else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+            unbind(name);
+        }
+    }
+
+    /**
+     * Stops listening to the MBeans
+     */
+    @Override
+    public synchronized void close() {
+        if (null != scheduler) {
+            scheduler.shutdown();
+        }
+        try {
+            mBeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+        } catch (InstanceNotFoundException | ListenerNotFoundException exc) {
+            // Not listening
+        }
+    }
+
+    /**
+     * Binds all the MBeans of the Kafka clients
+     */
+    private void scan() {
+        for (String domain : DOMAINS) {
+            try {
+                for (ObjectName name : mBeanServer.queryNames(new ObjectName(domain + ":*"), null)) {
+                    bind(name);
+                }
+            } catch (MalformedObjectNameException exc) {
+                LOGGER.error(">>> Can't scan the Kafka MBeans of the domain {}", domain, exc);
+            }
+        }
+    }
+
+    /**
+     * Binds the numeric attributes of an MBean which are not bound yet
+     *
+     * @param name the name of the MBean
+     */
+    private void bind(ObjectName name) {
+        MBeanAttributeInfo[] attributes;
+        try {
+            attributes = mBeanServer.getMBeanInfo(name).getAttributes();
+        } catch (JMException exc) {
+            return;
+        }
+
+        Map<String, Meter> bound = meters.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+        for (MBeanAttributeInfo attribute : attributes) {
+            if (!NUMERIC_TYPES.contains(attribute.getType()) || bound.containsKey(attribute.getName())) {
+                continue;
+            }
+            try {
+                Meter meter = Gauge.builder(meterName(name, attribute.getName()), mBeanServer, server -> value(server, name, attribute.getName()))
+                        .tags(tags(name))
+                        .description(attribute.getDescription())
+                        .register(registry);
+                bound.put(attribute.getName(), meter);
+            } catch (IllegalArgumentException exc) {
+                bound.put(attribute.getName(), null);
+                LOGGER.debug(">>> Can't bind the Kafka metric {} of {}", attribute.getName(), name, exc);
+            }
+        }
+    }
+
+    /**
+     * Removes the meters of an MBean
+     *
+     * @param name the name of the MBean
+     */
+    private void unbind(ObjectName name) {
+        Map<String, Meter> bound = meters.remove(name);
+        if (null != bound) {
+            bound.values().stream().filter(meter -> null != meter).forEach(registry::remove);
+        }
+    }
+
+    /**
+     * Builds the name of a meter from the domain, the type and the keys of the MBean and the attribute.
+     * Example: kafka.consumer:type=consumer-fetch-manager-metrics,client-id=c,topic=t,partition=0 and records-lag
+     * is kafka.consumer.fetch.manager.partition.topic.records.lag
+     *
+     * @param name      the name of the MBean
+     * @param attribute the name of the attribute
+     * @return the name of the meter
+     */
+    private static String meterName(ObjectName name, String attribute) {
+        String type = name.getKeyProperty("type");
+        if (type.endsWith("-metrics")) {
+            type = type.substring(0, type.length() - "-metrics".length());
+        }
+        for (String prefix : TYPE_PREFIXES) {
+            if (type.equals(prefix)) {
+                type = "";
+                break;
+            }
+            if (type.startsWith(prefix + "-")) {
+                type = type.substring(prefix.length() + 1);
+                break;
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(name.getDomain());
+        if (!type.isEmpty()) {
+            builder.append('.').append(type);
+        }
+        for (String key : keys(name)) {
+            String group = key.endsWith("-id") ? key.substring(0, key.length() - "-id".length()) : key;
+            if (!type.contains(group)) {
+                builder.append('.').append(group);
+            }
+        }
+        return builder.append('.').append(attribute).toString().replace('-', '.');
+    }
+
+    /**
+     * @param name the name of the MBean
+     * @return the tags of the meters of the MBean: all the keys of the MBean but the type
+     */
+    private static List<Tag> tags(ObjectName name) {
+        List<Tag> tags = new ArrayList<>();
+        name.getKeyPropertyList().forEach((key, value) -> {
+            if (!"type".equals(key)) {
+                tags.add(Tag.of(key, value));
+            }
+        });
+        return tags;
+    }
+
+    /**
+     * @param name the name of the MBean
+     * @return the keys of the MBean which are not client keys, sorted
+     */
+    private static List<String> keys(ObjectName name) {
+        List<String> keys = new ArrayList<>(name.getKeyPropertyList().keySet());
+        keys.removeAll(CLIENT_KEYS);
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Reads the value of an attribute
+     *
+     * @param server    the MBean server
+     * @param name      the name of the MBean
+     * @param attribute the name of the attribute
+     * @return the value of the attribute or NaN if it is not available
+     */
+    private static double value(MBeanServer server, ObjectName name, String attribute) {
+        try {
+            Object value = server.getAttribute(name, attribute);
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        } catch (JMException exc) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.privalia.poc.kafka.security.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.KafkaException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP server which exports the meters of the registry as Prometheus text on /metrics
+ *
+ * @author david.amigo
+ */
+public class PrometheusHttpServer {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusHttpServer.class);
+
+    /** The content type of the Prometheus text format */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The HTTP server */
+    private final HttpServer server;
+
+    /**
+     * Starts the HTTP server
+     *
+     * @param registry the registry with the meters
+     * @param port     the port of the HTTP server
+     * @throws KafkaException when the server can't be started
+     */
+    public PrometheusHttpServer(PrometheusMeterRegistry registry, int port) throws KafkaException {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException exc) {
+            throw new KafkaException("PrometheusHttpServer: Can't start the server on the port " + port, exc);
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        LOGGER.info(">>> Prometheus metrics exported on http://localhost:{}/metrics", port);
+    }
+
+    /**
+     * Stops the HTTP server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
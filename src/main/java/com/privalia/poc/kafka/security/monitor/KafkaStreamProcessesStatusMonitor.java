@@ -1,32 +1,157 @@
 package com.privalia.poc.kafka.security.monitor;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.TopologyDescription;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.apache.kafka.streams.processor.TaskMetadata;
+import org.apache.kafka.streams.processor.ThreadMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.kafka.config.StreamsBuilderFactoryBean;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
- * Component for monitoring Kafka Streams processes status beans
+ * Component for monitoring and managing the lifecycle of the Kafka Streams processes beans.
+ * For every process it tracks the state, records the rebalance and the state restore durations,
+ * and restarts the process with an exponential backoff when a stream thread crashes.
+ * All the processes are started and stopped in parallel, and drained when the application context is closed.
+ *
+ * @author david.amigo
  */
 @Component
-public class KafkaStreamProcessesStatusMonitor {
+public class KafkaStreamProcessesStatusMonitor implements ApplicationListener<ContextClosedEvent>, DisposableBean {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaStreamProcessesStatusMonitor.class);
 
     /**
      * Map autowired with all the StreamsBuilderFactoryBean beans
      */
     private final Map<String, StreamsBuilderFactoryBean> beanMap;
 
+    /**
+     * The lifecycle of every process, by the qualifier of its bean
+     */
+    private final Map<String, StreamsLifecycle> lifecycles = new LinkedHashMap<>();
+
+    /**
+     * The registry of the lifecycle meters
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * The milliseconds to wait before the first restart of a crashed process
+     */
+    private final long initialBackoff;
+
+    /**
+     * The maximum milliseconds to wait before restarting a crashed process
+     */
+    private final long maxBackoff;
+
+    /**
+     * The maximum number of consecutive restarts of a process, or a negative value for no limit
+     */
+    private final int maxRestarts;
+
+    /**
+     * The milliseconds a process must stay RUNNING before its consecutive restarts are reset
+     */
+    private final long stablePeriod;
+
+    /**
+     * The scheduler of the restarts. The stream threads can't close their own process.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The executor which starts and stops the processes in parallel
+     */
+    private final ExecutorService lifecycleExecutor;
+
+    /**
+     * The maximum time to drain the processes when the application context is closed
+     */
+    private final Duration drainTimeout;
+
     /**
      * Autowired constructor
      *
-     * @param beanMap Map autowired with all the StreamsBuilderFactoryBean beans
+     * @param beanMap        Map autowired with all the StreamsBuilderFactoryBean beans
+     * @param meterRegistry  the registry of the lifecycle meters
+     * @param initialBackoff the milliseconds to wait before the first restart of a crashed process
+     * @param maxBackoff     the maximum milliseconds to wait before restarting a crashed process
+     * @param maxRestarts    the maximum number of consecutive restarts of a process (negative: no limit)
+     * @param stablePeriod   the milliseconds a process must stay RUNNING before its consecutive restarts are reset
+     * @param parallelism    the maximum number of processes started or stopped at the same time
+     * @param drainTimeout   the maximum milliseconds to drain the processes when the application context is closed
      */
     @Autowired
-    public KafkaStreamProcessesStatusMonitor(Map<String, StreamsBuilderFactoryBean> beanMap) {
+    public KafkaStreamProcessesStatusMonitor(
+            Map<String, StreamsBuilderFactoryBean> beanMap,
+            MeterRegistry meterRegistry,
+            @Value("${spring.kafka.streams.restart.initial-backoff-ms:1000}") long initialBackoff,
+            @Value("${spring.kafka.streams.restart.max-backoff-ms:60000}") long maxBackoff,
+            @Value("${spring.kafka.streams.restart.max-restarts:10}") int maxRestarts,
+            @Value("${spring.kafka.streams.restart.stable-period-ms:60000}") long stablePeriod,
+            @Value("${spring.kafka.streams.lifecycle.parallelism:4}") int parallelism,
+            @Value("${spring.kafka.streams.lifecycle.drain-timeout-ms:30000}") long drainTimeout
+    ) {
+        if (initialBackoff < 1 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("KafkaStreamProcessesStatusMonitor: initial-backoff-ms must be greater than zero and not greater than max-backoff-ms");
+        }
         this.beanMap = beanMap;
+        this.meterRegistry = meterRegistry;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.maxRestarts = maxRestarts;
+        this.stablePeriod = stablePeriod;
+        this.drainTimeout = Duration.ofMillis(drainTimeout);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-streams-restarter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.lifecycleExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, beanMap.size())), runnable -> {
+            Thread thread = new Thread(runnable, "kafka-streams-lifecycle-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        beanMap.forEach((qualifier, bean) -> {
+            StreamsLifecycle lifecycle = new StreamsLifecycle(qualifier, bean);
+            bean.setStateListener(lifecycle);
+            bean.setStateRestoreListener(lifecycle);
+            bean.setUncaughtExceptionHandler(lifecycle);
+            lifecycles.put(qualifier, lifecycle);
+        });
     }
 
     /**
@@ -73,49 +198,595 @@ public class KafkaStreamProcessesStatusMonitor {
     }
 
     /**
-     * Starts a component by it's qualifier (name)
+     * Gets the state of a component by it's qualifier (name)
+     *
+     * @param qualifier the qualifier of the bean (name)
+     * @return the state of the Kafka Streams process, or null if it was never started
+     * @throws BeanNotFoundException when bean not found
+     */
+    public KafkaStreams.State getState(String qualifier) throws BeanNotFoundException {
+        KafkaStreams kafkaStreams = safeGet(qualifier).getKafkaStreams();
+        return null == kafkaStreams ? null : kafkaStreams.state();
+    }
+
+    /**
+     * Checks whether a component is healthy: running or rebalancing
+     *
+     * @param qualifier the qualifier of the bean (name)
+     * @return whether a component is healthy
+     * @throws BeanNotFoundException when bean not found
+     */
+    public boolean isHealthy(String qualifier) throws BeanNotFoundException {
+        KafkaStreams.State state = getState(qualifier);
+        return null != state && state.isRunning();
+    }
+
+    /**
+     * Gets a snapshot of the tasks of a component by it's qualifier (name)
+     *
+     * @param qualifier the qualifier of the bean (name)
+     * @return the status of every active and standby task, with the progress of its state restore
+     * @throws BeanNotFoundException when bean not found
+     */
+    public List<TaskStatus> getTaskSnapshot(String qualifier) throws BeanNotFoundException {
+        KafkaStreams kafkaStreams = safeGet(qualifier).getKafkaStreams();
+        if (null == kafkaStreams) {
+            return Collections.emptyList();
+        }
+
+        StreamsLifecycle lifecycle = lifecycles.get(qualifier);
+        List<TaskStatus> snapshot = new ArrayList<>();
+        for (ThreadMetadata thread : kafkaStreams.localThreadsMetadata()) {
+            for (TaskMetadata task : thread.activeTasks()) {
+                snapshot.add(new TaskStatus(thread, task, true, lifecycle.restores, lifecycle.storeSubtopologies()));
+            }
+            for (TaskMetadata task : thread.standbyTasks()) {
+                snapshot.add(new TaskStatus(thread, task, false, lifecycle.restores, lifecycle.storeSubtopologies()));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of times a component was restarted after a crash, by it's qualifier (name)
+     *
+     * @param qualifier the qualifier of the bean (name)
+     * @return the number of restarts
+     * @throws BeanNotFoundException when bean not found
+     */
+    public long getRestarts(String qualifier) throws BeanNotFoundException {
+        safeGet(qualifier);
+        return (long) lifecycles.get(qualifier).restartCounter.count();
+    }
+
+    /**
+     * Starts a component by it's qualifier (name).
+     * The consecutive restarts of the component are reset.
      *
      * @param qualifier the name of the bean
      * @throws BeanNotFoundException when bean not found
      */
     public void start(String qualifier) throws BeanNotFoundException {
-        safeGet(qualifier).start();
+        StreamsBuilderFactoryBean bean = safeGet(qualifier);
+        lifecycles.get(qualifier).started();
+        bean.start();
     }
 
     /**
-     * Starts all components
+     * Starts all components in parallel and waits until all of them are started
      */
     public void startAll() {
-        StreamsBuilderFactoryBean bean;
-        for (String qualifier : getBeanQualifiers()) {
-            bean = get(qualifier);
-            if (null != bean && !bean.isRunning()) {
+        forEachInParallel(qualifier -> {
+            StreamsBuilderFactoryBean bean = get(qualifier);
+            if (!bean.isRunning()) {
+                LOGGER.info(">>> Starting Kafka Streams: {}", qualifier);
+                lifecycles.get(qualifier).started();
                 bean.start();
             }
-        }
+        });
     }
 
     /**
-     * Stops a component by it's qualifier (name)
+     * Stops a component by it's qualifier (name).
+     * A pending restart of the component is cancelled.
      *
      * @param qualifier the qualifier of the bean (name)
      * @throws BeanNotFoundException when bean not found
      */
     public void stop(String qualifier) throws BeanNotFoundException {
-        safeGet(qualifier).stop();
+        StreamsBuilderFactoryBean bean = safeGet(qualifier);
+        lifecycles.get(qualifier).stopped = true;
+        bean.stop();
     }
 
     /**
-     * Stops all components
+     * Stops all components in parallel and waits until all of them are stopped
      */
     public void stopAll() {
-        StreamsBuilderFactoryBean bean;
+        forEachInParallel(qualifier -> {
+            StreamsBuilderFactoryBean bean = get(qualifier);
+            if (bean.isRunning()) {
+                LOGGER.info(">>> Stopping Kafka Streams: {}", qualifier);
+                lifecycles.get(qualifier).stopped = true;
+                bean.stop();
+            }
+        });
+    }
+
+    /**
+     * Drains all components in parallel: every process stops consuming, commits the processed records and is closed.
+     * The processes which can't be closed before the deadline are left closing in the background.
+     *
+     * @param timeout the maximum time to drain all the processes
+     * @return true if all the processes were drained before the deadline
+     */
+    public boolean drainAll(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        lifecycles.values().forEach(lifecycle -> lifecycle.stopped = true);
+        AtomicInteger pending = new AtomicInteger();
+        forEachInParallel(qualifier -> {
+            StreamsBuilderFactoryBean bean = get(qualifier);
+            KafkaStreams kafkaStreams = bean.getKafkaStreams();
+            if (!bean.isRunning() || null == kafkaStreams) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            Duration remaining = Duration.ofNanos(Math.max(0, deadline - start));
+            if (kafkaStreams.close(remaining)) {
+                bean.stop();
+                LOGGER.info(">>> Kafka Streams {} drained in {} ms", qualifier, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                pending.incrementAndGet();
+                LOGGER.error(">>> Kafka Streams {} wasn't drained in {} ms", qualifier, timeout.toMillis());
+            }
+        });
+        return 0 == pending.get();
+    }
+
+    /**
+     * Drains all components when the application context is closed, before the beans are stopped one by one
+     *
+     * @param event the event of the application context closed
+     */
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        drainAll(drainTimeout);
+    }
+
+    /**
+     * Cancels the pending restarts and stops the lifecycle executor
+     */
+    @Override
+    public void destroy() {
+        lifecycles.values().forEach(lifecycle -> lifecycle.stopped = true);
+        scheduler.shutdownNow();
+        lifecycleExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs an action for every component in the lifecycle executor and waits until all of them have finished.
+     * An error of a component is logged and doesn't stop the others.
+     *
+     * @param action the action to run with the qualifier of every bean
+     */
+    private void forEachInParallel(Consumer<String> action) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
         for (String qualifier : getBeanQualifiers()) {
-            bean = get(qualifier);
-            if (null != bean && bean.isRunning()) {
+            futures.add(CompletableFuture.runAsync(() -> action.accept(qualifier), lifecycleExecutor).exceptionally(exc -> {
+                LOGGER.error(">>> An error occurred in the lifecycle of Kafka Streams {}", qualifier, exc);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * The lifecycle of a Kafka Streams process: listens to its state changes, its state restores
+     * and the crashes of its stream threads
+     */
+    private class StreamsLifecycle implements KafkaStreams.StateListener, StateRestoreListener, Thread.UncaughtExceptionHandler {
+
+        /** The qualifier of the bean */
+        private final String qualifier;
+
+        /** The bean of the process */
+        private final StreamsBuilderFactoryBean bean;
+
+        /** Timer of the rebalances, from REBALANCING to RUNNING */
+        private final Timer rebalanceTimer;
+
+        /** Timer of the state restores of every changelog partition */
+        private final Timer restoreTimer;
+
+        /** The number of records restored per second of every changelog partition */
+        private final DistributionSummary restoreThroughput;
+
+        /** Counter of the crashed stream threads */
+        private final Counter crashCounter;
+
+        /** Counter of the restarts after a crash */
+        private final Counter restartCounter;
+
+        /** The changelog partitions being restored */
+        private final Map<TopicPartition, RestoreProgress> restores = new ConcurrentHashMap<>();
+
+        /** The nanoTime when the current rebalance started, or 0 */
+        private volatile long rebalanceStart;
+
+        /** The number of consecutive restarts, reset when the process has stayed RUNNING for the stable period */
+        private volatile int consecutiveRestarts;
+
+        /** The nanoTime when the process reached RUNNING after its last start, or 0 */
+        private volatile long runningSince;
+
+        /** The subtopology of every state store, by store name, or null until the process is started */
+        private volatile Map<String, Integer> storeSubtopologies;
+
+        /** Whether a restart is scheduled */
+        private volatile boolean restartPending;
+
+        /** Whether the process was stopped on purpose: a crash doesn't restart it */
+        private volatile boolean stopped;
+
+        /**
+         * Constructor
+         *
+         * @param qualifier the qualifier of the bean
+         * @param bean      the bean of the process
+         */
+        private StreamsLifecycle(String qualifier, StreamsBuilderFactoryBean bean) {
+            this.qualifier = qualifier;
+            this.bean = bean;
+            this.rebalanceTimer = Timer.builder("kafka.streams.rebalance")
+                    .description("Time from the start of a rebalance until the process is running again")
+                    .tag("process", qualifier)
+                    .register(meterRegistry);
+            this.restoreTimer = Timer.builder("kafka.streams.restore")
+                    .description("Time restoring a state store partition from its changelog")
+                    .tag("process", qualifier)
+                    .register(meterRegistry);
+            this.restoreThroughput = DistributionSummary.builder("kafka.streams.restore.throughput")
+                    .description("Records restored per second of a state store partition")
+                    .baseUnit("records/s")
+                    .tag("process", qualifier)
+                    .register(meterRegistry);
+            this.crashCounter = Counter.builder("kafka.streams.thread.crashes")
+                    .description("Stream threads died with an uncaught exception")
+                    .tag("process", qualifier)
+                    .register(meterRegistry);
+            this.restartCounter = Counter.builder("kafka.streams.restarts")
+                    .description("Restarts of the process after a crash")
+                    .tag("process", qualifier)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Records the rebalance durations and the time when the process is running.
+         * The rebalances don't restart the stable period: a crash loop reaches RUNNING after every restart.
+         *
+         * @param newState the new state
+         * @param oldState the previous state
+         */
+        @Override
+        public void onChange(KafkaStreams.State newState, KafkaStreams.State oldState) {
+            LOGGER.info(">>> Kafka Streams {} state changed: {} -> {}", qualifier, oldState, newState);
+            if (KafkaStreams.State.REBALANCING == newState) {
+                rebalanceStart = System.nanoTime();
+            } else if (KafkaStreams.State.RUNNING == newState) {
+                long start = rebalanceStart;
+                if (start != 0) {
+                    Duration duration = Duration.ofNanos(System.nanoTime() - start);
+                    rebalanceTimer.record(duration);
+                    rebalanceStart = 0;
+                    LOGGER.info(">>> Kafka Streams {} rebalanced in {} ms", qualifier, duration.toMillis());
+                }
+                if (0 == runningSince) {
+                    runningSince = System.nanoTime();
+                }
+            } else if (KafkaStreams.State.ERROR == newState) {
+                scheduleRestart();
+            }
+        }
+
+        /**
+         * Records the crash of a stream thread and restarts the process.
+         * The Kafka Streams of this version can't replace a single thread: the whole process is restarted.
+         *
+         * @param thread    the stream thread
+         * @param exception the uncaught exception
+         */
+        @Override
+        public void uncaughtException(Thread thread, Throwable exception) {
+            crashCounter.increment();
+            LOGGER.error(">>> Kafka Streams {} thread {} crashed", qualifier, thread.getName(), exception);
+            scheduleRestart();
+        }
+
+        /**
+         * @param partition   the changelog partition
+         * @param storeName   the name of the state store
+         * @param startOffset the offset where the restore starts
+         * @param endOffset   the last offset to restore
+         */
+        @Override
+        public void onRestoreStart(TopicPartition partition, String storeName, long startOffset, long endOffset) {
+            restores.put(partition, new RestoreProgress(storeName, startOffset, endOffset));
+            LOGGER.info(">>> Kafka Streams {} restoring {} from {}: {} records", qualifier, storeName, partition, endOffset - startOffset);
+        }
+
+        /**
+         * @param partition      the changelog partition
+         * @param storeName      the name of the state store
+         * @param batchEndOffset the last offset of the restored batch
+         * @param numRestored    the number of records of the restored batch
+         */
+        @Override
+        public void onBatchRestored(TopicPartition partition, String storeName, long batchEndOffset, long numRestored) {
+            RestoreProgress progress = restores.get(partition);
+            if (null != progress) {
+                progress.currentOffset = batchEndOffset;
+            }
+        }
+
+        /**
+         * @param partition     the changelog partition
+         * @param storeName     the name of the state store
+         * @param totalRestored the total number of records restored
+         */
+        @Override
+        public void onRestoreEnd(TopicPartition partition, String storeName, long totalRestored) {
+            RestoreProgress progress = restores.remove(partition);
+            if (null == progress) {
+                return;
+            }
+
+            long nanos = System.nanoTime() - progress.startNanos;
+            restoreTimer.record(nanos, TimeUnit.NANOSECONDS);
+            double throughput = nanos > 0 ? totalRestored * 1e9 / nanos : 0;
+            restoreThroughput.record(throughput);
+            LOGGER.info(">>> Kafka Streams {} restored {} from {}: {} records in {} ms ({} records/sec)",
+                    qualifier, storeName, partition, totalRestored, TimeUnit.NANOSECONDS.toMillis(nanos), String.format("%.0f", throughput));
+        }
+
+        /**
+         * Resets the consecutive restarts when the process is started on purpose
+         */
+        private synchronized void started() {
+            stopped = false;
+            consecutiveRestarts = 0;
+            runningSince = 0;
+        }
+
+        /**
+         * Gets the subtopology of every state store from the description of the topology.
+         * The topology is built by the bean when the process is started, and building it again doesn't change it.
+         *
+         * @return the subtopology of every state store, by store name
+         */
+        private Map<String, Integer> storeSubtopologies() {
+            Map<String, Integer> subtopologies = storeSubtopologies;
+            if (null == subtopologies) {
+                try {
+                    subtopologies = KafkaStreamProcessesStatusMonitor.storeSubtopologies(bean.getObject().build().describe());
+                } catch (Exception exc) {
+                    LOGGER.warn(">>> The topology of Kafka Streams {} can't be described", qualifier, exc);
+                    return Collections.emptyMap();
+                }
+                storeSubtopologies = subtopologies;
+            }
+            return subtopologies;
+        }
+
+        /**
+         * Schedules a restart of the process with an exponential backoff, unless one is pending,
+         * the process was stopped on purpose or the maximum number of restarts is reached.
+         * The consecutive restarts are reset only if the process had stayed RUNNING for the stable period,
+         * so a process which crashes on every start (e.g. a poison pill) backs off and finally gives up.
+         */
+        private synchronized void scheduleRestart() {
+            if (restartPending || stopped || scheduler.isShutdown()) {
+                return;
+            }
+            long since = runningSince;
+            runningSince = 0;
+            if (since != 0 && System.nanoTime() - since >= TimeUnit.MILLISECONDS.toNanos(stablePeriod)) {
+                consecutiveRestarts = 0;
+            }
+            if (maxRestarts >= 0 && consecutiveRestarts >= maxRestarts) {
+                LOGGER.error(">>> Kafka Streams {} crashed {} times in a row: it won't be restarted", qualifier, consecutiveRestarts);
+                return;
+            }
+
+            long backoff = Math.min(maxBackoff, initialBackoff << Math.min(consecutiveRestarts, 30));
+            restartPending = true;
+            LOGGER.info(">>> Kafka Streams {} will be restarted in {} ms", qualifier, backoff);
+            scheduler.schedule(this::restart, backoff, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Closes the crashed process and starts a new one
+         */
+        private void restart() {
+            synchronized (this) {
+                restartPending = false;
+                if (stopped) {
+                    return;
+                }
+                consecutiveRestarts++;
+                runningSince = 0;
+            }
+            try {
                 bean.stop();
+                restores.clear();
+                rebalanceStart = 0;
+                bean.start();
+                restartCounter.increment();
+                LOGGER.info(">>> Kafka Streams {} restarted", qualifier);
+            } catch (RuntimeException exc) {
+                LOGGER.error(">>> An error occurred restarting Kafka Streams {}", qualifier, exc);
+                scheduleRestart();
+            }
+        }
+    }
+
+    /**
+     * Gets the subtopology of every state store of a topology
+     *
+     * @param description the description of the topology
+     * @return the subtopology of every state store, by store name
+     */
+    static Map<String, Integer> storeSubtopologies(TopologyDescription description) {
+        Map<String, Integer> subtopologies = new HashMap<>();
+        for (TopologyDescription.Subtopology subtopology : description.subtopologies()) {
+            for (TopologyDescription.Node node : subtopology.nodes()) {
+                if (node instanceof TopologyDescription.Processor) {
+                    ((TopologyDescription.Processor) node).stores().forEach(store -> subtopologies.put(store, subtopology.id()));
+                }
             }
         }
+        return subtopologies;
+    }
+
+    /**
+     * The progress of the restore of a changelog partition
+     */
+    private static class RestoreProgress {
+
+        /** The name of the state store */
+        private final String storeName;
+
+        /** The offset where the restore started */
+        private final long startOffset;
+
+        /** The last offset to restore */
+        private final long endOffset;
+
+        /** The nanoTime when the restore started */
+        private final long startNanos = System.nanoTime();
+
+        /** The last offset restored */
+        private volatile long currentOffset;
+
+        /**
+         * Constructor
+         *
+         * @param storeName   the name of the state store
+         * @param startOffset the offset where the restore starts
+         * @param endOffset   the last offset to restore
+         */
+        private RestoreProgress(String storeName, long startOffset, long endOffset) {
+            this.storeName = storeName;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.currentOffset = startOffset;
+        }
+    }
+
+    /**
+     * The status of a task of a Kafka Streams process
+     */
+    public static class TaskStatus {
+
+        /** The ID of the task */
+        private final String taskId;
+
+        /** The name of the stream thread */
+        private final String threadName;
+
+        /** The state of the stream thread */
+        private final String threadState;
+
+        /** Whether the task is active (or standby) */
+        private final boolean active;
+
+        /** The input partitions of the task */
+        private final List<String> partitions;
+
+        /** The state stores of the task being restored, with the fraction restored (0 to 1) */
+        private final Map<String, Double> restoring = new LinkedHashMap<>();
+
+        /**
+         * Constructor
+         *
+         * @param thread             the metadata of the stream thread
+         * @param task               the metadata of the task
+         * @param active             whether the task is active (or standby)
+         * @param restores           the changelog partitions being restored
+         * @param storeSubtopologies the subtopology of every state store, by store name
+         */
+        private TaskStatus(ThreadMetadata thread, TaskMetadata task, boolean active,
+                           Map<TopicPartition, RestoreProgress> restores, Map<String, Integer> storeSubtopologies) {
+            this.taskId = task.taskId();
+            this.threadName = thread.threadName();
+            this.threadState = thread.threadState();
+            this.active = active;
+            this.partitions = task.topicPartitions().stream().map(TopicPartition::toString).sorted().collect(Collectors.toList());
+
+            // The task "X_P" has the partition P of the stores of the subtopology X
+            int separator = taskId.indexOf('_');
+            Integer subtopology = Integer.valueOf(taskId.substring(0, separator));
+            int partition = Integer.parseInt(taskId.substring(separator + 1));
+            restores.forEach((changelog, progress) -> {
+                if (changelog.partition() == partition
+                        && subtopology.equals(storeSubtopologies.get(progress.storeName))
+                        && progress.endOffset > progress.startOffset) {
+                    double fraction = (double) (progress.currentOffset - progress.startOffset) / (progress.endOffset - progress.startOffset);
+                    restoring.put(progress.storeName, Math.min(1.0, fraction));
+                }
+            });
+        }
+
+        /**
+         * @return the ID of the task
+         */
+        public String getTaskId() {
+            return taskId;
+        }
+
+        /**
+         * @return the name of the stream thread
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return the state of the stream thread
+         */
+        public String getThreadState() {
+            return threadState;
+        }
+
+        /**
+         * @return whether the task is active (or standby)
+         */
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * @return the input partitions of the task
+         */
+        public List<String> getPartitions() {
+            return partitions;
+        }
+
+        /**
+         * @return the state stores of the task being restored, with the fraction restored (0 to 1)
+         */
+        public Map<String, Double> getRestoring() {
+            return restoring;
+        }
+
+        /**
+         * @return a string representation of the task status
+         */
+        @Override
+        public String toString() {
+            return "TaskStatus{taskId=" + taskId + ", thread=" + threadName + ", state=" + threadState
+                    + ", active=" + active + ", partitions=" + partitions + ", restoring=" + restoring + "}";
+        }
     }
 
     public static class BeanNotFoundException extends Exception {
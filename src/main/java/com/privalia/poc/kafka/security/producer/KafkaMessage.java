@@ -0,0 +1,49 @@
+package com.privalia.poc.kafka.security.producer;
+
+/**
+ * Message to be published to a Kafka topic in a batch
+ *
+ * @author david.amigo
+ */
+public class KafkaMessage {
+
+    /** The value of the message */
+    private final String value;
+
+    /** The key of the message */
+    private final String key;
+
+    /**
+     * Constructor
+     *
+     * @param value the value of the message
+     * @param key   the key of the message
+     */
+    public KafkaMessage(String value, String key) {
+        this.value = value;
+        this.key = key;
+    }
+
+    /**
+     * Constructor for a message without key
+     *
+     * @param value the value of the message
+     */
+    public KafkaMessage(String value) {
+        this(value, null);
+    }
+
+    /**
+     * @return the value of the message
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the key of the message
+     */
+    public String getKey() {
+        return key;
+    }
+}
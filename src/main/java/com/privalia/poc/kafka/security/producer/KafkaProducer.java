@@ -1,5 +1,9 @@
 package com.privalia.poc.kafka.security.producer;
 
+import com.privalia.poc.kafka.security.logging.SampledLogger;
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,7 +14,14 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Kafka producer to publish messages to a Kafka topic
@@ -35,18 +46,64 @@ public class KafkaProducer {
      */
     private final String topicName;
 
+    /**
+     * The maximum number of asynchronous sends waiting for the broker acknowledgement
+     */
+    private final int maxInFlightSends;
+
+    /**
+     * Semaphore to limit the asynchronous sends in flight (backpressure)
+     */
+    private final Semaphore inFlightSends;
+
+    /**
+     * Timer of the synchronous publishes, from the send to the broker acknowledgement
+     */
+    private final Timer syncPublishTimer;
+
+    /**
+     * Timer of the asynchronous publishes, from the send to the broker acknowledgement
+     */
+    private final Timer asyncPublishTimer;
+
+    /**
+     * Sampled logger for the diagnostics of every message
+     */
+    private final SampledLogger diagnostics;
+
     /**
      * Autowired constructor
      *
      * @param kafkaProducerTemplate the Kafka template for producing messages
+     * @param topicName             the name of the Kafka topic to publish the messages
+     * @param maxInFlightSends      the maximum number of asynchronous sends in flight
+     * @param meterRegistry         the registry of the application timers
+     * @param loggerFactory         the factory of the sampled loggers for the diagnostics
      */
     @Autowired
     public KafkaProducer(
             KafkaTemplate<String, String> kafkaProducerTemplate,
-            @Value("${spring.kafka.topics.sim-test1}") String topicName
+            @Value("${spring.kafka.topics.sim-test1}") String topicName,
+            @Value("${spring.kafka.producer.max-in-flight-sends:1000}") int maxInFlightSends,
+            MeterRegistry meterRegistry,
+            SampledLoggerFactory loggerFactory
     ) {
+        if (maxInFlightSends < 1) {
+            throw new IllegalArgumentException("KafkaProducer: max-in-flight-sends must be greater than zero");
+        }
         this.kafkaProducerTemplate = kafkaProducerTemplate;
         this.topicName = topicName;
+        this.maxInFlightSends = maxInFlightSends;
+        this.inFlightSends = new Semaphore(maxInFlightSends);
+        this.syncPublishTimer = Timer.builder("kafka.app.publish")
+                .description("Time from the send to the broker acknowledgement")
+                .tags("topic", topicName, "mode", "sync")
+                .register(meterRegistry);
+        this.asyncPublishTimer = Timer.builder("kafka.app.publish")
+                .description("Time from the send to the broker acknowledgement")
+                .tags("topic", topicName, "mode", "async")
+                .register(meterRegistry);
+        this.diagnostics = loggerFactory.getLogger("producer", KafkaProducer.class);
     }
 
     /**
@@ -70,6 +127,89 @@ public class KafkaProducer {
         publish(topicName, value, null);
     }
 
+    /**
+     * Publish a new message to Kafka without waiting for the broker acknowledgement.
+     * Blocks only while the maximum number of sends in flight is reached.
+     *
+     * @param value the value of the message
+     * @param key   the key of the message
+     * @return a future completed with the send result or with a {@link KafkaProducerException}
+     */
+    public CompletableFuture<SendResult<String, String>> publishAsync(String value, String key) {
+        return publishAsync(topicName, value, key);
+    }
+
+    /**
+     * Publish a new message to Kafka without key and without waiting for the broker acknowledgement.
+     * Blocks only while the maximum number of sends in flight is reached.
+     *
+     * @param value the value of the message
+     * @return a future completed with the send result or with a {@link KafkaProducerException}
+     */
+    public CompletableFuture<SendResult<String, String>> publishAsync(String value) {
+        return publishAsync(topicName, value, null);
+    }
+
+    /**
+     * Publish a batch of messages to Kafka with a single flush
+     *
+     * @param messages the messages to publish
+     * @return the result of every message of the batch
+     */
+    public KafkaProducerBatchResult publishAll(Collection<KafkaMessage> messages) {
+        return publishAll(messages.stream());
+    }
+
+    /**
+     * Publish a batch of messages to Kafka with a single flush.
+     * The failed messages don't stop the batch: they are reported in the result with the successful ones.
+     *
+     * @param messages the messages to publish
+     * @return the result of every message of the batch
+     */
+    public KafkaProducerBatchResult publishAll(Stream<KafkaMessage> messages) {
+        List<KafkaMessage> batch = new ArrayList<>();
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>();
+        messages.forEachOrdered(message -> {
+            batch.add(message);
+            futures.add(send(topicName, message.getValue(), message.getKey()));
+        });
+        kafkaProducerTemplate.flush();
+
+        KafkaProducerBatchResult result = new KafkaProducerBatchResult(topicName);
+        for (int index = 0; index < batch.size(); index++) {
+            try {
+                result.addSuccess(batch.get(index), futures.get(index).get().getRecordMetadata());
+            } catch (ExecutionException exc) {
+                result.addFailure(batch.get(index), (KafkaProducerException) exc.getCause());
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                KafkaMessage message = batch.get(index);
+                result.addFailure(message, new KafkaProducerException(exc, topicName, message.getValue(), message.getKey()));
+            }
+        }
+
+        if (result.hasFailures()) {
+            LOGGER.error(">>> A batch was published to Kafka with errors - Topic={} - Published={} - Failed={} - Retriable={}",
+                    topicName, result.getSucceeded().size(), result.getFailed().size(), result.getRetriable().size());
+        } else {
+            LOGGER.info(">>> A batch was published to Kafka - Topic={} - Published={}", topicName, result.size());
+        }
+        return result;
+    }
+
+    /**
+     * Sends all the buffered messages and waits until every asynchronous send in flight has finished.
+     * The futures are completed before the sends are released, so their callbacks have run when it returns.
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        kafkaProducerTemplate.flush();
+        inFlightSends.acquire(maxInFlightSends);
+        inFlightSends.release(maxInFlightSends);
+    }
+
     /**
      * Publish a message to a Kafka topic
      *
@@ -79,14 +219,78 @@ public class KafkaProducer {
      * @throws KafkaProducerException when can't publish
      */
     private void publish(String topic, String value, String key) throws KafkaProducerException {
-        LOGGER.info(">>> Publishing a message to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
         ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, value);
+        long start = System.nanoTime();
         try {
             SendResult<String, String> result = kafkaProducerTemplate.send(record).get();
-            LOGGER.info(">>> Message published to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
+            diagnostics.info(">>> Message published to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
         } catch (InterruptedException | ExecutionException | KafkaException exc) {
-            LOGGER.error(">>> An error occurred publishing to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
+            diagnostics.error(">>> An error occurred publishing to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
             throw new KafkaProducerException(exc, topic, value, key);
+        } finally {
+            syncPublishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Publish a message to a Kafka topic asynchronously
+     *
+     * @param topic the name of the topic
+     * @param value the value of the message
+     * @param key   the key of the message
+     * @return a future completed with the send result or with a {@link KafkaProducerException}
+     */
+    private CompletableFuture<SendResult<String, String>> publishAsync(String topic, String value, String key) {
+        CompletableFuture<SendResult<String, String>> future = send(topic, value, key);
+        future.whenComplete((result, exc) -> {
+            if (null == exc) {
+                diagnostics.info(">>> Message published to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
+            } else {
+                diagnostics.error(">>> An error occurred publishing to Kafka - Topic={} - Key={} - Value={}", topic, key, value);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends a message to a Kafka topic without logging it, waiting only while the maximum number of sends
+     * in flight is reached
+     *
+     * @param topic the name of the topic
+     * @param value the value of the message
+     * @param key   the key of the message
+     * @return a future completed with the send result or with a {@link KafkaProducerException}
+     */
+    private CompletableFuture<SendResult<String, String>> send(String topic, String value, String key) {
+        CompletableFuture<SendResult<String, String>> future = new CompletableFuture<>();
+        try {
+            inFlightSends.acquire();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new KafkaProducerException(exc, topic, value, key));
+            return future;
+        }
+
+        ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, value);
+        long start = System.nanoTime();
+        try {
+            kafkaProducerTemplate.send(record).addCallback(
+                    result -> {
+                        asyncPublishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        future.complete(result);
+                        inFlightSends.release();
+                    },
+                    exc -> {
+                        asyncPublishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        future.completeExceptionally(new KafkaProducerException(exc, topic, value, key));
+                        inFlightSends.release();
+                    }
+            );
+        } catch (RuntimeException exc) {
+            // The errors thrown by the producer before the send, e.g. serialization or closed producer
+            future.completeExceptionally(new KafkaProducerException(exc, topic, value, key));
+            inFlightSends.release();
         }
+        return future;
     }
 }
@@ -0,0 +1,179 @@
+package com.privalia.poc.kafka.security.producer;
+
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Result of publishing a batch of messages to a Kafka topic
+ *
+ * @author david.amigo
+ */
+public class KafkaProducerBatchResult {
+
+    /** The name of the topic */
+    private final String topic;
+
+    /** The result of every message, in the same order as the batch */
+    private final List<RecordResult> results = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param topic the name of the topic
+     */
+    KafkaProducerBatchResult(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * @param message  the published message
+     * @param metadata the metadata returned by the broker
+     */
+    void addSuccess(KafkaMessage message, RecordMetadata metadata) {
+        results.add(new RecordResult(results.size(), message, metadata.partition(), metadata.offset(), null));
+    }
+
+    /**
+     * @param message   the message which can't be published
+     * @param exception the error
+     */
+    void addFailure(KafkaMessage message, KafkaProducerException exception) {
+        results.add(new RecordResult(results.size(), message, -1, -1L, exception));
+    }
+
+    /**
+     * @return the name of the topic
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return the number of messages in the batch
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @return the result of every message, in the same order as the batch
+     */
+    public List<RecordResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return whether any message of the batch failed
+     */
+    public boolean hasFailures() {
+        return results.stream().anyMatch(result -> !result.isSuccess());
+    }
+
+    /**
+     * @return the results of the messages published
+     */
+    public List<RecordResult> getSucceeded() {
+        return results.stream().filter(RecordResult::isSuccess).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the results of the messages which can't be published
+     */
+    public List<RecordResult> getFailed() {
+        return results.stream().filter(result -> !result.isSuccess()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the errors of the messages which are worth publishing again
+     */
+    public List<KafkaProducerException> getRetriable() {
+        return results.stream()
+                .filter(result -> !result.isSuccess() && result.getException().isRetriable())
+                .map(RecordResult::getException)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Result of publishing one message of the batch
+     */
+    public static class RecordResult {
+
+        /** The position of the message in the batch */
+        private final int index;
+
+        /** The message */
+        private final KafkaMessage message;
+
+        /** The partition where the message was written or -1 */
+        private final int partition;
+
+        /** The offset of the message in the partition or -1 */
+        private final long offset;
+
+        /** The error or null */
+        private final KafkaProducerException exception;
+
+        /**
+         * Constructor
+         *
+         * @param index     the position of the message in the batch
+         * @param message   the message
+         * @param partition the partition where the message was written or -1
+         * @param offset    the offset of the message in the partition or -1
+         * @param exception the error or null
+         */
+        private RecordResult(int index, KafkaMessage message, int partition, long offset, KafkaProducerException exception) {
+            this.index = index;
+            this.message = message;
+            this.partition = partition;
+            this.offset = offset;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the position of the message in the batch
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the message
+         */
+        public KafkaMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the partition where the message was written or -1
+         */
+        public int getPartition() {
+            return partition;
+        }
+
+        /**
+         * @return the offset of the message in the partition or -1
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the error or null
+         */
+        public KafkaProducerException getException() {
+            return exception;
+        }
+
+        /**
+         * @return whether the message was published
+         */
+        public boolean isSuccess() {
+            return null == exception;
+        }
+    }
+}
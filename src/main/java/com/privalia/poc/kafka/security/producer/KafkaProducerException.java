@@ -1,5 +1,6 @@
 package com.privalia.poc.kafka.security.producer;
 
+import org.apache.kafka.common.errors.RetriableException;
 import org.springframework.kafka.KafkaException;
 
 /**
@@ -54,6 +55,18 @@ public class KafkaProducerException extends KafkaException {
         return key;
     }
 
+    /**
+     * @return whether the error is transient and the message is worth publishing again
+     */
+    public boolean isRetriable() {
+        for (Throwable cause = getCause(); null != cause; cause = cause.getCause()) {
+            if (cause instanceof RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @param topic the topic name
      * @param value the value of the message
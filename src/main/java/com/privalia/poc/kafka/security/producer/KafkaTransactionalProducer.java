@@ -0,0 +1,219 @@
+package com.privalia.poc.kafka.security.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka producer to publish messages to a Kafka topic with exactly-once semantics.
+ * The messages are grouped in transactions of up to N records or T milliseconds, instead of one per message.
+ *
+ * @author david.amigo
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.producer.transactional.transaction-id-prefix")
+public class KafkaTransactionalProducer implements DisposableBean {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaTransactionalProducer.class);
+
+    /**
+     * Kafka transactional template for sending messages to Kafka topic
+     */
+    private final KafkaTemplate<String, String> kafkaTransactionalTemplate;
+
+    /**
+     * The name of the Kafka topic to publish the messages
+     */
+    private final String topicName;
+
+    /**
+     * The maximum number of messages of a transaction
+     */
+    private final int maxRecords;
+
+    /**
+     * The scheduler which commits the pending messages every T milliseconds
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The messages waiting for the next transaction
+     */
+    private final List<KafkaMessage> pendingMessages = new ArrayList<>();
+
+    /**
+     * The futures of the messages waiting for the next transaction
+     */
+    private final List<CompletableFuture<KafkaProducerBatchResult.RecordResult>> pendingFutures = new ArrayList<>();
+
+    /**
+     * Autowired constructor
+     *
+     * @param kafkaTransactionalTemplate the Kafka transactional template for producing messages
+     * @param topicName                  the name of the Kafka topic to publish the messages
+     * @param maxRecords                 the maximum number of messages of a transaction
+     * @param maxInterval                the maximum milliseconds a message waits for its transaction
+     */
+    @Autowired
+    public KafkaTransactionalProducer(
+            @Qualifier("sim-kafka-transactional-template") KafkaTemplate<String, String> kafkaTransactionalTemplate,
+            @Value("${spring.kafka.topics.sim-test1}") String topicName,
+            @Value("${spring.kafka.producer.transactional.max-records:500}") int maxRecords,
+            @Value("${spring.kafka.producer.transactional.max-interval-ms:100}") long maxInterval
+    ) {
+        if (maxRecords < 1 || maxInterval < 1) {
+            throw new IllegalArgumentException("KafkaTransactionalProducer: max-records and max-interval-ms must be greater than zero");
+        }
+        this.kafkaTransactionalTemplate = kafkaTransactionalTemplate;
+        this.topicName = topicName;
+        this.maxRecords = maxRecords;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-transactional-producer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, maxInterval, maxInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a message to the next transaction.
+     * The transaction is committed when it has the maximum number of messages or after the maximum interval;
+     * the caller blocks while a transaction is being committed.
+     *
+     * @param value the value of the message
+     * @param key   the key of the message
+     * @return a future completed when the transaction is committed, or with a {@link KafkaProducerException}
+     * when it is aborted
+     */
+    public synchronized CompletableFuture<KafkaProducerBatchResult.RecordResult> publish(String value, String key) {
+        CompletableFuture<KafkaProducerBatchResult.RecordResult> future = new CompletableFuture<>();
+        pendingMessages.add(new KafkaMessage(value, key));
+        pendingFutures.add(future);
+        if (pendingMessages.size() >= maxRecords) {
+            flush();
+        }
+        return future;
+    }
+
+    /**
+     * Adds a message without key to the next transaction
+     *
+     * @param value the value of the message
+     * @return a future completed when the transaction is committed, or with a {@link KafkaProducerException}
+     * when it is aborted
+     */
+    public CompletableFuture<KafkaProducerBatchResult.RecordResult> publish(String value) {
+        return publish(value, null);
+    }
+
+    /**
+     * Publish a batch of messages to Kafka in a single transaction, after the pending messages.
+     * Either all the messages are published or none.
+     *
+     * @param messages the messages to publish
+     * @return the result of every message of the batch
+     */
+    public synchronized KafkaProducerBatchResult publishAll(Collection<KafkaMessage> messages) {
+        flush();
+        return executeInTransaction(new ArrayList<>(messages));
+    }
+
+    /**
+     * Commits the pending messages in a transaction
+     */
+    public synchronized void flush() {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+
+        KafkaProducerBatchResult result = executeInTransaction(new ArrayList<>(pendingMessages));
+        for (KafkaProducerBatchResult.RecordResult recordResult : result.getResults()) {
+            CompletableFuture<KafkaProducerBatchResult.RecordResult> future = pendingFutures.get(recordResult.getIndex());
+            if (recordResult.isSuccess()) {
+                future.complete(recordResult);
+            } else {
+                future.completeExceptionally(recordResult.getException());
+            }
+        }
+        pendingMessages.clear();
+        pendingFutures.clear();
+    }
+
+    /**
+     * Stops the scheduler and commits the pending messages
+     */
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Sends the messages in a single transaction
+     *
+     * @param messages the messages to publish
+     * @return the result of every message
+     */
+    private KafkaProducerBatchResult executeInTransaction(List<KafkaMessage> messages) {
+        KafkaProducerBatchResult result = new KafkaProducerBatchResult(topicName);
+        if (messages.isEmpty()) {
+            return result;
+        }
+
+        try {
+            List<ListenableFuture<SendResult<String, String>>> futures = kafkaTransactionalTemplate.executeInTransaction(operations -> {
+                List<ListenableFuture<SendResult<String, String>>> sends = new ArrayList<>(messages.size());
+                for (KafkaMessage message : messages) {
+                    sends.add(operations.send(topicName, message.getKey(), message.getValue()));
+                }
+                return sends;
+            });
+            for (int index = 0; index < messages.size(); index++) {
+                result.addSuccess(messages.get(index), futures.get(index).get().getRecordMetadata());
+            }
+            LOGGER.info(">>> A transaction was committed to Kafka - Topic={} - Published={}", topicName, messages.size());
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            result = failures(messages, exc);
+        } catch (ExecutionException | RuntimeException exc) {
+            LOGGER.error(">>> A transaction was aborted publishing to Kafka - Topic={} - Messages={}", topicName, messages.size(), exc);
+            result = failures(messages, exc);
+        }
+        return result;
+    }
+
+    /**
+     * Marks all the messages of an aborted transaction as failed
+     *
+     * @param messages the messages of the transaction
+     * @param exc      the error
+     * @return the result of the transaction
+     */
+    private KafkaProducerBatchResult failures(List<KafkaMessage> messages, Exception exc) {
+        KafkaProducerBatchResult result = new KafkaProducerBatchResult(topicName);
+        for (KafkaMessage message : messages) {
+            result.addFailure(message, new KafkaProducerException(exc, topicName, message.getValue(), message.getKey()));
+        }
+        return result;
+    }
+}
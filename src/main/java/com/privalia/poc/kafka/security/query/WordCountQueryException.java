@@ -0,0 +1,30 @@
+package com.privalia.poc.kafka.security.query;
+
+import org.springframework.kafka.KafkaException;
+
+/**
+ * Exception to be thrown when the word count store can't be queried
+ *
+ * @author david.amigo
+ */
+public class WordCountQueryException extends KafkaException {
+
+    /**
+     * Constructor
+     *
+     * @param message the error message
+     */
+    public WordCountQueryException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param message the error message
+     * @param cause   the nested exception
+     */
+    public WordCountQueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
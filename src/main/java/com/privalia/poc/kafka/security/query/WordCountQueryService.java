@@ -0,0 +1,237 @@
+package com.privalia.poc.kafka.security.query;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.privalia.poc.kafka.security.config.KafkaStreamsConfig;
+import com.privalia.poc.kafka.security.streams.DictionaryWordSerde;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.StreamsMetadata;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service to query the count of the words in the local state store of the count-words stream,
+ * with a short-lived cache in front for the hot words.
+ * Only the words owned by this instance are in the local store: use the metadata to find the owner of a word.
+ *
+ * @author david.amigo
+ */
+@Component
+public class WordCountQueryService {
+
+    /** The factory of the count-words stream */
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    /** The serde of the words in the repartition topic and the state store, which partitions the words */
+    private final Serde<String> wordSerde;
+
+    /** The cache of the count of the words */
+    private final Cache<String, Long> countCache;
+
+    /** The cache of the top words, by number of words */
+    private final Cache<Integer, List<KeyValue<String, Long>>> topWordsCache;
+
+    /**
+     * Autowired constructor
+     *
+     * @param streamsBuilderFactoryBean the factory of the count-words stream
+     * @param wordSerde                 the serde of the words in the repartition topic and the state store
+     * @param cacheMaxEntries           the maximum number of words in the cache
+     * @param cacheTtl                  milliseconds a count is kept in the cache
+     */
+    @Autowired
+    public WordCountQueryService(
+            @Qualifier("&sim-kafka-steams-count-words-bean") StreamsBuilderFactoryBean streamsBuilderFactoryBean,
+            @Qualifier("sim-kafka-steams-count-words-word-serde") Serde<String> wordSerde,
+            @Value("${spring.kafka.streams.count-words.query.cache-max-entries:10000}") long cacheMaxEntries,
+            @Value("${spring.kafka.streams.count-words.query.cache-ttl-ms:1000}") long cacheTtl
+    ) {
+        this.streamsBuilderFactoryBean = streamsBuilderFactoryBean;
+        this.wordSerde = wordSerde;
+        this.countCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxEntries)
+                .expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+                .build();
+        this.topWordsCache = Caffeine.newBuilder()
+                .maximumSize(16)
+                .expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Point lookup of a word
+     *
+     * @param word the word
+     * @return the count of the word or 0 if it is not in the local store
+     * @throws WordCountQueryException when the store can't be queried
+     */
+    public long getCount(String word) throws WordCountQueryException {
+        return countCache.get(word, key -> {
+            Long count = store().get(key);
+            return null == count ? 0L : count;
+        });
+    }
+
+    /**
+     * The most repeated words of the local store
+     *
+     * @param size the number of words
+     * @return the words with their count, the most repeated first
+     * @throws WordCountQueryException when the store can't be queried
+     */
+    public List<KeyValue<String, Long>> getTopWords(int size) throws WordCountQueryException {
+        return topWordsCache.get(size, this::readTopWords);
+    }
+
+    /**
+     * Prefix scan of the local store
+     *
+     * @param prefix the prefix of the words
+     * @return the words starting with the prefix with their count, in order
+     * @throws WordCountQueryException when the store can't be queried or the words are encoded with the dictionary
+     */
+    public List<KeyValue<String, Long>> getByPrefix(String prefix) throws WordCountQueryException {
+        checkOrderedWords();
+        String successor = successor(prefix);
+        List<KeyValue<String, Long>> result = new ArrayList<>();
+        try (KeyValueIterator<String, Long> iterator = null == successor ? store().all() : store().range(prefix, successor)) {
+            iterator.forEachRemaining(pair -> {
+                // The range includes the successor itself
+                if (pair.key.startsWith(prefix)) {
+                    result.add(pair);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Range scan of the local store
+     *
+     * @param from the first word (inclusive)
+     * @param to   the last word (inclusive)
+     * @return the words of the range with their count, in order
+     * @throws WordCountQueryException when the store can't be queried or the words are encoded with the dictionary
+     */
+    public List<KeyValue<String, Long>> getRange(String from, String to) throws WordCountQueryException {
+        checkOrderedWords();
+        List<KeyValue<String, Long>> result = new ArrayList<>();
+        try (KeyValueIterator<String, Long> iterator = store().range(from, to)) {
+            iterator.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the instance which owns a word, to route the query to it
+     *
+     * @param word the word
+     * @return the metadata of the instance (host and port from application.server)
+     * @throws WordCountQueryException when the stream is not running
+     */
+    public StreamsMetadata getMetadata(String word) throws WordCountQueryException {
+        return kafkaStreams().metadataForKey(KafkaStreamsConfig.COUNT_WORDS_STORE_NAME, word, wordSerde.serializer());
+    }
+
+    /**
+     * @return the metadata of all the instances with a part of the store
+     * @throws WordCountQueryException when the stream is not running
+     */
+    public Collection<StreamsMetadata> getAllMetadata() throws WordCountQueryException {
+        return kafkaStreams().allMetadataForStore(KafkaStreamsConfig.COUNT_WORDS_STORE_NAME);
+    }
+
+    /**
+     * Checks that the store is ordered by the words: the range scans need the String serde
+     *
+     * @throws WordCountQueryException when the words are encoded with the dictionary
+     */
+    private void checkOrderedWords() throws WordCountQueryException {
+        if (wordSerde instanceof DictionaryWordSerde) {
+            // The store is ordered by the bytes of the IDs of the dictionary, not by the words
+            throw new WordCountQueryException("WordCountQueryService: The range scans need the String serde, not the dictionary encoding");
+        }
+    }
+
+    /**
+     * The lexicographic successor of a prefix: the first string after all the strings which start with it.
+     * The last code point is incremented (skipping the surrogates), so the order is the same as the UTF-8 bytes
+     * of the store, also for the supplementary characters.
+     *
+     * @param prefix the prefix
+     * @return the successor, or null if there is none (empty prefix or only maximum code points)
+     */
+    static String successor(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int codePoint = prefix.codePointBefore(end);
+            int start = end - Character.charCount(codePoint);
+            if (codePoint < Character.MAX_CODE_POINT) {
+                int next = codePoint + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : codePoint + 1;
+                return new StringBuilder(start + 2).append(prefix, 0, start).appendCodePoint(next).toString();
+            }
+            end = start;
+        }
+        return null;
+    }
+
+    /**
+     * @param size the number of words
+     * @return the most repeated words of the local store
+     */
+    private List<KeyValue<String, Long>> readTopWords(int size) {
+        Comparator<KeyValue<String, Long>> byCount = Comparator.comparing(pair -> pair.value);
+        PriorityQueue<KeyValue<String, Long>> heap = new PriorityQueue<>(size + 1, byCount);
+        try (KeyValueIterator<String, Long> iterator = store().all()) {
+            while (iterator.hasNext()) {
+                heap.add(iterator.next());
+                if (heap.size() > size) {
+                    heap.poll();
+                }
+            }
+        }
+        List<KeyValue<String, Long>> result = new ArrayList<>(heap);
+        result.sort(byCount.reversed());
+        return result;
+    }
+
+    /**
+     * @return the local state store with the count of every word
+     * @throws WordCountQueryException when the store can't be queried (stream not running or rebalancing)
+     */
+    private ReadOnlyKeyValueStore<String, Long> store() throws WordCountQueryException {
+        try {
+            return kafkaStreams().store(KafkaStreamsConfig.COUNT_WORDS_STORE_NAME, QueryableStoreTypes.keyValueStore());
+        } catch (InvalidStateStoreException exc) {
+            throw new WordCountQueryException("WordCountQueryService: The store can't be queried now", exc);
+        }
+    }
+
+    /**
+     * @return the running count-words stream
+     * @throws WordCountQueryException when the stream is not running
+     */
+    private KafkaStreams kafkaStreams() throws WordCountQueryException {
+        KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (null == kafkaStreams) {
+            throw new WordCountQueryException("WordCountQueryService: The count-words stream is not running");
+        }
+        return kafkaStreams;
+    }
+}
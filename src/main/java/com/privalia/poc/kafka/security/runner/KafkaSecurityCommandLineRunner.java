@@ -1,5 +1,6 @@
 package com.privalia.poc.kafka.security.runner;
 
+import com.privalia.poc.kafka.security.load.LoadGenerator;
 import com.privalia.poc.kafka.security.monitor.KafkaStreamProcessesStatusMonitor;
 import com.privalia.poc.kafka.security.producer.KafkaProducer;
 import com.privalia.poc.kafka.security.service.RandomTextGenerator;
@@ -9,11 +10,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Command line runner to process the command line parameter
@@ -30,6 +34,7 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
     private static final String ARG_RUN_PRODUCER = "--produce";
     private static final String ARG_RUN_CONSUMER = "--consume";
     private static final String ARG_RUN_STREAM = "--stream";
+    private static final String ARG_RUN_LOAD_TEST = "--load-test";
 
     /** Application context. Used to close the application */
     private final ConfigurableApplicationContext context;
@@ -46,6 +51,9 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
     /** The status monitor for the Kafka Stream processes */
     private final KafkaStreamProcessesStatusMonitor kafkaStreamProcessesStatusMonitor;
 
+    /** The load generator */
+    private final LoadGenerator loadGenerator;
+
     /**
      * Constructor
      *
@@ -53,6 +61,8 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
      * @param kafkaProducer the service to publish to Kafka
      * @param textGenerator the text generator
      * @param kafkaListenerEndpointRegistry the manager for the lifecycle of the listener containers
+     * @param kafkaStreamProcessesStatusMonitor the status monitor for the Kafka Stream processes
+     * @param loadGenerator the load generator
      */
     @Autowired
     public KafkaSecurityCommandLineRunner(
@@ -60,13 +70,15 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
             KafkaProducer kafkaProducer,
             RandomTextGenerator textGenerator,
             KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
-            KafkaStreamProcessesStatusMonitor kafkaStreamProcessesStatusMonitor
+            KafkaStreamProcessesStatusMonitor kafkaStreamProcessesStatusMonitor,
+            LoadGenerator loadGenerator
     ) {
         this.context = context;
         this.kafkaProducer = kafkaProducer;
         this.textGenerator = textGenerator;
         this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
         this.kafkaStreamProcessesStatusMonitor = kafkaStreamProcessesStatusMonitor;
+        this.loadGenerator = loadGenerator;
     }
 
     /**
@@ -81,6 +93,7 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
         boolean runProducer = false;
         boolean runConsumer = false;
         boolean runStreamer = false;
+        boolean runLoadTest = false;
         String lastArg = "";
         int messagesToProduce = 1;
 
@@ -100,6 +113,10 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
                     runStreamer = true;
                     break;
 
+                case ARG_RUN_LOAD_TEST:
+                    runLoadTest = true;
+                    break;
+
                 default:
                     if (ARG_RUN_PRODUCER.equals(lastArg)) {
                         try {
@@ -113,12 +130,10 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
         }
 
         if (runProducer) {
-            for (int num  = 0; num < messagesToProduce; num++) {
-                kafkaProducer.publish(textGenerator.getRandomText());
-            }
+            produce(messagesToProduce);
         }
 
-        if (runConsumer) {
+        if (runConsumer || runLoadTest) {
             Set<String> listenerContainers = kafkaListenerEndpointRegistry.getListenerContainerIds();
             listenerContainers.forEach(id -> {
                 LOGGER.info(">>> Starting Kafka listener: {}", id);
@@ -127,19 +142,44 @@ public class KafkaSecurityCommandLineRunner implements CommandLineRunner {
         }
 
         if (runStreamer) {
-            kafkaStreamProcessesStatusMonitor.getBeanQualifiers().forEach(qualifier -> {
-                LOGGER.info(">>> Starting Kafka Streams: {}", qualifier);
-                try {
-                    kafkaStreamProcessesStatusMonitor.start(qualifier);
-                } catch (KafkaStreamProcessesStatusMonitor.BeanNotFoundException exc) {
-                    exc.printStackTrace();
+            kafkaStreamProcessesStatusMonitor.startAll();
+        }
+
+        if (runLoadTest) {
+            loadGenerator.run();
+        }
+
+        if (!runProducer && !runConsumer && !runStreamer && !runLoadTest) {
+            LOGGER.error(">>> Program argument required: [--produce [num]] [--consume] [--stream] [--load-test]");
+        }
+    }
+
+    /**
+     * Publishes random messages without waiting for every broker acknowledgement, and then waits for all of them.
+     * The failures are counted as they complete, so the futures of the messages are not kept.
+     *
+     * @param messagesToProduce the number of messages to publish
+     * @throws InterruptedException when interrupted while waiting for the sends in flight
+     * @throws KafkaException when some messages couldn't be published
+     */
+    private void produce(int messagesToProduce) throws InterruptedException, KafkaException {
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        for (int num  = 0; num < messagesToProduce; num++) {
+            kafkaProducer.publishAsync(textGenerator.getRandomText()).whenComplete((result, exc) -> {
+                if (null != exc) {
+                    failures.incrementAndGet();
+                    firstFailure.compareAndSet(null, exc);
                 }
             });
         }
+        kafkaProducer.flush();
 
-        if (!runProducer && !runConsumer && !runStreamer) {
-            LOGGER.error(">>> Program argument required: [--produce [num]] [--consume] [--stream]");
+        if (failures.get() > 0) {
+            LOGGER.error(">>> Messages published with errors - Published={} - Failed={}", messagesToProduce - failures.get(), failures.get());
+            throw new KafkaException("KafkaSecurityCommandLineRunner: " + failures.get() + " of " + messagesToProduce + " messages couldn't be published", firstFailure.get());
         }
+        LOGGER.info(">>> Messages published - Published={}", messagesToProduce);
     }
 
     /**
@@ -1,12 +1,20 @@
 package com.privalia.poc.kafka.security.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Service to generate a random text
+ * Service to generate a random text.
+ * It is thread-safe and only allocates the result: the random numbers come from
+ * {@link ThreadLocalRandom} and the texts are slices of the corpus, precomputed as a String and as UTF-8 bytes.
+ * The texts can be written straight into a reusable buffer, and seeded streams give reproducible texts.
  *
  * @author david.amigo
  */
@@ -23,15 +31,307 @@ public class RandomTextGenerator
             "Aliquam", "maximus", "purus", "a", "orci", "ullamcorper", "eget", "ultricies", "diam", "dignissim"
     };
 
+    /**
+     * The random numbers of the current thread, without contention between threads
+     */
+    private static final RandomSource THREAD_LOCAL_RANDOM = new RandomSource() {
+
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return ThreadLocalRandom.current().nextDouble();
+        }
+    };
+
+    /** The distributions of the words of the texts */
+    public enum Distribution {
+
+        /** A run of consecutive words of the corpus, starting in its first half */
+        RANGE,
+
+        /** Words picked independently, the word of rank k with a probability proportional to 1 / k^exponent */
+        ZIPF;
+
+        /**
+         * Parses a distribution, case insensitive
+         *
+         * @param value the name of the distribution
+         * @return the distribution
+         */
+        public static Distribution of(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /** The words the texts are made of */
+    private final TextCorpus corpus;
+
+    /** The distribution of the words of the texts */
+    private final Distribution distribution;
+
+    /** The cumulative probability of every word, for the Zipfian distribution */
+    private final double[] zipfCumulative;
+
+    /** The minimum number of words of a text, for the Zipfian distribution */
+    private final int minWords;
+
+    /** The maximum number of words of a text, for the Zipfian distribution */
+    private final int maxWords;
+
+    /**
+     * Default constructor: the built-in corpus, with runs of consecutive words
+     */
+    public RandomTextGenerator() {
+        this(TextCorpus.of(source), Distribution.RANGE, 1.0, 1, source.length);
+    }
+
+    /**
+     * Autowired constructor
+     *
+     * @param corpusLocation the location of the corpus (classpath or "file:"), or empty for the built-in corpus
+     * @param distribution   the distribution of the words of the texts: range or zipf
+     * @param zipfExponent   the exponent of the Zipfian distribution
+     * @param minWords       the minimum number of words of a text, for the Zipfian distribution
+     * @param maxWords       the maximum number of words of a text, for the Zipfian distribution
+     */
+    @Autowired
+    public RandomTextGenerator(
+            @Value("${spring.kafka.text-generator.corpus:}") String corpusLocation,
+            @Value("${spring.kafka.text-generator.distribution:range}") String distribution,
+            @Value("${spring.kafka.text-generator.zipf-exponent:1.0}") double zipfExponent,
+            @Value("${spring.kafka.text-generator.min-words:1}") int minWords,
+            @Value("${spring.kafka.text-generator.max-words:20}") int maxWords
+    ) {
+        this(corpusLocation.isEmpty() ? TextCorpus.of(source) : TextCorpus.load(corpusLocation),
+                Distribution.of(distribution), zipfExponent, minWords, maxWords);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param corpus       the words the texts are made of
+     * @param distribution the distribution of the words of the texts
+     * @param zipfExponent the exponent of the Zipfian distribution
+     * @param minWords     the minimum number of words of a text, for the Zipfian distribution
+     * @param maxWords     the maximum number of words of a text, for the Zipfian distribution
+     */
+    public RandomTextGenerator(TextCorpus corpus, Distribution distribution, double zipfExponent, int minWords, int maxWords) {
+        if (minWords < 0 || maxWords < minWords) {
+            throw new IllegalArgumentException("RandomTextGenerator: min-words can't be negative or greater than max-words");
+        }
+        this.corpus = corpus;
+        this.distribution = distribution;
+        this.zipfCumulative = Distribution.ZIPF == distribution ? corpus.zipfCumulative(zipfExponent) : null;
+        this.minWords = minWords;
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * @return all the words the random texts are made of, in order
+     */
+    public List<String> getCorpus() {
+        return corpus.getWords();
+    }
+
     /**
      * @return a random text
      */
     public String getRandomText() {
-        Random random = new Random();
-        int maxWords = source.length;
-        int firstWord = random.nextInt(maxWords / 2);
-        int lastWord = firstWord + random.nextInt(maxWords - firstWord);
-        String[] subarray = Arrays.stream(source, firstWord, lastWord).toArray(String[]::new);
-        return String.join(" ", subarray);
+        return text(THREAD_LOCAL_RANDOM);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a random text into a buffer, from its position
+     *
+     * @param buffer the buffer, with at least {@link #getMaxTextBytes()} bytes remaining
+     * @return the number of bytes written
+     */
+    public int writeRandomText(ByteBuffer buffer) {
+        return write(THREAD_LOCAL_RANDOM, buffer);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a random text into an array
+     *
+     * @param target the array, with at least {@link #getMaxTextBytes()} bytes from the offset
+     * @param offset the offset where to write the text
+     * @return the number of bytes written
+     */
+    public int writeRandomText(byte[] target, int offset) {
+        return writeRandomText(ByteBuffer.wrap(target, offset, target.length - offset));
+    }
+
+    /**
+     * @return the maximum number of UTF-8 bytes of a text, to size the buffers
+     */
+    public int getMaxTextBytes() {
+        return Distribution.RANGE == distribution
+                ? corpus.joinedBytes().length
+                : maxWords * (corpus.getMaxWordBytes() + 1);
+    }
+
+    /**
+     * Creates a stream of random texts which is always the same for the same seed.
+     * The stream is not thread-safe: every thread needs its own stream (see {@link TextStream#split()}).
+     *
+     * @param seed the seed of the stream
+     * @return the stream of random texts
+     */
+    public TextStream newStream(long seed) {
+        return new TextStream(new SplittableRandom(seed));
+    }
+
+    /**
+     * Generates a random text
+     *
+     * @param random the source of the random numbers
+     * @return the text
+     */
+    private String text(RandomSource random) {
+        if (Distribution.RANGE == distribution) {
+            int first = random.nextInt(Math.max(1, corpus.size() / 2));
+            return corpus.text(first, first + random.nextInt(corpus.size() - first));
+        }
+
+        int words = minWords + random.nextInt(maxWords - minWords + 1);
+        StringBuilder builder = new StringBuilder(words * 8);
+        for (int num = 0; num < words; num++) {
+            if (num > 0) {
+                builder.append(' ');
+            }
+            builder.append(corpus.word(zipfWord(random.nextDouble())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a random text into a buffer
+     *
+     * @param random the source of the random numbers
+     * @param buffer the buffer
+     * @return the number of bytes written
+     */
+    private int write(RandomSource random, ByteBuffer buffer) {
+        if (Distribution.RANGE == distribution) {
+            int first = random.nextInt(Math.max(1, corpus.size() / 2));
+            return writeRange(buffer, first, first + random.nextInt(corpus.size() - first));
+        }
+
+        int words = minWords + random.nextInt(maxWords - minWords + 1);
+        int start = buffer.position();
+        for (int num = 0; num < words; num++) {
+            if (num > 0) {
+                buffer.put((byte) ' ');
+            }
+            buffer.put(corpus.wordBytes(zipfWord(random.nextDouble())));
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Writes a run of consecutive words: a single copy from the joined bytes
+     *
+     * @param buffer the buffer
+     * @param first  the index of the first word
+     * @param last   the index after the last word
+     * @return the number of bytes written
+     */
+    private int writeRange(ByteBuffer buffer, int first, int last) {
+        int length = corpus.byteLength(first, last);
+        buffer.put(corpus.joinedBytes(), corpus.byteOffset(first), length);
+        return length;
+    }
+
+    /**
+     * Picks a word with the Zipfian distribution
+     *
+     * @param value a random value from 0 (inclusive) to 1 (exclusive)
+     * @return the index of the word
+     */
+    private int zipfWord(double value) {
+        int index = Arrays.binarySearch(zipfCumulative, value);
+        return index >= 0 ? index : Math.min(-index - 1, zipfCumulative.length - 1);
+    }
+
+    /**
+     * The source of the random numbers of the texts
+     */
+    private interface RandomSource {
+
+        /**
+         * @param bound the upper bound (exclusive)
+         * @return a random value from 0 (inclusive) to the bound (exclusive)
+         */
+        int nextInt(int bound);
+
+        /**
+         * @return a random value from 0 (inclusive) to 1 (exclusive)
+         */
+        double nextDouble();
+    }
+
+    /**
+     * A reproducible stream of random texts, from a seeded {@link SplittableRandom}
+     */
+    public class TextStream implements RandomSource {
+
+        /** The random generator of the stream */
+        private final SplittableRandom random;
+
+        /**
+         * Constructor
+         *
+         * @param random the random generator of the stream
+         */
+        private TextStream(SplittableRandom random) {
+            this.random = random;
+        }
+
+        /**
+         * @return the next text
+         */
+        public String nextText() {
+            return text(this);
+        }
+
+        /**
+         * Writes the UTF-8 bytes of the next text into a buffer, from its position
+         *
+         * @param buffer the buffer, with at least {@link #getMaxTextBytes()} bytes remaining
+         * @return the number of bytes written
+         */
+        public int writeNextText(ByteBuffer buffer) {
+            return write(this, buffer);
+        }
+
+        /**
+         * Creates a new independent stream for another thread, reproducible too
+         *
+         * @return the new stream
+         */
+        public TextStream split() {
+            return new TextStream(random.split());
+        }
+
+        /**
+         * @param bound the upper bound (exclusive)
+         * @return a random value from 0 (inclusive) to the bound (exclusive)
+         */
+        @Override
+        public int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+
+        /**
+         * @return a random value from 0 (inclusive) to 1 (exclusive)
+         */
+        @Override
+        public double nextDouble() {
+            return random.nextDouble();
+        }
     }
 }
@@ -0,0 +1,206 @@
+package com.privalia.poc.kafka.security.service;
+
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.kafka.KafkaException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The words the random texts are made of, with their UTF-8 bytes precomputed.
+ * The words are also joined by spaces, so a run of consecutive words is a single slice of the joined text.
+ *
+ * @author david.amigo
+ */
+public class TextCorpus {
+
+    /** The words, in order */
+    private final List<String> words;
+
+    /** The UTF-8 bytes of every word */
+    private final byte[][] wordBytes;
+
+    /** The words joined by spaces, with a trailing space */
+    private final String joined;
+
+    /** The UTF-8 bytes of the words joined by spaces, with a trailing space */
+    private final byte[] joinedBytes;
+
+    /** The offset of every word in the joined text, plus the length of the joined text */
+    private final int[] charOffsets;
+
+    /** The offset of every word in the joined bytes, plus the length of the joined bytes */
+    private final int[] byteOffsets;
+
+    /** The bytes of the longest word */
+    private final int maxWordBytes;
+
+    /**
+     * Constructor
+     *
+     * @param words the words, in order
+     */
+    public TextCorpus(List<String> words) {
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("TextCorpus: The corpus has no words");
+        }
+        this.words = Collections.unmodifiableList(new ArrayList<>(words));
+        this.wordBytes = new byte[words.size()][];
+        this.charOffsets = new int[words.size() + 1];
+        this.byteOffsets = new int[words.size() + 1];
+
+        StringBuilder builder = new StringBuilder();
+        int maxWordBytes = 0;
+        for (int index = 0; index < words.size(); index++) {
+            charOffsets[index] = builder.length();
+            builder.append(words.get(index)).append(' ');
+            wordBytes[index] = words.get(index).getBytes(StandardCharsets.UTF_8);
+            byteOffsets[index + 1] = byteOffsets[index] + wordBytes[index].length + 1;
+            maxWordBytes = Math.max(maxWordBytes, wordBytes[index].length);
+        }
+        charOffsets[words.size()] = builder.length();
+        this.joined = builder.toString();
+        this.joinedBytes = joined.getBytes(StandardCharsets.UTF_8);
+        this.maxWordBytes = maxWordBytes;
+    }
+
+    /**
+     * Creates a corpus from its words
+     *
+     * @param words the words, in order
+     * @return the corpus
+     */
+    public static TextCorpus of(String... words) {
+        return new TextCorpus(Arrays.asList(words));
+    }
+
+    /**
+     * Loads a corpus from a text resource: classpath (default) or file ("file:" prefix).
+     * The words are separated by whitespace. For the Zipfian distribution the words must be sorted
+     * from the most frequent to the least frequent.
+     *
+     * @param location the location of the resource
+     * @return the corpus
+     * @throws KafkaException when the resource can't be read or has no words
+     */
+    public static TextCorpus load(String location) throws KafkaException {
+        Resource resource = new DefaultResourceLoader().getResource(location);
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                for (String word : line.trim().split("\\s+")) {
+                    if (!word.isEmpty()) {
+                        words.add(word);
+                    }
+                }
+            }
+        } catch (IOException exc) {
+            throw new KafkaException("TextCorpus: Can't read the corpus " + location, exc);
+        }
+        if (words.isEmpty()) {
+            throw new KafkaException("TextCorpus: The corpus " + location + " has no words");
+        }
+        return new TextCorpus(words);
+    }
+
+    /**
+     * @return the number of words
+     */
+    public int size() {
+        return words.size();
+    }
+
+    /**
+     * @return the words, in order
+     */
+    public List<String> getWords() {
+        return words;
+    }
+
+    /**
+     * @param index the index of the word
+     * @return the word
+     */
+    public String word(int index) {
+        return words.get(index);
+    }
+
+    /**
+     * @param index the index of the word
+     * @return the UTF-8 bytes of the word (not to be modified)
+     */
+    byte[] wordBytes(int index) {
+        return wordBytes[index];
+    }
+
+    /**
+     * @return the bytes of the longest word
+     */
+    public int getMaxWordBytes() {
+        return maxWordBytes;
+    }
+
+    /**
+     * Gets the words from first (inclusive) to last (exclusive) joined by spaces
+     *
+     * @param first the index of the first word
+     * @param last  the index after the last word
+     * @return the text, empty if there are no words
+     */
+    String text(int first, int last) {
+        return first >= last ? "" : joined.substring(charOffsets[first], charOffsets[last] - 1);
+    }
+
+    /**
+     * @return the UTF-8 bytes of all the words joined by spaces, with a trailing space (not to be modified)
+     */
+    byte[] joinedBytes() {
+        return joinedBytes;
+    }
+
+    /**
+     * @param first the index of the first word
+     * @return the offset of the word in the joined bytes
+     */
+    int byteOffset(int first) {
+        return byteOffsets[first];
+    }
+
+    /**
+     * @param first the index of the first word
+     * @param last  the index after the last word
+     * @return the bytes of the words from first (inclusive) to last (exclusive) joined by spaces
+     */
+    int byteLength(int first, int last) {
+        return first >= last ? 0 : byteOffsets[last] - byteOffsets[first] - 1;
+    }
+
+    /**
+     * Computes the cumulative probabilities of the words with a Zipfian distribution: the probability of the word
+     * of rank k (1 based) is proportional to 1 / k^exponent
+     *
+     * @param exponent the exponent of the distribution (e.g. 1.0)
+     * @return the cumulative probability of every word, the last one is 1
+     */
+    double[] zipfCumulative(double exponent) {
+        double[] cumulative = new double[words.size()];
+        double sum = 0;
+        for (int rank = 1; rank <= cumulative.length; rank++) {
+            sum += 1.0 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int index = 0; index < cumulative.length; index++) {
+            cumulative[index] /= sum;
+        }
+        cumulative[cumulative.length - 1] = 1.0;
+        return cumulative;
+    }
+}
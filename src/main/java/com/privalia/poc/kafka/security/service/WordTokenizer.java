@@ -0,0 +1,140 @@
+package com.privalia.poc.kafka.security.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Service to split a text into words.
+ * A word is a run of letters or digits; whitespace and punctuation are separators.
+ * The text is scanned by index: no regular expressions, arrays or lists are created.
+ *
+ * @author david.amigo
+ */
+@Component
+public class WordTokenizer {
+
+    /** Whether the words are normalized to lower case */
+    private final boolean lowerCase;
+
+    /**
+     * Autowired constructor
+     *
+     * @param lowerCase whether the words are normalized to lower case
+     */
+    @Autowired
+    public WordTokenizer(@Value("${spring.kafka.streams.count-words.lower-case:false}") boolean lowerCase) {
+        this.lowerCase = lowerCase;
+    }
+
+    /**
+     * @param text the text to split
+     * @return the words of the text, found while iterating
+     */
+    public Iterable<String> words(String text) {
+        return words(text, Function.identity());
+    }
+
+    /**
+     * @param text   the text to split
+     * @param mapper the function to convert each word
+     * @param <T>    the type of the converted words
+     * @return the converted words of the text, found while iterating
+     */
+    public <T> Iterable<T> words(String text, Function<String, T> mapper) {
+        if (null == text) {
+            return Collections.emptyList();
+        }
+        return () -> new WordIterator<>(text, lowerCase, mapper);
+    }
+
+    /**
+     * Iterator which finds the next word of the text on demand
+     *
+     * @param <T> the type of the converted words
+     */
+    private static final class WordIterator<T> implements Iterator<T> {
+
+        /** The text to split */
+        private final String text;
+
+        /** Whether the words are normalized to lower case */
+        private final boolean lowerCase;
+
+        /** The function to convert each word */
+        private final Function<String, T> mapper;
+
+        /** The position where to look for the next word */
+        private int position = 0;
+
+        /** The next word or null if there are no more words */
+        private String next;
+
+        private WordIterator(String text, boolean lowerCase, Function<String, T> mapper) {
+            this.text = text;
+            this.lowerCase = lowerCase;
+            this.mapper = mapper;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != next;
+        }
+
+        @Override
+        public T next() {
+            if (null == next) {
+                throw new NoSuchElementException();
+            }
+            String word = next;
+            advance();
+            return mapper.apply(word);
+        }
+
+        /**
+         * Finds the next word starting at the current position
+         */
+        private void advance() {
+            final int length = text.length();
+            int start = position;
+            while (start < length) {
+                int codePoint = text.codePointAt(start);
+                if (Character.isLetterOrDigit(codePoint)) {
+                    break;
+                }
+                start += Character.charCount(codePoint);
+            }
+
+            if (start >= length) {
+                position = length;
+                next = null;
+                return;
+            }
+
+            int end = start;
+            boolean notLowerCase = false;
+            while (end < length) {
+                int codePoint = text.codePointAt(end);
+                if (!Character.isLetterOrDigit(codePoint)) {
+                    break;
+                }
+                // Not only the upper case letters change: the title case ones too (e.g. U+01C5)
+                notLowerCase |= Character.toLowerCase(codePoint) != codePoint;
+                end += Character.charCount(codePoint);
+            }
+
+            position = end;
+            next = text.substring(start, end);
+            if (lowerCase && notLowerCase) {
+                next = next.toLowerCase(Locale.ROOT);
+            }
+        }
+    }
+}
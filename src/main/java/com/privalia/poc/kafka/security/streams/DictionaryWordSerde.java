@@ -0,0 +1,131 @@
+package com.privalia.poc.kafka.security.streams;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serde for words encoded with a shared dictionary.
+ * A word in the dictionary is written as the varint (ID + 1), usually one or two bytes.
+ * A word not in the dictionary is written as a zero byte followed by its UTF-8 bytes.
+ *
+ * @author david.amigo
+ */
+public class DictionaryWordSerde implements Serde<String> {
+
+    /** The serializer of the words */
+    private final Serializer<String> serializer;
+
+    /** The deserializer of the words */
+    private final Deserializer<String> deserializer;
+
+    /**
+     * Constructor
+     *
+     * @param dictionary the shared dictionary
+     */
+    public DictionaryWordSerde(WordDictionary dictionary) {
+        this.serializer = new WordSerializer(dictionary);
+        this.deserializer = new WordDeserializer(dictionary);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Serializer<String> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<String> deserializer() {
+        return deserializer;
+    }
+
+    /**
+     * Serializer of the words
+     */
+    private static class WordSerializer implements Serializer<String> {
+
+        /** The shared dictionary */
+        private final WordDictionary dictionary;
+
+        private WordSerializer(WordDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public byte[] serialize(String topic, String word) {
+            if (null == word) {
+                return null;
+            }
+            int id = dictionary.idOf(word);
+            if (id >= 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(ByteUtils.sizeOfUnsignedVarint(id + 1));
+                ByteUtils.writeUnsignedVarint(id + 1, buffer);
+                return buffer.array();
+            }
+            byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+            byte[] data = new byte[utf8.length + 1];
+            System.arraycopy(utf8, 0, data, 1, utf8.length);
+            return data;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Deserializer of the words
+     */
+    private static class WordDeserializer implements Deserializer<String> {
+
+        /** The shared dictionary */
+        private final WordDictionary dictionary;
+
+        private WordDeserializer(WordDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public String deserialize(String topic, byte[] data) {
+            if (null == data) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int id = ByteUtils.readUnsignedVarint(buffer) - 1;
+            if (id < 0) {
+                return new String(data, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+            }
+            String word = dictionary.wordOf(id);
+            if (null == word) {
+                throw new SerializationException("DictionaryWordSerde: The word ID " + id + " is not in the dictionary");
+            }
+            return word;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
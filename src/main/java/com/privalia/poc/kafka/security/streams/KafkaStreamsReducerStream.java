@@ -1,20 +1,28 @@
 package com.privalia.poc.kafka.security.streams;
 
+import com.privalia.poc.kafka.security.logging.SampledLogger;
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.KeyValueStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Kafka streams reducer example with SSL enabled
@@ -24,8 +32,8 @@ import java.util.List;
 @Component
 public class KafkaStreamsReducerStream {
 
-    /** Logger */
-    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaStreamsReducerStream.class);
+    /** Sampled logger for the diagnostics of every record */
+    private final SampledLogger diagnostics;
 
     /** The name of the input topic (KStream) */
     private final String inputTopic;
@@ -33,19 +41,64 @@ public class KafkaStreamsReducerStream {
     /** The name of the output topic (KTable) */
     private final String outputTopic;
 
+    /** The service to split the messages into words */
+    private final WordTokenizer wordTokenizer;
+
+    /** How the words are counted before the repartition */
+    private final PreAggregation preAggregation;
+
+    /** The supplier of the state store with the count of every word */
+    private final KeyValueBytesStoreSupplier countStoreSupplier;
+
+    /** The serde of the words in the repartition topic and the state store */
+    private final Serde<String> wordSerde;
+
+    /** The serde of the counts in the repartition topic and the state store */
+    private final Serde<Long> countSerde;
+
+    /** The maximum number of different words kept by the micro-batch pre-aggregation */
+    private final int preAggregationMaxWords;
+
+    /** The interval to forward the partial counts of the micro-batch pre-aggregation */
+    private final Duration preAggregationFlushInterval;
+
     /**
      * Autowired constructor
      *
-     * @param inputTopic  the name of the input topic (KStream)
-     * @param outputTopic the name of the output topic (KTable)
+     * @param inputTopic                  the name of the input topic (KStream)
+     * @param outputTopic                 the name of the output topic (KTable)
+     * @param wordTokenizer               the service to split the messages into words
+     * @param preAggregation              how the words are counted before the repartition: none, message or batch
+     * @param preAggregationMaxWords      the maximum number of different words kept by the batch pre-aggregation
+     * @param preAggregationFlushInterval milliseconds to forward the partial counts of the batch pre-aggregation
+     * @param countStoreSupplier          the supplier of the state store with the count of every word
+     * @param wordSerde                   the serde of the words in the repartition topic and the state store
+     * @param countSerde                  the serde of the counts in the repartition topic and the state store
+     * @param loggerFactory               the factory of the sampled loggers for the diagnostics
      */
     @Autowired
     public KafkaStreamsReducerStream(
             @Value("${spring.kafka.topics.sim-test1}") String inputTopic,
-            @Value("${spring.kafka.topics.sim-test2}") String outputTopic
+            @Value("${spring.kafka.topics.sim-test2}") String outputTopic,
+            WordTokenizer wordTokenizer,
+            @Value("${spring.kafka.streams.count-words.pre-aggregation:none}") String preAggregation,
+            @Value("${spring.kafka.streams.count-words.pre-aggregation-max-words:10000}") int preAggregationMaxWords,
+            @Value("${spring.kafka.streams.count-words.pre-aggregation-flush-ms:1000}") long preAggregationFlushInterval,
+            @Qualifier("sim-kafka-steams-count-words-store") KeyValueBytesStoreSupplier countStoreSupplier,
+            @Qualifier("sim-kafka-steams-count-words-word-serde") Serde<String> wordSerde,
+            @Qualifier("sim-kafka-steams-count-words-count-serde") Serde<Long> countSerde,
+            SampledLoggerFactory loggerFactory
     ) {
         this.inputTopic = inputTopic;
         this.outputTopic = outputTopic;
+        this.wordTokenizer = wordTokenizer;
+        this.preAggregation = PreAggregation.valueOf(preAggregation.trim().toUpperCase(Locale.ROOT));
+        this.preAggregationMaxWords = preAggregationMaxWords;
+        this.preAggregationFlushInterval = Duration.ofMillis(preAggregationFlushInterval);
+        this.countStoreSupplier = countStoreSupplier;
+        this.wordSerde = wordSerde;
+        this.countSerde = countSerde;
+        this.diagnostics = loggerFactory.getLogger("streams", KafkaStreamsReducerStream.class);
     }
 
     /**
@@ -61,23 +114,37 @@ public class KafkaStreamsReducerStream {
         KStream<String, String> inputStream = builder
                 .stream(inputTopic, Consumed.with(Serdes.String(), Serdes.String()));
 
-        KStream<String, String> wordsStream = inputStream
-                .flatMap((key, value) -> {
-                    LOGGER.info(">>> Read input stream - Key={} - Value={}", key, value);
-                    List<KeyValue<String, String>> result = new LinkedList<>();
-                    Arrays.stream(value.split(" ")).forEach(word -> result.add(KeyValue.pair(word, word)));
-                    return result;
-                });
+        KTable<String, Long> outputTable;
+        switch (preAggregation) {
+            case MESSAGE:
+                outputTable = sumPartialCounts(inputStream.flatMap((key, value) -> countWords(value)));
+                break;
+
+            case BATCH:
+                builder.addStateStore(WordCountPreAggregator.storeBuilder());
+                outputTable = sumPartialCounts(inputStream.transform(() -> new WordCountPreAggregator(
+                        wordTokenizer,
+                        preAggregationMaxWords,
+                        preAggregationFlushInterval
+                ), WordCountPreAggregator.STORE_NAME));
+                break;
 
-        KTable<String, Long> outputTable = wordsStream
-                .groupByKey()
-                .count();
+            default:
+                outputTable = inputStream
+                        .flatMap((key, value) -> {
+                            diagnostics.info(">>> Read input stream - Key={} - Value={}", key, value);
+                            return wordTokenizer.words(value, word -> KeyValue.pair(word, word));
+                        })
+                        .groupByKey(Grouped.with(wordSerde, Serdes.String()))
+                        .count(countStore());
+        }
 
-        KStream<String, Long> outputStream = outputTable
-                .toStream()
-                .peek((key, value) -> {
-                    LOGGER.info(">>> Written output stream - Key={} - Value={}", key, value);
-                });
+        KStream<String, Long> outputStream = outputTable.toStream();
+        if (diagnostics.isInfoEnabled()) {
+            outputStream = outputStream.peek((key, value) -> {
+                diagnostics.info(">>> Written output stream - Key={} - Value={}", key, value);
+            });
+        }
 
         outputStream.to(
                 outputTopic,
@@ -86,4 +153,56 @@ public class KafkaStreamsReducerStream {
 
         return builder;
     }
+
+    /**
+     * Counts the words of a single message
+     *
+     * @param value the message
+     * @return the (word, partialCount) pairs of the message
+     */
+    private List<KeyValue<String, Long>> countWords(String value) {
+        Map<String, Long> partialCounts = new HashMap<>();
+        for (String word : wordTokenizer.words(value)) {
+            partialCounts.merge(word, 1L, Long::sum);
+        }
+        List<KeyValue<String, Long>> result = new ArrayList<>(partialCounts.size());
+        partialCounts.forEach((word, count) -> result.add(KeyValue.pair(word, count)));
+        return result;
+    }
+
+    /**
+     * Adds up the partial counts of each word
+     *
+     * @param partialCounts the stream of (word, partialCount) pairs
+     * @return the table with the total count of each word
+     */
+    private KTable<String, Long> sumPartialCounts(KStream<String, Long> partialCounts) {
+        return partialCounts
+                .groupByKey(Grouped.with(wordSerde, countSerde))
+                .reduce(Long::sum, countStore());
+    }
+
+    /**
+     * @return the materialization of the table with the count of every word
+     */
+    private Materialized<String, Long, KeyValueStore<Bytes, byte[]>> countStore() {
+        return Materialized.<String, Long>as(countStoreSupplier)
+                .withKeySerde(wordSerde)
+                .withValueSerde(countSerde);
+    }
+
+    /**
+     * How the words are counted before the repartition
+     */
+    public enum PreAggregation {
+
+        /** Every word is sent to the repartition topic as a single record */
+        NONE,
+
+        /** The words repeated in a message are sent once with their partial count */
+        MESSAGE,
+
+        /** The words repeated in a micro-batch are sent once with their partial count */
+        BATCH
+    }
 }
@@ -0,0 +1,118 @@
+package com.privalia.poc.kafka.security.streams;
+
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.state.WindowStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Kafka streams example with SSL enabled: the most repeated words of every time window.
+ * The windows are tumbling when the advance is equal to the size, and hopping when it is smaller.
+ * Nothing is written until a window closes, and then only its top words.
+ *
+ * @author david.amigo
+ */
+@Component
+public class KafkaStreamsTrendingWordsStream {
+
+    /** The name of the input topic (KStream) */
+    private final String inputTopic;
+
+    /** The name of the output topic */
+    private final String outputTopic;
+
+    /** The service to split the messages into words */
+    private final WordTokenizer wordTokenizer;
+
+    /** The size of the windows */
+    private final Duration windowSize;
+
+    /** The advance of the windows */
+    private final Duration windowAdvance;
+
+    /** The time a window accepts out-of-order records after its end */
+    private final Duration grace;
+
+    /** The number of words to write for every window */
+    private final int topSize;
+
+    /** The interval to write the top words of the closed windows */
+    private final Duration emitInterval;
+
+    /**
+     * Autowired constructor
+     *
+     * @param inputTopic    the name of the input topic (KStream)
+     * @param outputTopic   the name of the output topic
+     * @param wordTokenizer the service to split the messages into words
+     * @param windowSize    milliseconds of the size of the windows
+     * @param windowAdvance milliseconds of the advance of the windows
+     * @param grace         milliseconds a window accepts out-of-order records after its end
+     * @param topSize       the number of words to write for every window
+     * @param emitInterval  milliseconds to write the top words of the closed windows
+     */
+    @Autowired
+    public KafkaStreamsTrendingWordsStream(
+            @Value("${spring.kafka.topics.sim-test1}") String inputTopic,
+            @Value("${spring.kafka.topics.sim-test3}") String outputTopic,
+            WordTokenizer wordTokenizer,
+            @Value("${spring.kafka.streams.trending-words.window-size-ms:60000}") long windowSize,
+            @Value("${spring.kafka.streams.trending-words.window-advance-ms:60000}") long windowAdvance,
+            @Value("${spring.kafka.streams.trending-words.grace-ms:10000}") long grace,
+            @Value("${spring.kafka.streams.trending-words.top-size:10}") int topSize,
+            @Value("${spring.kafka.streams.trending-words.emit-interval-ms:1000}") long emitInterval
+    ) {
+        this.inputTopic = inputTopic;
+        this.outputTopic = outputTopic;
+        this.wordTokenizer = wordTokenizer;
+        this.windowSize = Duration.ofMillis(windowSize);
+        this.windowAdvance = Duration.ofMillis(windowAdvance);
+        this.grace = Duration.ofMillis(grace);
+        this.topSize = topSize;
+        this.emitInterval = Duration.ofMillis(emitInterval);
+    }
+
+    /**
+     * Builds the topology of the Kafka Streams.
+     *
+     * @param builder the streams builder
+     * @return the builder configured with the topology
+     */
+    @Bean("sim-kafka-steams-trending-words-topology")
+    public StreamsBuilder startProcessing(
+            @Qualifier("sim-kafka-steams-trending-words-bean") StreamsBuilder builder
+    ) {
+        KStream<String, String> inputStream = builder
+                .stream(inputTopic, Consumed.with(Serdes.String(), Serdes.String()));
+
+        KTable<Windowed<String>, Long> windowedCounts = inputStream
+                .flatMap((key, value) -> wordTokenizer.words(value, word -> KeyValue.pair(word, word)))
+                .groupByKey()
+                .windowedBy(TimeWindows.of(windowSize).advanceBy(windowAdvance).grace(grace))
+                .count(Materialized.<String, Long, WindowStore<Bytes, byte[]>>with(Serdes.String(), Serdes.Long())
+                        .withRetention(windowSize.plus(grace)));
+
+        builder.addStateStore(TopWordsPerWindow.storeBuilder());
+        KStream<String, String> outputStream = windowedCounts
+                .suppress(Suppressed.untilWindowCloses(Suppressed.BufferConfig.unbounded()))
+                .toStream()
+                .transform(() -> new TopWordsPerWindow(topSize, emitInterval), TopWordsPerWindow.STORE_NAME);
+
+        outputStream.to(
+                outputTopic,
+                Produced.with(Serdes.String(), Serdes.String())
+        );
+
+        return builder;
+    }
+}
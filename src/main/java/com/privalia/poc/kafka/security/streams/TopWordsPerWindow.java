@@ -0,0 +1,161 @@
+package com.privalia.poc.kafka.security.streams;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Transformer which keeps the most repeated words of every window of a partition in a bounded list.
+ * It receives the final count of each word when its window closes and, on the next punctuation,
+ * forwards one record per window: key "windowStart/windowEnd" and value "word=count,word=count..." (top first).
+ * The top words of a window of all the partitions together are the merge of the records with the same key.
+ *
+ * The lists are kept in a state store in memory with a changelog topic, in the same format as the records forwarded:
+ * they are committed with the final counts received, so a window received and not forwarded yet survives a crash.
+ *
+ * @author david.amigo
+ */
+class TopWordsPerWindow implements Transformer<Windowed<String>, Long, KeyValue<String, String>> {
+
+    /** The name of the state store with the top words of every window */
+    static final String STORE_NAME = "sim-kafka-steams-trending-words-top-words";
+
+    /** Orders the words by count, the most repeated first */
+    private static final Comparator<KeyValue<String, Long>> BY_COUNT_DESC =
+            Comparator.comparing((KeyValue<String, Long> pair) -> pair.value).reversed();
+
+    /** The number of words to keep for every window */
+    private final int topSize;
+
+    /** The interval to forward the top words of the closed windows */
+    private final Duration emitInterval;
+
+    /** The top words of every window received: "word=count,word=count..." by "windowStart/windowEnd" */
+    private KeyValueStore<String, String> topWords;
+
+    /** The processor context */
+    private ProcessorContext context;
+
+    /**
+     * Constructor
+     *
+     * @param topSize      the number of words to keep for every window
+     * @param emitInterval the interval to forward the top words of the closed windows
+     */
+    TopWordsPerWindow(int topSize, Duration emitInterval) {
+        this.topSize = topSize;
+        this.emitInterval = emitInterval;
+    }
+
+    /**
+     * Creates the builder of the state store with the top words of every window: in memory, with a changelog topic
+     *
+     * @return the builder of the state store
+     */
+    static StoreBuilder<KeyValueStore<String, String>> storeBuilder() {
+        return Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(STORE_NAME), Serdes.String(), Serdes.String());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.context = context;
+        this.topWords = (KeyValueStore<String, String>) context.getStateStore(STORE_NAME);
+        context.schedule(emitInterval, PunctuationType.WALL_CLOCK_TIME, timestamp -> emit());
+    }
+
+    @Override
+    public KeyValue<String, String> transform(Windowed<String> word, Long count) {
+        String windowKey = windowKey(word.window());
+        List<KeyValue<String, Long>> words = decode(topWords.get(windowKey));
+        words.add(KeyValue.pair(word.key(), count));
+        words.sort(BY_COUNT_DESC);
+        if (words.size() > topSize) {
+            words.remove(words.size() - 1);
+        }
+        topWords.put(windowKey, encode(words));
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // The windows not forwarded yet stay in the store, they are forwarded by the next owner of the task
+    }
+
+    /**
+     * Forwards the top words of every window received and empties the store
+     */
+    private void emit() {
+        List<KeyValue<String, String>> windows = new ArrayList<>();
+        try (KeyValueIterator<String, String> iterator = topWords.all()) {
+            iterator.forEachRemaining(windows::add);
+        }
+        for (KeyValue<String, String> window : windows) {
+            context.forward(window.key, window.value);
+            topWords.delete(window.key);
+        }
+    }
+
+    /**
+     * @param window the window
+     * @return the key of the window: "windowStart/windowEnd"
+     */
+    private static String windowKey(Window window) {
+        return Instant.ofEpochMilli(window.start()) + "/" + Instant.ofEpochMilli(window.end());
+    }
+
+    /**
+     * Encodes the top words of a window. The words have only letters and digits, so they never contain the separators.
+     *
+     * @param words the top words, the most repeated first
+     * @return the top words as "word=count,word=count..."
+     */
+    private static String encode(List<KeyValue<String, Long>> words) {
+        StringBuilder value = new StringBuilder();
+        for (KeyValue<String, Long> pair : words) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(pair.key).append('=').append(pair.value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Decodes the top words of a window
+     *
+     * @param value the top words as "word=count,word=count...", or null
+     * @return the top words, the most repeated first
+     */
+    private List<KeyValue<String, Long>> decode(String value) {
+        List<KeyValue<String, Long>> words = new ArrayList<>(topSize + 1);
+        if (null == value || value.isEmpty()) {
+            return words;
+        }
+        int start = 0;
+        while (start < value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int separator = value.lastIndexOf('=', end - 1);
+            words.add(KeyValue.pair(value.substring(start, separator), Long.parseLong(value.substring(separator + 1, end))));
+            start = end + 1;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,84 @@
+package com.privalia.poc.kafka.security.streams;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Serde for longs encoded as zig-zag varints: small counts take one or two bytes instead of eight
+ *
+ * @author david.amigo
+ */
+public class VarLongSerde implements Serde<Long> {
+
+    /** The serializer of the longs */
+    private final Serializer<Long> serializer = new VarLongSerializer();
+
+    /** The deserializer of the longs */
+    private final Deserializer<Long> deserializer = new VarLongDeserializer();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Serializer<Long> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<Long> deserializer() {
+        return deserializer;
+    }
+
+    /**
+     * Serializer of the longs
+     */
+    private static class VarLongSerializer implements Serializer<Long> {
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public byte[] serialize(String topic, Long value) {
+            if (null == value) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(ByteUtils.sizeOfVarlong(value));
+            ByteUtils.writeVarlong(value, buffer);
+            return buffer.array();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Deserializer of the longs
+     */
+    private static class VarLongDeserializer implements Deserializer<Long> {
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public Long deserialize(String topic, byte[] data) {
+            return null == data ? null : ByteUtils.readVarlong(ByteBuffer.wrap(data));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
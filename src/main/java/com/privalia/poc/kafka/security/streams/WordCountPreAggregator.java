@@ -0,0 +1,124 @@
+package com.privalia.poc.kafka.security.streams;
+
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transformer which splits the messages into words and keeps the partial count of each word in a bounded state store.
+ * The partial counts are forwarded as (word, partialCount) on every punctuation or when the store is full,
+ * so the words which repeat in a micro-batch are written once to the repartition topic.
+ *
+ * The store is in memory with a changelog topic: its updates are committed with the offsets of the messages,
+ * in the same transaction with exactly-once, so the partial counts not forwarded yet are restored after a crash.
+ * The store is cached, so the increments of a word are combined and written once to the changelog on every commit.
+ *
+ * @author david.amigo
+ */
+class WordCountPreAggregator implements Transformer<String, String, KeyValue<String, Long>> {
+
+    /** The name of the state store with the partial counts */
+    static final String STORE_NAME = "sim-kafka-steams-count-words-partial-counts";
+
+    /** The service to split the messages into words */
+    private final WordTokenizer wordTokenizer;
+
+    /** The maximum number of different words kept before forwarding the partial counts */
+    private final int maxWords;
+
+    /** The interval to forward the partial counts */
+    private final Duration flushInterval;
+
+    /** The partial count of each word */
+    private KeyValueStore<String, Long> partialCounts;
+
+    /** The number of different words in the store (the cached store doesn't count the words not flushed yet) */
+    private int words;
+
+    /** The processor context */
+    private ProcessorContext context;
+
+    /**
+     * Constructor
+     *
+     * @param wordTokenizer the service to split the messages into words
+     * @param maxWords      the maximum number of different words kept before forwarding the partial counts
+     * @param flushInterval the interval to forward the partial counts
+     */
+    WordCountPreAggregator(WordTokenizer wordTokenizer, int maxWords, Duration flushInterval) {
+        this.wordTokenizer = wordTokenizer;
+        this.maxWords = maxWords;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Creates the builder of the state store with the partial counts: in memory, cached, with a changelog topic
+     *
+     * @return the builder of the state store
+     */
+    static StoreBuilder<KeyValueStore<String, Long>> storeBuilder() {
+        return Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(STORE_NAME), Serdes.String(), Serdes.Long())
+                .withCachingEnabled();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.context = context;
+        this.partialCounts = (KeyValueStore<String, Long>) context.getStateStore(STORE_NAME);
+        this.words = 0;
+        try (KeyValueIterator<String, Long> iterator = partialCounts.all()) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                words++;
+            }
+        }
+        context.schedule(flushInterval, PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+    }
+
+    @Override
+    public KeyValue<String, Long> transform(String key, String value) {
+        for (String word : wordTokenizer.words(value)) {
+            Long count = partialCounts.get(word);
+            if (null == count) {
+                words++;
+            }
+            partialCounts.put(word, null == count ? 1L : count + 1);
+        }
+        if (words >= maxWords) {
+            flush();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // The partial counts stay in the store, they are forwarded by the next owner of the task
+    }
+
+    /**
+     * Forwards the partial counts and empties the store
+     */
+    private void flush() {
+        List<KeyValue<String, Long>> counts = new ArrayList<>();
+        try (KeyValueIterator<String, Long> iterator = partialCounts.all()) {
+            iterator.forEachRemaining(counts::add);
+        }
+        for (KeyValue<String, Long> count : counts) {
+            context.forward(count.key, count.value);
+            partialCounts.delete(count.key);
+        }
+        words = 0;
+    }
+}
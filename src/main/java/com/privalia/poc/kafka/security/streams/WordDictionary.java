@@ -0,0 +1,254 @@
+package com.privalia.poc.kafka.security.streams;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.KafkaException;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Table of word IDs shared by all the instances through a compacted topic with a single partition (key: the word),
+ * cached locally. The ID of a word is the offset of its first record in the topic, so the instances seeding
+ * the same words at the same time agree without a single writer. A word is claimed with an empty record, whose ID
+ * is its offset; then the seeder reads the topic again and publishes the ID of the first record of every word
+ * claimed as the value (varint), so compaction keeps that ID when it removes the first claim.
+ * Every reader keeps the first ID of every word and ignores the later records.
+ *
+ * The encoding of a word changes when it is added to the dictionary: seed the words before the first run
+ * of the stream, and reset the stream application after adding new words.
+ *
+ * @author david.amigo
+ */
+public class WordDictionary {
+
+    /** Logger */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WordDictionary.class);
+
+    /** The name of the compacted topic */
+    private final String topic;
+
+    /** The replication factor of the compacted topic */
+    private final short replicationFactor;
+
+    /** The configuration to connect to Kafka */
+    private final Map<String, Object> clientConfigs;
+
+    /** The maximum time to read the whole compacted topic */
+    private final Duration loadTimeout;
+
+    /** The ID of every word */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** The word of every ID */
+    private final Map<Integer, String> words = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param topic             the name of the compacted topic
+     * @param replicationFactor the replication factor of the compacted topic
+     * @param clientConfigs     the configuration to connect to Kafka
+     * @param loadTimeout       the maximum time to read the whole compacted topic
+     */
+    public WordDictionary(String topic, short replicationFactor, Map<String, Object> clientConfigs, Duration loadTimeout) {
+        this.topic = topic;
+        this.replicationFactor = replicationFactor;
+        this.clientConfigs = clientConfigs;
+        this.loadTimeout = loadTimeout;
+    }
+
+    /**
+     * @param word the word
+     * @return the ID of the word or -1 if it is not in the dictionary
+     */
+    public int idOf(String word) {
+        Integer id = ids.get(word);
+        return null == id ? -1 : id;
+    }
+
+    /**
+     * @param id the ID of a word
+     * @return the word or null if the ID is not in the dictionary
+     */
+    public String wordOf(int id) {
+        return words.get(id);
+    }
+
+    /**
+     * @return the number of words in the dictionary
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Reads the whole compacted topic into the local cache, creating the topic if it doesn't exist
+     *
+     * @throws KafkaException when the topic can't be read in time
+     */
+    public void load() throws KafkaException {
+        createTopicIfNotExists();
+        readTopic();
+        LOGGER.info(">>> Word dictionary loaded - Topic={} - Words={}", topic, size());
+    }
+
+    /**
+     * Adds the words which are not in the dictionary yet and publishes them to the compacted topic.
+     * A word claimed at the same time by another instance keeps the ID of the first claim.
+     *
+     * @param newWords the words to add
+     * @throws KafkaException when the words can't be published
+     */
+    public synchronized void seed(Collection<String> newWords) throws KafkaException {
+        Set<String> claimed = new LinkedHashSet<>();
+        for (String word : newWords) {
+            if (!ids.containsKey(word)) {
+                claimed.add(word);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> props = new HashMap<>(clientConfigs);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(props, new StringSerializer(), new ByteArraySerializer())) {
+            List<Future<RecordMetadata>> claims = new ArrayList<>();
+            for (String word : claimed) {
+                claims.add(producer.send(new ProducerRecord<>(topic, word, new byte[0])));
+            }
+            for (Future<RecordMetadata> claim : claims) {
+                claim.get();
+            }
+
+            // The claims are acknowledged, so the topic is read at least up to them
+            readTopic();
+
+            List<Future<RecordMetadata>> confirmations = new ArrayList<>();
+            for (String word : claimed) {
+                int id = idOf(word);
+                if (id < 0) {
+                    throw new KafkaException("WordDictionary: The word " + word + " claimed is not in the topic " + topic);
+                }
+                ByteBuffer value = ByteBuffer.allocate(ByteUtils.sizeOfUnsignedVarint(id));
+                ByteUtils.writeUnsignedVarint(id, value);
+                confirmations.add(producer.send(new ProducerRecord<>(topic, word, value.array())));
+            }
+            for (Future<RecordMetadata> confirmation : confirmations) {
+                confirmation.get();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("WordDictionary: Interrupted seeding the topic " + topic, exc);
+        } catch (ExecutionException exc) {
+            throw new KafkaException("WordDictionary: An error occurred seeding the topic " + topic, exc);
+        }
+        LOGGER.info(">>> Word dictionary seeded - Topic={} - Words={}", topic, size());
+    }
+
+    /**
+     * Adds a word to the local cache, unless it is already there: the first ID of a word wins
+     *
+     * @param word the word
+     * @param id   the ID of the word
+     */
+    void register(String word, int id) {
+        if (null == ids.putIfAbsent(word, id)) {
+            words.put(id, word);
+        }
+    }
+
+    /**
+     * Reads the compacted topic up to its current end into the local cache.
+     * The ID of a claim (empty value) is its offset; the ID of any other record is its value.
+     *
+     * @throws KafkaException when the topic can't be read in time
+     */
+    private void readTopic() throws KafkaException {
+        Map<String, Object> props = new HashMap<>(clientConfigs);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new ByteArrayDeserializer())) {
+            List<TopicPartition> partitions = consumer.partitionsFor(topic, loadTimeout).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .collect(Collectors.toList());
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions, loadTimeout);
+
+            long deadline = System.currentTimeMillis() + loadTimeout.toMillis();
+            while (partitions.stream().anyMatch(partition -> consumer.position(partition, loadTimeout) < endOffsets.get(partition))) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new KafkaException("WordDictionary: Timed out reading the topic " + topic + " after " + loadTimeout.toMillis() + " ms");
+                }
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(Math.min(500, remaining)))) {
+                    if (null == record.value()) {
+                        continue;
+                    }
+                    if (record.value().length > 0) {
+                        register(record.key(), ByteUtils.readUnsignedVarint(ByteBuffer.wrap(record.value())));
+                    } else if (record.offset() <= Integer.MAX_VALUE) {
+                        register(record.key(), (int) record.offset());
+                    } else {
+                        throw new KafkaException("WordDictionary: The offset " + record.offset() + " of the topic " + topic + " is too big for an ID");
+                    }
+                }
+            }
+        } catch (TimeoutException exc) {
+            throw new KafkaException("WordDictionary: Timed out reading the topic " + topic + " after " + loadTimeout.toMillis() + " ms", exc);
+        }
+    }
+
+    /**
+     * Creates the compacted topic with a single partition if it doesn't exist
+     *
+     * @throws KafkaException when the topic can't be created
+     */
+    private void createTopicIfNotExists() throws KafkaException {
+        try (AdminClient adminClient = AdminClient.create(clientConfigs)) {
+            if (!adminClient.listTopics().names().get().contains(topic)) {
+                NewTopic newTopic = new NewTopic(topic, 1, replicationFactor)
+                        .configs(Collections.singletonMap(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
+                adminClient.createTopics(Collections.singleton(newTopic)).all().get();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("WordDictionary: Interrupted creating the topic " + topic, exc);
+        } catch (ExecutionException exc) {
+            if (!(exc.getCause() instanceof TopicExistsException)) {
+                throw new KafkaException("WordDictionary: An error occurred creating the topic " + topic, exc);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Checks that every instance gets its own transaction id prefix, stable across restarts
+ */
+class KafkaConfigTests {
+
+    @Test
+    void theTransactionIdPrefixIncludesTheIdentityOfTheInstance() {
+        assertEquals("sim-poc-tx-pod-0-", newConfig("pod-0").transactionIdPrefix());
+        assertEquals(newConfig("pod-0").transactionIdPrefix(), newConfig("pod-0").transactionIdPrefix());
+        assertNotEquals(newConfig("pod-0").transactionIdPrefix(), newConfig("pod-1").transactionIdPrefix());
+    }
+
+    @Test
+    void theTransactionIdPrefixUsesTheStaticMembershipInstanceId() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spring.kafka.producer.transactional.transaction-id-prefix", "sim-poc-tx-")
+                .withProperty("spring.kafka.static-membership.enabled", "true")
+                .withProperty("spring.kafka.static-membership.instance-id", "member-a")
+                .withProperty("HOSTNAME", "pod-0");
+        assertEquals("sim-poc-tx-member-a-", new KafkaConfig(environment).transactionIdPrefix());
+    }
+
+    private static KafkaConfig newConfig(String hostName) {
+        return new KafkaConfig(new MockEnvironment()
+                .withProperty("spring.kafka.producer.transactional.transaction-id-prefix", "sim-poc-tx-")
+                .withProperty("HOSTNAME", hostName));
+    }
+}
@@ -0,0 +1,129 @@
+package com.privalia.poc.kafka.security.config;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import com.privalia.poc.kafka.security.producer.KafkaMessage;
+import com.privalia.poc.kafka.security.producer.KafkaProducer;
+import com.privalia.poc.kafka.security.producer.KafkaProducerBatchResult;
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Publishes with every producer profile of application.yml to an embedded broker
+ * and compares the records/sec and the bytes sent
+ */
+class KafkaProducerProfilesTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaProducerProfilesTests.class);
+
+    private static final String TOPIC = "sim-poc-profiles";
+
+    private static final String[] PROFILES = { "low-latency", "high-throughput", "bulk-load" };
+
+    private static final int MESSAGES = 20000;
+
+    private static EmbeddedKafkaBroker broker;
+
+    private static StandardEnvironment environment;
+
+    private static KafkaConfig kafkaConfig;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        broker = new EmbeddedKafkaBroker(1, true, 1, TOPIC);
+        broker.afterPropertiesSet();
+
+        environment = new StandardEnvironment();
+        for (PropertySource<?> source : new YamlPropertySourceLoader().load("application", new ClassPathResource("application.yml"))) {
+            environment.getPropertySources().addLast(source);
+        }
+        kafkaConfig = new KafkaConfig(environment);
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void unknownProfileIsRejected() {
+        assertTrue(kafkaConfig.producerProfileConfigs("").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> kafkaConfig.producerProfileConfigs("unknown"));
+    }
+
+    @Test
+    void compressedProfilesSendLessBytes() {
+        RandomTextGenerator generator = new RandomTextGenerator();
+        String[] texts = IntStream.range(0, MESSAGES).mapToObj(num -> generator.getRandomText()).toArray(String[]::new);
+
+        Map<String, Double> bytesSent = new LinkedHashMap<>();
+        for (String profile : PROFILES) {
+            Map<String, Object> props = new HashMap<>();
+            props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+            props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+            props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+            props.putAll(kafkaConfig.producerProfileConfigs(profile));
+
+            DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(props);
+            try {
+                KafkaTemplate<String, String> template = new KafkaTemplate<>(factory);
+                KafkaProducer producer = new KafkaProducer(template, TOPIC, 10000, new SimpleMeterRegistry(), new SampledLoggerFactory(environment));
+
+                // Warm up the producer connection and metadata
+                producer.publish("warm-up");
+                double warmUpBytes = producerMetric(template, "outgoing-byte-total");
+
+                long start = System.nanoTime();
+                KafkaProducerBatchResult result = producer.publishAll(IntStream.range(0, MESSAGES).mapToObj(num -> new KafkaMessage(texts[num])));
+                double rate = MESSAGES / ((System.nanoTime() - start) / 1e9);
+                double bytes = producerMetric(template, "outgoing-byte-total") - warmUpBytes;
+                bytesSent.put(profile, bytes);
+
+                LOGGER.info(">>> Producer profile {}: {} records/sec - {} bytes sent - {} bytes/record - compression rate {}",
+                        profile, String.format("%.0f", rate), String.format("%.0f", bytes),
+                        String.format("%.2f", bytes / MESSAGES), String.format("%.2f", producerMetric(template, "compression-rate-avg")));
+
+                assertFalse(result.hasFailures());
+            } finally {
+                factory.destroy();
+            }
+        }
+
+        assertTrue(bytesSent.get("high-throughput") < bytesSent.get("low-latency"));
+        assertTrue(bytesSent.get("bulk-load") < bytesSent.get("low-latency"));
+    }
+
+    private static double producerMetric(KafkaTemplate<String, String> template, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : template.metrics().entrySet()) {
+            if ("producer-metrics".equals(entry.getKey().group()) && name.equals(entry.getKey().name())) {
+                return ((Number) entry.getValue().metricValue()).doubleValue();
+            }
+        }
+        return 0.0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.KafkaException;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a keystore replaced in place is installed in the shared key manager, with keystores
+ * generated by the keytool of the JDK, and that the reload is rejected for the stores inside a jar
+ */
+class KafkaSslReloaderTests {
+
+    private static final String PASSWORD = "changeit";
+
+    private static final String ALIAS = "client";
+
+    @TempDir
+    Path directory;
+
+    private KafkaSslReloader reloader;
+
+    @AfterEach
+    void stopReloader() {
+        if (null != reloader) {
+            reloader.stop();
+        }
+    }
+
+    @Test
+    void installsTheKeystoreRewrittenInPlace() throws Exception {
+        File keystore = directory.resolve("keystore.jks").toFile();
+        File truststore = directory.resolve("truststore.jks").toFile();
+        generateKeystore(keystore, "CN=first", 10);
+        generateKeystore(truststore, "CN=broker", 10);
+
+        reloader = new KafkaSslReloader(new KafkaSslStores(environment(keystore, truststore)), environment(keystore, truststore));
+        assertEquals(1, reloader.getReloads());
+        Instant firstExpiry = reloader.getCertificateExpiry();
+        Instant firstReload = reloader.getLastReloadTime();
+        assertTrue(firstExpiry.isAfter(Instant.now().plus(9, ChronoUnit.DAYS)));
+        assertTrue(firstExpiry.isBefore(Instant.now().plus(11, ChronoUnit.DAYS)));
+        assertTrue(subjectOfTheKeyManager().contains("CN=first"));
+
+        // Replaced with a new certificate, valid for longer
+        File newKeystore = directory.resolve("keystore-new.jks").toFile();
+        generateKeystore(newKeystore, "CN=second", 20);
+        replace(keystore, newKeystore);
+        awaitReloads(2);
+
+        assertTrue(subjectOfTheKeyManager().contains("CN=second"));
+        assertTrue(reloader.getCertificateExpiry().isAfter(firstExpiry));
+        assertFalse(reloader.getLastReloadTime().isBefore(firstReload));
+        assertEquals(0, reloader.getFailures());
+
+        // A broken file is not installed, and the reload is retried on the next check
+        Instant secondExpiry = reloader.getCertificateExpiry();
+        File brokenKeystore = directory.resolve("keystore-broken.jks").toFile();
+        Files.write(brokenKeystore.toPath(), new byte[] { 1, 2, 3 });
+        replace(keystore, brokenKeystore);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (0 == reloader.getFailures() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertTrue(reloader.getFailures() > 0);
+        assertEquals(2, reloader.getReloads());
+        assertEquals(secondExpiry, reloader.getCertificateExpiry());
+        assertTrue(subjectOfTheKeyManager().contains("CN=second"));
+    }
+
+    @Test
+    void rejectsTheReloadOfAStoreInsideAJar() throws Exception {
+        File keystore = directory.resolve("keystore.jks").toFile();
+        generateKeystore(keystore, "CN=first", 10);
+        File jar = directory.resolve("stores.jar").toFile();
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            output.putNextEntry(new JarEntry("keystore.jks"));
+            Files.copy(keystore.toPath(), output);
+            output.closeEntry();
+        }
+
+        String location = "jar:" + jar.toURI() + "!/keystore.jks";
+        MockEnvironment environment = environment(keystore, keystore)
+                .withProperty("spring.kafka.ssl.keystore.location", location);
+        KafkaSslStores stores = new KafkaSslStores(environment);
+        assertTrue(stores.isKeystoreExtracted());
+        assertNotEquals(keystore.getAbsolutePath(), stores.getKeystorePath());
+
+        KafkaException thrown = assertThrows(KafkaException.class, () -> new KafkaSslReloader(stores, environment));
+        assertTrue(thrown.getMessage().startsWith("KafkaSslReloader:"));
+    }
+
+    private void awaitReloads(long reloads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reloader.getReloads() < reloads && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(reloads, reloader.getReloads());
+    }
+
+    private static void replace(File file, File newFile) throws IOException {
+        // A modification time the file system can't confuse with the previous one
+        assertTrue(newFile.setLastModified(file.lastModified() + 2000));
+        Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String subjectOfTheKeyManager() {
+        X509Certificate[] chain = ReloadingSslProvider.KEY_MANAGER.getCertificateChain(ALIAS);
+        return chain[0].getSubjectX500Principal().getName();
+    }
+
+    private static MockEnvironment environment(File keystore, File truststore) {
+        return new MockEnvironment()
+                .withProperty("spring.kafka.ssl.keystore.location", "file:" + keystore.getAbsolutePath())
+                .withProperty("spring.kafka.ssl.keystore.password", PASSWORD)
+                .withProperty("spring.kafka.ssl.keystore.type", "JKS")
+                .withProperty("spring.kafka.ssl.key.password", PASSWORD)
+                .withProperty("spring.kafka.ssl.truststore.location", "file:" + truststore.getAbsolutePath())
+                .withProperty("spring.kafka.ssl.truststore.password", PASSWORD)
+                .withProperty("spring.kafka.ssl.truststore.type", "JKS")
+                .withProperty("spring.kafka.ssl.reload.interval-ms", "50");
+    }
+
+    private static void generateKeystore(File file, String subject, int days) throws IOException, InterruptedException {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-noprompt",
+                "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-dname", subject, "-validity", String.valueOf(days),
+                "-keystore", file.getAbsolutePath(), "-storetype", "JKS", "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, process.exitValue());
+    }
+}
@@ -0,0 +1,233 @@
+package com.privalia.poc.kafka.security.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.StickyAssignor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rolling restart of two static members of a group, against an embedded broker, measuring the pause of every partition:
+ * the time between two consecutive records received while the instances are restarted one by one
+ */
+class StaticMembershipRollingRestartTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticMembershipRollingRestartTests.class);
+
+    private static final String TOPIC = "sim-poc-rolling-restart";
+
+    private static final String GROUP = "sim-poc-rolling-restart";
+
+    private static final int PARTITIONS = 4;
+
+    private static final int SESSION_TIMEOUT_MS = 30000;
+
+    private static EmbeddedKafkaBroker broker;
+
+    private static KafkaTemplate<String, String> template;
+
+    /** The time of the last record received of every partition */
+    private final Map<Integer, Long> lastReceived = new ConcurrentHashMap<>();
+
+    /** The longest time between two records received of every partition, measured while restarting */
+    private final Map<Integer, Long> maxPause = new ConcurrentHashMap<>();
+
+    private volatile boolean measuring = false;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, true, PARTITIONS, TOPIC);
+        broker.afterPropertiesSet();
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void restartsTheStaticMembersWithoutRebalancingTheGroup() throws Exception {
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            int sequence = 0;
+            while (producing.get()) {
+                for (int partition = 0; partition < PARTITIONS; partition++) {
+                    template.send(TOPIC, partition, null, "message-" + sequence);
+                }
+                sequence++;
+                sleep(5);
+            }
+        });
+        producer.start();
+
+        Instance instanceA = new Instance("instance-a");
+        Instance instanceB = new Instance("instance-b");
+        try {
+            instanceA.start();
+            instanceB.start();
+            assertTrue(waitFor(() -> instanceA.assigned.size() == PARTITIONS / 2 && instanceB.assigned.size() == PARTITIONS / 2, 60000));
+            sleep(1000);
+
+            measuring = true;
+            Set<TopicPartition> partitionsOfB = instanceB.assigned;
+            int revokedOfB = instanceB.revocations.get();
+
+            instanceA.stop();
+            Instance restartedA = new Instance("instance-a");
+            restartedA.start();
+            assertTrue(waitFor(() -> restartedA.received.get() > 0, SESSION_TIMEOUT_MS));
+
+            // The other member kept its partitions: the group was not rebalanced
+            assertEquals(revokedOfB, instanceB.revocations.get());
+            assertEquals(partitionsOfB, instanceB.assigned);
+
+            instanceB.stop();
+            Instance restartedB = new Instance("instance-b");
+            restartedB.start();
+            assertTrue(waitFor(() -> restartedB.received.get() > 0, SESSION_TIMEOUT_MS));
+            assertEquals(0, restartedA.revocations.get());
+            sleep(1000);
+            measuring = false;
+
+            restartedA.stop();
+            restartedB.stop();
+        } finally {
+            producing.set(false);
+            producer.join();
+        }
+
+        LOGGER.info(">>> Pause of every partition during the rolling restart (ms): {}", maxPause);
+        for (long pause : maxPause.values()) {
+            assertTrue(pause < SESSION_TIMEOUT_MS / 3, "The pause of a partition was " + pause + " ms");
+        }
+    }
+
+    /**
+     * Registers a record received, updating the pause of its partition
+     *
+     * @param record the record
+     */
+    private void registerReceived(ConsumerRecord<String, String> record) {
+        long now = System.currentTimeMillis();
+        Long last = lastReceived.put(record.partition(), now);
+        if (measuring && null != last) {
+            maxPause.merge(record.partition(), now - last, Math::max);
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            sleep(50);
+        }
+        return true;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An instance of the application: a static member of the group polling in its own thread
+     */
+    private class Instance implements ConsumerRebalanceListener {
+
+        private final StaticMembershipConsumerFactory<String, String> factory;
+
+        private final AtomicBoolean running = new AtomicBoolean(true);
+
+        private final AtomicInteger received = new AtomicInteger();
+
+        private final AtomicInteger revocations = new AtomicInteger();
+
+        private volatile Set<TopicPartition> assigned = Collections.emptySet();
+
+        private Thread thread;
+
+        Instance(String instanceId) {
+            Map<String, Object> props = new HashMap<>();
+            props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+            props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+            props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, 100);
+            props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, SESSION_TIMEOUT_MS);
+            props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 1000);
+            props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, StickyAssignor.class.getName());
+            props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+            props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+            this.factory = new StaticMembershipConsumerFactory<>(props, instanceId);
+        }
+
+        void start() {
+            thread = new Thread(() -> {
+                try (Consumer<String, String> consumer = factory.createConsumer(GROUP, null, "-0")) {
+                    consumer.subscribe(Collections.singletonList(TOPIC), this);
+                    while (running.get()) {
+                        for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                            registerReceived(record);
+                            received.incrementAndGet();
+                        }
+                    }
+                }
+            }, factory.getInstanceId());
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (!partitions.isEmpty()) {
+                revocations.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            assigned = Collections.unmodifiableSet(new HashSet<>(partitions));
+        }
+    }
+}
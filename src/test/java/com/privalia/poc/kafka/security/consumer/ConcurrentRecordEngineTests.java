@@ -0,0 +1,162 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the concurrent engine acknowledges in order, pauses the partitions which can't take more records
+ * instead of blocking, consumes a failed partition again from the failed record and drops the revoked records
+ */
+class ConcurrentRecordEngineTests {
+
+    private static final TopicPartition PARTITION = new TopicPartition("sim-poc-test1", 0);
+
+    private final List<Long> acknowledged = Collections.synchronizedList(new ArrayList<>());
+
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    private final ConcurrentRecordEngine engine = new ConcurrentRecordEngine(true, 10, false, 4, 100);
+
+    @BeforeEach
+    void assignPartition() {
+        consumer.assign(Collections.singleton(PARTITION));
+    }
+
+    @AfterEach
+    void destroyEngine() throws InterruptedException {
+        engine.destroy();
+    }
+
+    @Test
+    void acknowledgesInOrderTheRecordsProcessedOutOfOrder() throws InterruptedException {
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch others = new CountDownLatch(2);
+        for (long offset = 0; offset < 3; offset++) {
+            engine.submit(record(offset), ack(offset), consumer, record -> {
+                if (0 == record.offset()) {
+                    await(first);
+                } else {
+                    others.countDown();
+                }
+            });
+        }
+
+        // The records after the first one are completed, but not acknowledged
+        assertTrue(others.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(Collections.emptyList(), acknowledged);
+
+        first.countDown();
+        engine.destroy();
+        assertEquals(Collections.singletonList(2L), acknowledged);
+    }
+
+    @Test
+    void consumesTheFailedPartitionAgainFromTheFailedRecord() throws InterruptedException {
+        CountDownLatch processed = new CountDownLatch(3);
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+        for (long offset = 0; offset < 3; offset++) {
+            engine.submit(record(offset), ack(offset), consumer, record -> {
+                handled.incrementAndGet();
+                processed.countDown();
+                if (1 == record.offset() && 0 == failures.getAndIncrement()) {
+                    throw new IllegalStateException("Poison pill");
+                }
+            });
+        }
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList(0L), acknowledged);
+
+        // The next record pauses the partition and seeks back to the failed record; the rest of the poll is dropped
+        engine.submit(record(3), ack(3), consumer, record -> handled.incrementAndGet());
+        engine.submit(record(4), ack(4), consumer, record -> handled.incrementAndGet());
+        assertTrue(consumer.paused().contains(PARTITION));
+        assertEquals(1, consumer.position(PARTITION));
+        assertEquals(3, handled.get());
+
+        // Resumed after the backoff, and consumed again from the failed record
+        Thread.sleep(200);
+        engine.resumePartitions(consumer);
+        assertFalse(consumer.paused().contains(PARTITION));
+        for (long offset = 1; offset < 5; offset++) {
+            engine.submit(record(offset), ack(offset), consumer, record -> handled.incrementAndGet());
+        }
+        engine.destroy();
+        assertEquals(7, handled.get());
+        assertEquals(4L, (long) acknowledged.get(acknowledged.size() - 1));
+    }
+
+    @Test
+    void pausesThePartitionWithTheMaximumRecordsInFlight() throws InterruptedException {
+        ConcurrentRecordEngine small = new ConcurrentRecordEngine(true, 2, false, 4, 100);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            small.submit(record(0), ack(0), consumer, record -> await(release));
+            small.submit(record(1), ack(1), consumer, record -> await(release));
+
+            // The poll thread doesn't wait: the partition is paused at the record not taken
+            small.submit(record(2), ack(2), consumer, record -> { });
+            assertTrue(consumer.paused().contains(PARTITION));
+            assertEquals(2, consumer.position(PARTITION));
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (consumer.paused().contains(PARTITION) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                small.resumePartitions(consumer);
+            }
+            assertFalse(consumer.paused().contains(PARTITION));
+
+            small.submit(record(2), ack(2), consumer, record -> { });
+        } finally {
+            small.destroy();
+        }
+        assertEquals(2L, (long) acknowledged.get(acknowledged.size() - 1));
+    }
+
+    @Test
+    void dropsTheRecordsInFlightOfTheRevokedPartitions() throws InterruptedException {
+        CountDownLatch revoked = new CountDownLatch(1);
+        engine.submit(record(0), ack(0), consumer, record -> await(revoked));
+
+        engine.onPartitionsRevoked(Collections.singleton(PARTITION));
+        revoked.countDown();
+        engine.destroy();
+        assertEquals(Collections.emptyList(), acknowledged);
+    }
+
+    private Acknowledgment ack(long offset) {
+        return () -> acknowledged.add(offset);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null, "value-" + offset);
+    }
+}
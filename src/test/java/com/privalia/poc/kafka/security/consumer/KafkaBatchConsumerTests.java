@@ -0,0 +1,73 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks that the batch consumer acknowledges a whole batch once, and nacks a failed record so it is redelivered
+ * with the rest of its batch, without publishing it to the retry topics
+ */
+class KafkaBatchConsumerTests {
+
+    private static final long NACK_SLEEP = 1000;
+
+    private final Acknowledgment ack = mock(Acknowledgment.class);
+
+    private KafkaBatchConsumer batchConsumer;
+
+    @BeforeEach
+    void createBatchConsumer() {
+        batchConsumer = spy(new KafkaBatchConsumer(NACK_SLEEP, true, new SimpleMeterRegistry(), new SampledLoggerFactory(new StandardEnvironment())));
+    }
+
+    @Test
+    void acknowledgesTheWholeBatchOnce() {
+        batchConsumer.listen(records(3), ack);
+
+        verify(batchConsumer, times(3)).process(any());
+        verify(ack, times(1)).acknowledge();
+        verify(ack, never()).nack(anyInt(), anyLong());
+    }
+
+    @Test
+    void nacksTheFailedRecordAndTheRestOfTheBatch() {
+        List<ConsumerRecord<String, String>> records = records(4);
+        doThrow(new IllegalStateException("Poison pill")).when(batchConsumer).process(records.get(2));
+
+        batchConsumer.listen(records, ack);
+
+        // The records before the failed one are committed, the failed one and the next are redelivered after the sleep
+        verify(batchConsumer).process(records.get(0));
+        verify(batchConsumer).process(records.get(1));
+        verify(batchConsumer).process(records.get(2));
+        verify(batchConsumer, never()).process(records.get(3));
+        verify(ack).nack(2, NACK_SLEEP);
+        verify(ack, never()).acknowledge();
+    }
+
+    private static List<ConsumerRecord<String, String>> records(int count) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int offset = 0; offset < count; offset++) {
+            records.add(new ConsumerRecord<>("sim-poc-test1", 0, offset, null, "value-" + offset));
+        }
+        return records;
+    }
+}
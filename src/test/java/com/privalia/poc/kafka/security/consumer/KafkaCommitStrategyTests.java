@@ -0,0 +1,150 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.consumer.RetriableCommitFailedException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the batching of the commits, the failed commits, the replay window and the revoked partitions
+ */
+class KafkaCommitStrategyTests {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FailingMockConsumer consumer;
+
+    @BeforeEach
+    void assignPartition() {
+        consumer = new FailingMockConsumer();
+        consumer.assign(Collections.singleton(PARTITION));
+    }
+
+    @Test
+    void commitsAsynchronouslyEveryNRecords() {
+        KafkaCommitStrategy strategy = newStrategy(3, 60000, 10);
+        strategy.onPartitionsAssigned(consumer, Collections.singleton(PARTITION));
+
+        acknowledge(strategy, 0, 1);
+        strategy.maybeCommit(consumer);
+        assertNull(consumer.committed(PARTITION));
+
+        acknowledge(strategy, 2);
+        strategy.maybeCommit(consumer);
+        assertEquals(3, consumer.committed(PARTITION).offset());
+        assertEquals(0, strategy.getUncommittedRecords());
+        assertEquals(1, meterRegistry.timer("kafka.app.commit", "mode", "async").count());
+        assertEquals(0, meterRegistry.timer("kafka.app.commit", "mode", "sync").count());
+    }
+
+    @Test
+    void commitsSynchronouslyWhenTheReplayWindowIsFull() {
+        KafkaCommitStrategy strategy = newStrategy(2, 60000, 2);
+        strategy.onPartitionsAssigned(consumer, Collections.singleton(PARTITION));
+
+        acknowledge(strategy, 0, 1);
+        strategy.maybeCommit(consumer);
+        assertEquals(2, consumer.committed(PARTITION).offset());
+        assertEquals(1, meterRegistry.timer("kafka.app.commit", "mode", "sync").count());
+    }
+
+    @Test
+    void keepsTheOffsetsOfAFailedCommitPending() {
+        KafkaCommitStrategy strategy = newStrategy(2, 60000, 10);
+        strategy.onPartitionsAssigned(consumer, Collections.singleton(PARTITION));
+
+        consumer.failAsyncCommits = true;
+        acknowledge(strategy, 0, 1);
+        strategy.maybeCommit(consumer);
+        assertNull(consumer.committed(PARTITION));
+        assertEquals(2, strategy.getUncommittedRecords());
+        assertEquals(1, meterRegistry.counter("kafka.app.commit.failures").count());
+
+        // No new acknowledgments: the same offsets are committed again
+        consumer.failAsyncCommits = false;
+        strategy.maybeCommit(consumer);
+        assertEquals(2, consumer.committed(PARTITION).offset());
+        assertEquals(0, strategy.getUncommittedRecords());
+    }
+
+    @Test
+    void ignoresTheLateAcknowledgmentsOfRevokedPartitions() {
+        KafkaCommitStrategy strategy = newStrategy(100, 60000, 1000);
+        strategy.onPartitionsAssigned(consumer, Collections.singleton(PARTITION));
+
+        acknowledge(strategy, 0);
+        Acknowledgment late = strategy.acknowledgment(record(1));
+        strategy.onPartitionsRevokedBeforeCommit(consumer, Collections.singleton(PARTITION));
+        assertEquals(1, consumer.committed(PARTITION).offset());
+
+        late.acknowledge();
+        assertEquals(0, strategy.getUncommittedRecords());
+
+        // The partition is assigned again: the acknowledgment of the previous assignment is still ignored
+        strategy.onPartitionsAssigned(consumer, Collections.singleton(PARTITION));
+        late.acknowledge();
+        assertEquals(0, strategy.getUncommittedRecords());
+
+        // Nothing to wait for on close
+        long start = System.nanoTime();
+        strategy.onApplicationEvent(new ContextClosedEvent(new GenericApplicationContext()));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    private KafkaCommitStrategy newStrategy(int records, long intervalMs, int maxReplayRecords) {
+        return new KafkaCommitStrategy(true, records, intervalMs, maxReplayRecords, 5000, meterRegistry);
+    }
+
+    private static void acknowledge(KafkaCommitStrategy strategy, long... offsets) {
+        for (long offset : offsets) {
+            strategy.acknowledgment(record(offset)).acknowledge();
+        }
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(TOPIC, PARTITION.partition(), offset, null, "value-" + offset);
+    }
+
+    /**
+     * Mock consumer whose asynchronous commits can fail
+     */
+    private static class FailingMockConsumer extends MockConsumer<String, String> {
+
+        private boolean failAsyncCommits = false;
+
+        FailingMockConsumer() {
+            super(OffsetResetStrategy.EARLIEST);
+        }
+
+        @Override
+        public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+            if (failAsyncCommits) {
+                callback.onComplete(offsets, new RetriableCommitFailedException("Commit failed"));
+            } else {
+                super.commitAsync(offsets, callback);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the retry consumer pauses the partitions until their records are due, instead of sleeping
+ */
+class KafkaRetryConsumerTests {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private static final TopicPartition RETRY_PARTITION = new TopicPartition(TOPIC + "-retry-1000", 0);
+
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    private KafkaTemplate<String, String> template;
+
+    private KafkaConsumer kafkaConsumer;
+
+    private KafkaRetryConsumer retryConsumer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void createRetryConsumer() {
+        template = mock(KafkaTemplate.class);
+        SettableListenableFuture<SendResult<String, String>> acknowledged = new SettableListenableFuture<>();
+        acknowledged.set(null);
+        when(template.send(any(ProducerRecord.class))).thenReturn(acknowledged);
+        kafkaConsumer = mock(KafkaConsumer.class);
+        retryConsumer = new KafkaRetryConsumer(kafkaConsumer, new RetryTopicPublisher(true, template, TOPIC, new long[] { 1000, 10000 }));
+        consumer.assign(Collections.singleton(RETRY_PARTITION));
+    }
+
+    @Test
+    void pausesAndSeeksBackUntilTheRecordIsDue() throws Exception {
+        long now = System.currentTimeMillis();
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        // Due in 200 ms: the partition is paused at the record
+        retryConsumer.listen(record(5, now - 800), ack, consumer);
+        assertTrue(consumer.paused().contains(RETRY_PARTITION));
+        assertEquals(5, consumer.position(RETRY_PARTITION));
+
+        // The next record of the same poll is fetched again after the resume
+        retryConsumer.listen(record(6, now - 800), ack, consumer);
+        retryConsumer.resumeDuePartitions(consumer);
+        assertTrue(consumer.paused().contains(RETRY_PARTITION));
+        verify(kafkaConsumer, never()).process(any());
+        verify(ack, never()).acknowledge();
+
+        Thread.sleep(300);
+        retryConsumer.resumeDuePartitions(consumer);
+        assertFalse(consumer.paused().contains(RETRY_PARTITION));
+
+        ConsumerRecord<String, String> due = record(5, now - 800);
+        retryConsumer.listen(due, ack, consumer);
+        verify(kafkaConsumer).process(due);
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void sendsTheRecordsWhichFailAgainToTheNextRetryTopic() {
+        ConsumerRecord<String, String> due = record(5, System.currentTimeMillis() - 5000);
+        doThrow(new IllegalStateException("Poison pill")).when(kafkaConsumer).process(due);
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        retryConsumer.listen(due, ack, consumer);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, String>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(template).send(sent.capture());
+        assertEquals(TOPIC + "-retry-10000", sent.getValue().topic());
+        verify(ack).acknowledge();
+        assertFalse(consumer.paused().contains(RETRY_PARTITION));
+    }
+
+    @Test
+    void dropsThePauseLostInARebalance() throws Exception {
+        long now = System.currentTimeMillis();
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        retryConsumer.listen(record(5, now - 900), ack, consumer);
+        assertTrue(consumer.paused().contains(RETRY_PARTITION));
+
+        // The partition is assigned again in a rebalance: it is not paused any more
+        consumer.resume(Collections.singleton(RETRY_PARTITION));
+        Thread.sleep(200);
+
+        ConsumerRecord<String, String> due = record(5, now - 900);
+        retryConsumer.listen(due, ack, consumer);
+        verify(kafkaConsumer).process(due);
+        verify(ack).acknowledge();
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, long timestamp) {
+        return new ConsumerRecord<>(RETRY_PARTITION.topic(), RETRY_PARTITION.partition(), offset, timestamp,
+                TimestampType.CREATE_TIME, ConsumerRecord.NULL_CHECKSUM, 3, 5, "key", "value");
+    }
+}
@@ -0,0 +1,61 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks that the transform consumer writes the words of every record to the output topic,
+ * and that it is only created when the transactions are configured
+ */
+class KafkaTransformConsumerTests {
+
+    private static final String OUTPUT_TOPIC = "sim-poc-test1-transformed";
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withBean("sim-kafka-transform-template", KafkaTemplate.class, () -> mock(KafkaTemplate.class))
+            .withBean(WordTokenizer.class, () -> new WordTokenizer(false))
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withPropertyValues("spring.kafka.topics.sim-transformed=" + OUTPUT_TOPIC)
+            .withUserConfiguration(KafkaTransformConsumer.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesTheWordsOfEveryRecordToTheOutputTopic() {
+        KafkaTemplate<String, String> template = mock(KafkaTemplate.class);
+        KafkaTransformConsumer consumer = new KafkaTransformConsumer(template, OUTPUT_TOPIC, new WordTokenizer(false), new SimpleMeterRegistry());
+
+        consumer.listen(Arrays.asList(
+                new ConsumerRecord<>("sim-poc-test1", 0, 0, "key-0", "Hello, world!"),
+                new ConsumerRecord<>("sim-poc-test1", 0, 1, null, "  one -- two  ")
+        ));
+
+        verify(template).send(OUTPUT_TOPIC, "key-0", "Hello world");
+        verify(template).send(OUTPUT_TOPIC, null, "one two");
+    }
+
+    @Test
+    void needsTheTransformEnabledAndTheTransactionIdPrefix() {
+        contextRunner
+                .withPropertyValues("spring.kafka.consumer.transform.enabled=true")
+                .run(context -> assertEquals(0, context.getBeansOfType(KafkaTransformConsumer.class).size()));
+        contextRunner
+                .withPropertyValues("spring.kafka.producer.transactional.transaction-id-prefix=sim-poc-tx-")
+                .run(context -> assertEquals(0, context.getBeansOfType(KafkaTransformConsumer.class).size()));
+        contextRunner
+                .withPropertyValues(
+                        "spring.kafka.consumer.transform.enabled=true",
+                        "spring.kafka.producer.transactional.transaction-id-prefix=sim-poc-tx-")
+                .run(context -> assertEquals(1, context.getBeansOfType(KafkaTransformConsumer.class).size()));
+    }
+}
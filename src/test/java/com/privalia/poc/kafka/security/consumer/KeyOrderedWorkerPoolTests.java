@@ -0,0 +1,118 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the worker pool pauses the partitions whose worker is full instead of blocking the poll thread,
+ * and consumes a failed partition again from the failed record
+ */
+class KeyOrderedWorkerPoolTests {
+
+    private static final TopicPartition PARTITION = new TopicPartition("sim-poc-test1", 0);
+
+    private final List<Long> acknowledged = Collections.synchronizedList(new ArrayList<>());
+
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    private final KeyOrderedWorkerPool pool = new KeyOrderedWorkerPool(true, 1, 1, 100);
+
+    @BeforeEach
+    void assignPartition() {
+        consumer.assign(Collections.singleton(PARTITION));
+    }
+
+    @AfterEach
+    void destroyPool() throws InterruptedException {
+        pool.destroy();
+    }
+
+    @Test
+    void pausesThePartitionWhenTheQueueOfTheWorkerIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.submit(record(0), ack(0), consumer, record -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.submit(record(1), ack(1), consumer, record -> { });
+
+        // The poll thread doesn't wait: the partition is paused at the record not taken
+        pool.submit(record(2), ack(2), consumer, record -> { });
+        assertTrue(consumer.paused().contains(PARTITION));
+        assertEquals(2, consumer.position(PARTITION));
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (consumer.paused().contains(PARTITION) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            pool.resumePartitions(consumer);
+        }
+        assertFalse(consumer.paused().contains(PARTITION));
+
+        pool.submit(record(2), ack(2), consumer, record -> { });
+        pool.destroy();
+        assertEquals(2L, (long) acknowledged.get(acknowledged.size() - 1));
+    }
+
+    @Test
+    void consumesTheFailedPartitionAgainFromTheFailedRecord() throws InterruptedException {
+        AtomicInteger handled = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(1);
+        pool.submit(record(0), ack(0), consumer, record -> {
+            handled.incrementAndGet();
+            failed.countDown();
+            throw new IllegalStateException("Poison pill");
+        });
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        // The next record pauses the partition and seeks back to the failed record
+        pool.submit(record(1), ack(1), consumer, record -> handled.incrementAndGet());
+        assertTrue(consumer.paused().contains(PARTITION));
+        assertEquals(0, consumer.position(PARTITION));
+
+        Thread.sleep(200);
+        pool.resumePartitions(consumer);
+        assertFalse(consumer.paused().contains(PARTITION));
+        pool.submit(record(0), ack(0), consumer, record -> handled.incrementAndGet());
+        pool.submit(record(1), ack(1), consumer, record -> handled.incrementAndGet());
+        pool.destroy();
+        assertEquals(3, handled.get());
+        assertEquals(1L, (long) acknowledged.get(acknowledged.size() - 1));
+    }
+
+    private Acknowledgment ack(long offset) {
+        return () -> acknowledged.add(offset);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null, "value-" + offset);
+    }
+}
@@ -0,0 +1,115 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the offsets are acknowledged in order, never beyond a failed record nor after the partition is revoked
+ */
+class PartitionOffsetTrackerTests {
+
+    private static final TopicPartition PARTITION = new TopicPartition("sim-poc-test1", 0);
+
+    private final List<Long> acknowledged = new ArrayList<>();
+
+    private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+
+    @Test
+    void acknowledgesTheHighestRecordWithAllThePreviousCompleted() {
+        PartitionOffsetTracker.PartitionRecords records = register(0, 1, 2);
+
+        records.complete(1);
+        assertEquals(Collections.emptyList(), acknowledged);
+
+        records.complete(0);
+        assertEquals(Collections.singletonList(1L), acknowledged);
+
+        records.complete(2);
+        assertEquals(Arrays.asList(1L, 2L), acknowledged);
+    }
+
+    @Test
+    void stopsThePartitionAtTheFailedRecord() {
+        PartitionOffsetTracker.PartitionRecords records = register(0, 1, 2, 3);
+
+        records.complete(0);
+        records.fail(1);
+        records.complete(2);
+        assertEquals(1, tracker.failedOffset(PARTITION));
+        assertTrue(tracker.hasRecordsInProcess(PARTITION));
+        records.complete(3);
+        assertFalse(tracker.hasRecordsInProcess(PARTITION));
+        assertEquals(Collections.singletonList(0L), acknowledged);
+
+        // The partition is reset and consumed again from the failed record
+        tracker.revoke(Collections.singleton(PARTITION));
+        assertEquals(-1, tracker.failedOffset(PARTITION));
+        PartitionOffsetTracker.PartitionRecords again = register(1, 2);
+        again.complete(1);
+        again.complete(2);
+        assertEquals(Arrays.asList(0L, 1L, 2L), acknowledged);
+    }
+
+    @Test
+    void forgetsTheCancelledRecord() {
+        PartitionOffsetTracker.PartitionRecords records = register(0, 1);
+
+        records.cancel(1);
+        records.complete(0);
+        assertEquals(Collections.singletonList(0L), acknowledged);
+        assertFalse(tracker.hasRecordsInProcess(PARTITION));
+    }
+
+    @Test
+    void keepsAcknowledgingTheRecordsBeforeTheFailure() {
+        PartitionOffsetTracker.PartitionRecords records = register(0, 1, 2);
+
+        records.fail(2);
+        records.complete(1);
+        records.complete(0);
+        assertEquals(Collections.singletonList(1L), acknowledged);
+    }
+
+    @Test
+    void ignoresTheRecordsOfTheRevokedPartitions() {
+        PartitionOffsetTracker.PartitionRecords revoked = register(0, 1);
+        tracker.revoke(Collections.singleton(PARTITION));
+        revoked.complete(0);
+        revoked.complete(1);
+        assertEquals(Collections.emptyList(), acknowledged);
+
+        // The partition is assigned again and its records consumed again
+        PartitionOffsetTracker.PartitionRecords reassigned = register(0);
+        revoked.complete(0);
+        assertEquals(Collections.emptyList(), acknowledged);
+        reassigned.complete(0);
+        assertEquals(Collections.singletonList(0L), acknowledged);
+    }
+
+    private PartitionOffsetTracker.PartitionRecords register(long... offsets) {
+        PartitionOffsetTracker.PartitionRecords records = null;
+        for (long offset : offsets) {
+            records = tracker.register(record(offset), ack(offset));
+        }
+        return records;
+    }
+
+    private Acknowledgment ack(long offset) {
+        return () -> acknowledged.add(offset);
+    }
+
+    private static ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null, "value-" + offset);
+    }
+}
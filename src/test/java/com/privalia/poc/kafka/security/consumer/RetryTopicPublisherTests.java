@@ -0,0 +1,116 @@
+package com.privalia.poc.kafka.security.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the routing of the failed records through the retry tiers to the dead letter topic, and their headers
+ */
+class RetryTopicPublisherTests {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private final List<ProducerRecord<String, String>> sent = new ArrayList<>();
+
+    private KafkaTemplate<String, String> template;
+
+    private RetryTopicPublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void createPublisher() {
+        template = mock(KafkaTemplate.class);
+        SettableListenableFuture<SendResult<String, String>> acknowledged = new SettableListenableFuture<>();
+        acknowledged.set(null);
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return acknowledged;
+        });
+        publisher = new RetryTopicPublisher(true, template, TOPIC, new long[] { 1000, 10000 });
+    }
+
+    @Test
+    void namesTheRetryAndDeadLetterTopics() {
+        assertEquals(Arrays.asList(TOPIC + "-retry-1000", TOPIC + "-retry-10000"), publisher.getRetryTopics());
+        assertEquals(TOPIC + "-dlt", publisher.getDeadLetterTopic());
+        assertEquals(10000, publisher.delayOf(TOPIC + "-retry-10000"));
+        assertEquals(-1, publisher.delayOf(TOPIC + "-retry-5000"));
+        assertEquals(-1, publisher.delayOf(TOPIC));
+    }
+
+    @Test
+    void rejectsTheDelaysNotAscending() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryTopicPublisher(true, template, TOPIC, new long[] { 1000, 1000 }));
+        assertThrows(IllegalArgumentException.class, () -> new RetryTopicPublisher(true, template, TOPIC, new long[] { 0 }));
+    }
+
+    @Test
+    void routesTheFailuresThroughTheRetryTiersToTheDeadLetterTopic() {
+        ProducerRecord<String, String> first = publish(record(TOPIC, 3, 42, new RecordHeaders()), new IllegalStateException("first"));
+        assertEquals(TOPIC + "-retry-1000", first.topic());
+        assertEquals("key", first.key());
+        assertEquals("value", first.value());
+        assertEquals(TOPIC, string(first.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC));
+        assertEquals(3, ByteBuffer.wrap(first.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_PARTITION).value()).getInt());
+        assertEquals(42, ByteBuffer.wrap(first.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+        assertEquals(IllegalStateException.class.getName(), string(first.headers(), KafkaHeaders.DLT_EXCEPTION_FQCN));
+        assertEquals("first", string(first.headers(), KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+
+        ProducerRecord<String, String> second = publish(record(first.topic(), 0, 7, first.headers()), new IllegalArgumentException("second"));
+        assertEquals(TOPIC + "-retry-10000", second.topic());
+
+        // The original headers are kept from the first failure and the exception headers are replaced
+        ProducerRecord<String, String> last = publish(record(second.topic(), 1, 9, second.headers()), new IllegalArgumentException("last"));
+        assertEquals(TOPIC + "-dlt", last.topic());
+        assertEquals(1, count(last.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC));
+        assertEquals(TOPIC, string(last.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC));
+        assertEquals(42, ByteBuffer.wrap(last.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+        assertEquals(1, count(last.headers(), KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+        assertEquals("last", string(last.headers(), KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+        assertEquals(IllegalArgumentException.class.getName(), string(last.headers(), KafkaHeaders.DLT_EXCEPTION_FQCN));
+    }
+
+    private ProducerRecord<String, String> publish(ConsumerRecord<String, String> record, Exception exception) {
+        publisher.publishFailure(record, exception);
+        return sent.get(sent.size() - 1);
+    }
+
+    private static ConsumerRecord<String, String> record(String topic, int partition, long offset, Headers headers) {
+        return new ConsumerRecord<>(topic, partition, offset, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                ConsumerRecord.NULL_CHECKSUM, 3, 5, "key", "value", headers);
+    }
+
+    private static String string(Headers headers, String key) {
+        return new String(headers.lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+
+    private static int count(Headers headers, String key) {
+        int count = 0;
+        for (Header ignored : headers.headers(key)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,117 @@
+package com.privalia.poc.kafka.security.load;
+
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the load generator offline, against an embedded broker, with a consumer recording the end-to-end latency
+ */
+class LoadGeneratorTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGeneratorTests.class);
+
+    private static final String TOPIC = "sim-poc-load-test";
+
+    private static EmbeddedKafkaBroker broker;
+
+    private static KafkaTemplate<String, String> template;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, true, 4, TOPIC);
+        broker.afterPropertiesSet();
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 2);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void reportsTheSendAndEndToEndLatencies() throws Exception {
+        EndToEndLatencyRecorder recorder = new EndToEndLatencyRecorder();
+        LoadGenerator generator = new LoadGenerator(template, TOPIC, recorder, new RandomTextGenerator(),
+                500, 3, 2, 100, 100, 2000, "exponential", 10000);
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "sim-poc-load-test");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread consumerThread = new Thread(() -> {
+            try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props)) {
+                consumer.subscribe(Collections.singletonList(TOPIC));
+                while (running.get()) {
+                    for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                        recorder.record(record);
+                    }
+                }
+            }
+        });
+        consumerThread.start();
+
+        LoadTestReport report;
+        try {
+            report = generator.run();
+        } finally {
+            running.set(false);
+            consumerThread.join();
+        }
+
+        LOGGER.info(">>> Load test report:\n{}", report);
+
+        assertEquals(0, report.getFailed());
+        assertEquals(1500, report.getSent());
+        assertEquals(report.getSent(), report.getSendLatency().getTotalCount());
+        assertEquals(report.getSent(), report.getEndToEndLatency().getTotalCount());
+        assertTrue(report.getEndToEndLatency().getValueAtPercentile(50) > 0);
+    }
+
+    @Test
+    void measuresTheEndToEndLatencyFromTheScheduledTime() {
+        // A message scheduled one second ago and sent late: the delay is part of its latency
+        RecordHeaders headers = new RecordHeaders();
+        EndToEndLatencyRecorder.stamp(headers, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+        EndToEndLatencyRecorder recorder = new EndToEndLatencyRecorder();
+        recorder.record(new ConsumerRecord<>(TOPIC, 0, 0, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                ConsumerRecord.NULL_CHECKSUM, 0, 0, null, "value", headers));
+        assertTrue(recorder.getIntervalHistogram().getMaxValue() >= TimeUnit.SECONDS.toMicros(1));
+    }
+}
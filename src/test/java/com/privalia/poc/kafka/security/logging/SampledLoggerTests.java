@@ -0,0 +1,163 @@
+package com.privalia.poc.kafka.security.logging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks which messages are emitted by the sampled logger in every mode
+ */
+class SampledLoggerTests {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong nanoTime = new AtomicLong(5 * SECOND);
+
+    private Logger logger;
+
+    @BeforeEach
+    void createLogger() {
+        logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        when(logger.isErrorEnabled()).thenReturn(true);
+    }
+
+    @Test
+    void allEmitsEveryMessage() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.ALL);
+        for (int index = 0; index < 5; index++) {
+            sampled.info("message {}", index);
+        }
+        sampled.error("failure {}", "value");
+
+        assertEquals(5, emitted("info"));
+        assertEquals(1, emitted("error"));
+    }
+
+    @Test
+    void sampleEmitsOneInNMessagesAndEveryError() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.SAMPLE);
+        for (int index = 0; index < 7; index++) {
+            sampled.info("message {}", index);
+        }
+        sampled.error("failure {}", "value");
+        sampled.error("failure {}", "value");
+
+        verify(logger).info("message {}", new Object[] { 0 });
+        verify(logger).info("message {}", new Object[] { 3 });
+        verify(logger).info("message {}", new Object[] { 6 });
+        assertEquals(3, emitted("info"));
+        assertEquals(2, emitted("error"));
+    }
+
+    @Test
+    void rateEmitsUpToXMessagesPerSecond() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.RATE);
+        for (int index = 0; index < 5; index++) {
+            sampled.info("message {}", index);
+        }
+        assertEquals(2, emitted("info"));
+
+        // The next second opens a new window
+        nanoTime.addAndGet(SECOND);
+        for (int index = 5; index < 10; index++) {
+            sampled.info("message {}", index);
+        }
+        verify(logger).info("message {}", new Object[] { 5 });
+        verify(logger).info("message {}", new Object[] { 6 });
+        assertEquals(4, emitted("info"));
+
+        sampled.error("failure {}", "value");
+        assertEquals(1, emitted("error"));
+    }
+
+    @Test
+    void rateNeverEmitsMoreThanXMessagesPerSecondFromManyThreads() throws InterruptedException {
+        SampledLogger sampled = new SampledLogger(logger, SampledLogger.Mode.RATE, 3, 100, 10, nanoTime::get);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int index = 0; index < 1000; index++) {
+                    sampled.info("message {}", index);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, emitted("info"));
+    }
+
+    @Test
+    void errorEmitsOnlyTheErrors() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.ERROR);
+        sampled.info("message {}", 1);
+        sampled.error("failure {}", "value");
+
+        assertFalse(sampled.isInfoEnabled());
+        assertEquals(0, emitted("info"));
+        assertEquals(1, emitted("error"));
+    }
+
+    @Test
+    void offEmitsNothing() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.OFF);
+        sampled.info("message {}", 1);
+        sampled.error("failure {}", "value");
+
+        assertFalse(sampled.isInfoEnabled());
+        assertEquals(0, emitted("info"));
+        assertEquals(0, emitted("error"));
+    }
+
+    @Test
+    void truncatesTheLongTextArguments() {
+        SampledLogger sampled = sampledLogger(SampledLogger.Mode.ALL);
+        sampled.info("message {} {} {}", "0123456789abcdef", "short", 1234567890123456789L);
+
+        verify(logger).info("message {} {} {}", new Object[] { "0123456789...(16 chars)", "short", 1234567890123456789L });
+    }
+
+    @Test
+    void parsesTheModes() {
+        assertEquals(SampledLogger.Mode.ALL, SampledLogger.Mode.of("all"));
+        assertEquals(SampledLogger.Mode.SAMPLE, SampledLogger.Mode.of(" Sample "));
+        assertEquals(SampledLogger.Mode.RATE, SampledLogger.Mode.of("RATE"));
+        assertEquals(SampledLogger.Mode.ERROR, SampledLogger.Mode.of("error-only"));
+        assertEquals(SampledLogger.Mode.OFF, SampledLogger.Mode.of("off"));
+        assertThrows(IllegalArgumentException.class, () -> SampledLogger.Mode.of("verbose"));
+        assertThrows(IllegalArgumentException.class, () -> new SampledLogger(logger, SampledLogger.Mode.RATE, 1, 0, 10));
+    }
+
+    private long emitted(String level) {
+        return mockingDetails(logger).getInvocations().stream()
+                .filter(invocation -> level.equals(invocation.getMethod().getName()))
+                .count();
+    }
+
+    private SampledLogger sampledLogger(SampledLogger.Mode mode) {
+        return new SampledLogger(logger, mode, 3, 2, 10, nanoTime::get);
+    }
+}
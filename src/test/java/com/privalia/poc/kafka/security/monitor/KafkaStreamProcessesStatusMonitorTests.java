@@ -0,0 +1,262 @@
+package com.privalia.poc.kafka.security.monitor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.apache.kafka.streams.processor.TaskMetadata;
+import org.apache.kafka.streams.processor.ThreadMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the restarts with backoff of the crashed processes, the snapshot of their tasks,
+ * and the parallel start, stop and drain of all the processes
+ */
+class KafkaStreamProcessesStatusMonitorTests {
+
+    private static final String PROCESS = "sim-kafka-streams-test";
+
+    private KafkaStreamProcessesStatusMonitor monitor;
+
+    @AfterEach
+    void destroyMonitor() {
+        if (null != monitor) {
+            monitor.destroy();
+        }
+    }
+
+    @Test
+    void backsOffAndGivesUpWhenTheProcessCrashesAfterEveryStart() {
+        StreamsBuilderFactoryBean bean = mock(StreamsBuilderFactoryBean.class);
+        monitor = newMonitor(Collections.singletonMap(PROCESS, bean), 100, 400, 3, 60000);
+        KafkaStreams.StateListener stateListener = stateListener(bean);
+        Thread.UncaughtExceptionHandler crashHandler = crashHandler(bean);
+
+        crash(crashHandler);
+        verify(bean, timeout(1000).times(1)).start();
+
+        // The process reaches RUNNING and crashes again: the backoff grows
+        running(stateListener);
+        crash(crashHandler);
+        verify(bean, timeout(1000).times(2)).start();
+
+        running(stateListener);
+        crash(crashHandler);
+        verify(bean, after(200).times(2)).start();
+        verify(bean, timeout(1000).times(3)).start();
+
+        // The maximum number of consecutive restarts is reached
+        running(stateListener);
+        crash(crashHandler);
+        verify(bean, after(600).times(3)).start();
+    }
+
+    @Test
+    void resetsTheRestartsOnlyAfterTheStablePeriod() throws Exception {
+        StreamsBuilderFactoryBean bean = mock(StreamsBuilderFactoryBean.class);
+        monitor = newMonitor(Collections.singletonMap(PROCESS, bean), 10, 10, 1, 50);
+        KafkaStreams.StateListener stateListener = stateListener(bean);
+        Thread.UncaughtExceptionHandler crashHandler = crashHandler(bean);
+
+        crash(crashHandler);
+        verify(bean, timeout(1000).times(1)).start();
+
+        // RUNNING for longer than the stable period: the crash is restarted again
+        running(stateListener);
+        Thread.sleep(100);
+        crash(crashHandler);
+        verify(bean, timeout(1000).times(2)).start();
+
+        // RUNNING for less than the stable period: the maximum number of restarts is reached
+        running(stateListener);
+        crash(crashHandler);
+        verify(bean, after(200).times(2)).start();
+
+        // A start on purpose resets the restarts
+        monitor.start(PROCESS);
+        verify(bean, times(3)).start();
+        crash(crashHandler);
+        verify(bean, timeout(1000).times(4)).start();
+    }
+
+    @Test
+    void matchesTheRestoresWithTheTasksOfTheirSubtopology() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, PROCESS);
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        StreamsBuilderFactoryBean factoryBean = new StreamsBuilderFactoryBean(new KafkaStreamsConfiguration(config));
+        factoryBean.afterPropertiesSet();
+        StreamsBuilder builder = factoryBean.getObject();
+        builder.stream("sim-poc-test1", Consumed.with(Serdes.String(), Serdes.String()))
+                .groupByKey()
+                .count(Materialized.as("store-a"))
+                .toStream()
+                .map((key, count) -> KeyValue.pair(count.toString(), key))
+                .groupByKey(Grouped.with(Serdes.String(), Serdes.String()))
+                .count(Materialized.as("store-b"));
+
+        KafkaStreams kafkaStreams = mock(KafkaStreams.class);
+        ThreadMetadata thread = mock(ThreadMetadata.class);
+        Set<TaskMetadata> activeTasks = new LinkedHashSet<>();
+        activeTasks.add(new TaskMetadata("0_1", Collections.singleton(new TopicPartition("sim-poc-test1", 1))));
+        activeTasks.add(new TaskMetadata("1_1", Collections.singleton(new TopicPartition(PROCESS + "-store-a-repartition", 1))));
+        when(thread.threadName()).thenReturn(PROCESS + "-StreamThread-1");
+        when(thread.threadState()).thenReturn("PARTITIONS_ASSIGNED");
+        when(thread.activeTasks()).thenReturn(activeTasks);
+        when(thread.standbyTasks()).thenReturn(Collections.emptySet());
+        when(kafkaStreams.localThreadsMetadata()).thenReturn(Collections.singleton(thread));
+
+        StreamsBuilderFactoryBean bean = spy(factoryBean);
+        doReturn(kafkaStreams).when(bean).getKafkaStreams();
+        monitor = newMonitor(Collections.singletonMap(PROCESS, bean), 1000, 60000, 10, 60000);
+        ArgumentCaptor<StateRestoreListener> restoreListener = ArgumentCaptor.forClass(StateRestoreListener.class);
+        verify(bean).setStateRestoreListener(restoreListener.capture());
+
+        TopicPartition changelog = new TopicPartition(PROCESS + "-store-b-changelog", 1);
+        restoreListener.getValue().onRestoreStart(changelog, "store-b", 0, 100);
+        restoreListener.getValue().onBatchRestored(changelog, "store-b", 50, 50);
+
+        List<KafkaStreamProcessesStatusMonitor.TaskStatus> snapshot = monitor.getTaskSnapshot(PROCESS);
+        assertEquals(2, snapshot.size());
+        assertEquals("0_1", snapshot.get(0).getTaskId());
+        assertTrue(snapshot.get(0).getRestoring().isEmpty());
+        assertEquals("1_1", snapshot.get(1).getTaskId());
+        assertEquals(Collections.singletonMap("store-b", 0.5), snapshot.get(1).getRestoring());
+    }
+
+    @Test
+    void startsAndStopsAllTheProcessesInParallel() {
+        StreamsBuilderFactoryBean first = mock(StreamsBuilderFactoryBean.class);
+        StreamsBuilderFactoryBean second = mock(StreamsBuilderFactoryBean.class);
+        Map<String, StreamsBuilderFactoryBean> beanMap = new LinkedHashMap<>();
+        beanMap.put(PROCESS + "-1", first);
+        beanMap.put(PROCESS + "-2", second);
+        monitor = newMonitor(beanMap, 1000, 60000, 10, 60000);
+
+        // Every start waits for the other one: they only finish if they run at the same time
+        CountDownLatch starting = new CountDownLatch(2);
+        AtomicInteger startedTogether = new AtomicInteger();
+        doAnswer(invocation -> {
+            starting.countDown();
+            if (starting.await(5, TimeUnit.SECONDS)) {
+                startedTogether.incrementAndGet();
+            }
+            return null;
+        }).when(first).start();
+        doAnswer(invocation -> {
+            starting.countDown();
+            if (starting.await(5, TimeUnit.SECONDS)) {
+                startedTogether.incrementAndGet();
+            }
+            return null;
+        }).when(second).start();
+
+        monitor.startAll();
+        assertEquals(2, startedTogether.get());
+
+        when(first.isRunning()).thenReturn(true);
+        when(second.isRunning()).thenReturn(false);
+        monitor.stopAll();
+        verify(first).stop();
+        verify(second, never()).stop();
+    }
+
+    @Test
+    void drainsAllTheProcessesBeforeTheDeadline() {
+        StreamsBuilderFactoryBean drained = mock(StreamsBuilderFactoryBean.class);
+        StreamsBuilderFactoryBean stuck = mock(StreamsBuilderFactoryBean.class);
+        KafkaStreams drainedStreams = mock(KafkaStreams.class);
+        KafkaStreams stuckStreams = mock(KafkaStreams.class);
+        when(drained.isRunning()).thenReturn(true);
+        when(drained.getKafkaStreams()).thenReturn(drainedStreams);
+        when(drainedStreams.close(any(Duration.class))).thenReturn(true);
+        when(stuck.isRunning()).thenReturn(true);
+        when(stuck.getKafkaStreams()).thenReturn(stuckStreams);
+        when(stuckStreams.close(any(Duration.class))).thenReturn(false);
+        Map<String, StreamsBuilderFactoryBean> beanMap = new LinkedHashMap<>();
+        beanMap.put(PROCESS + "-1", drained);
+        beanMap.put(PROCESS + "-2", stuck);
+        monitor = newMonitor(beanMap, 1000, 60000, 10, 60000);
+
+        assertFalse(monitor.drainAll(Duration.ofSeconds(5)));
+        ArgumentCaptor<Duration> remaining = ArgumentCaptor.forClass(Duration.class);
+        verify(drainedStreams).close(remaining.capture());
+        assertTrue(remaining.getValue().compareTo(Duration.ofSeconds(5)) <= 0);
+        verify(drained).stop();
+        verify(stuck, never()).stop();
+
+        // The processes drained are not restarted by their crashes
+        crash(crashHandler(drained));
+        verify(drained, after(1500).never()).start();
+    }
+
+    private KafkaStreamProcessesStatusMonitor newMonitor(
+            Map<String, StreamsBuilderFactoryBean> beanMap,
+            long initialBackoff,
+            long maxBackoff,
+            int maxRestarts,
+            long stablePeriod
+    ) {
+        return new KafkaStreamProcessesStatusMonitor(
+                beanMap, new SimpleMeterRegistry(), initialBackoff, maxBackoff, maxRestarts, stablePeriod, 4, 30000);
+    }
+
+    private static KafkaStreams.StateListener stateListener(StreamsBuilderFactoryBean bean) {
+        ArgumentCaptor<KafkaStreams.StateListener> captor = ArgumentCaptor.forClass(KafkaStreams.StateListener.class);
+        verify(bean).setStateListener(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Thread.UncaughtExceptionHandler crashHandler(StreamsBuilderFactoryBean bean) {
+        ArgumentCaptor<Thread.UncaughtExceptionHandler> captor = ArgumentCaptor.forClass(Thread.UncaughtExceptionHandler.class);
+        verify(bean).setUncaughtExceptionHandler(captor.capture());
+        return captor.getValue();
+    }
+
+    private static void running(KafkaStreams.StateListener stateListener) {
+        stateListener.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.CREATED);
+        stateListener.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+    }
+
+    private static void crash(Thread.UncaughtExceptionHandler crashHandler) {
+        crashHandler.uncaughtException(Thread.currentThread(), new IllegalStateException("Poison pill"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.privalia.poc.kafka.security.producer;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the asynchronous and batch publish paths of the producer with a mocked template
+ */
+class KafkaProducerTests {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private static final int PARTITION = 3;
+
+    private KafkaTemplate<String, String> template;
+
+    private KafkaProducer producer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void createProducer() {
+        template = mock(KafkaTemplate.class);
+        producer = new KafkaProducer(template, TOPIC, 1, new SimpleMeterRegistry(), new SampledLoggerFactory(new StandardEnvironment()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void releasesTheSendInFlightWhenTheProducerThrows() {
+        SerializationException error = new SerializationException("Can't serialize");
+        when(template.send(any(ProducerRecord.class))).thenThrow(error);
+
+        // A single send in flight: a leaked one would block the next send and the flush forever
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int num = 0; num < 3; num++) {
+                CompletableFuture<SendResult<String, String>> future = producer.publishAsync("message " + num);
+                ExecutionException thrown = assertThrows(ExecutionException.class, future::get);
+                assertTrue(thrown.getCause() instanceof KafkaProducerException);
+                assertSame(error, thrown.getCause().getCause());
+            }
+            producer.flush();
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsEveryMessageOfABatchWithPartialFailures() {
+        long[] nextOffset = { 100 };
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            SettableListenableFuture<SendResult<String, String>> future = new SettableListenableFuture<>();
+            switch (record.value()) {
+                case "unserializable":
+                    throw new SerializationException("Can't serialize");
+                case "too large":
+                    future.setException(new RecordTooLargeException("Too large"));
+                    break;
+                case "timeout":
+                    future.setException(new TimeoutException("Expired in the accumulator"));
+                    break;
+                default:
+                    RecordMetadata metadata = new RecordMetadata(new TopicPartition(TOPIC, PARTITION), nextOffset[0]++, 0, 0L, null, 0, 0);
+                    future.set(new SendResult<>(record, metadata));
+            }
+            return future;
+        });
+
+        List<KafkaMessage> messages = Arrays.asList(
+                new KafkaMessage("ok 0", "key"),
+                new KafkaMessage("too large"),
+                new KafkaMessage("ok 2"),
+                new KafkaMessage("timeout"),
+                new KafkaMessage("unserializable"),
+                new KafkaMessage("ok 5")
+        );
+        KafkaProducerBatchResult result = producer.publishAll(messages);
+        verify(template, times(1)).flush();
+
+        // One result per message, in the order of the batch
+        assertEquals(TOPIC, result.getTopic());
+        assertEquals(messages.size(), result.size());
+        for (int index = 0; index < messages.size(); index++) {
+            assertEquals(index, result.getResults().get(index).getIndex());
+            assertSame(messages.get(index), result.getResults().get(index).getMessage());
+        }
+        assertTrue(result.hasFailures());
+
+        // The offset of every message published
+        List<KafkaProducerBatchResult.RecordResult> succeeded = result.getSucceeded();
+        assertEquals(3, succeeded.size());
+        assertEquals(Arrays.asList(0, 2, 5), Arrays.asList(succeeded.get(0).getIndex(), succeeded.get(1).getIndex(), succeeded.get(2).getIndex()));
+        for (int num = 0; num < succeeded.size(); num++) {
+            assertTrue(succeeded.get(num).isSuccess());
+            assertNull(succeeded.get(num).getException());
+            assertEquals(PARTITION, succeeded.get(num).getPartition());
+            assertEquals(100 + num, succeeded.get(num).getOffset());
+        }
+
+        // The failed ones, only the timeout is worth publishing again
+        List<KafkaProducerBatchResult.RecordResult> failed = result.getFailed();
+        assertEquals(3, failed.size());
+        for (KafkaProducerBatchResult.RecordResult recordResult : failed) {
+            assertFalse(recordResult.isSuccess());
+            assertEquals(-1, recordResult.getPartition());
+            assertEquals(-1L, recordResult.getOffset());
+            assertEquals(recordResult.getMessage().getValue(), recordResult.getException().getValue());
+        }
+        assertEquals(1, result.getRetriable().size());
+        assertEquals("timeout", result.getRetriable().get(0).getValue());
+        assertTrue(failed.get(1).getException().getCause() instanceof TimeoutException);
+        assertFalse(failed.get(0).getException().isRetriable());
+        assertFalse(failed.get(2).getException().isRetriable());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsABatchWithoutFailures() {
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            SettableListenableFuture<SendResult<String, String>> future = new SettableListenableFuture<>();
+            future.set(new SendResult<>(record, new RecordMetadata(new TopicPartition(TOPIC, PARTITION), 7, 0, 0L, null, 0, 0)));
+            return future;
+        });
+
+        KafkaProducerBatchResult result = producer.publishAll(Arrays.asList(new KafkaMessage("one"), new KafkaMessage("two")));
+        assertFalse(result.hasFailures());
+        assertEquals(2, result.getSucceeded().size());
+        assertTrue(result.getFailed().isEmpty());
+        assertTrue(result.getRetriable().isEmpty());
+    }
+}
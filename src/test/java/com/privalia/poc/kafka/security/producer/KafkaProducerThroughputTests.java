@@ -0,0 +1,95 @@
+package com.privalia.poc.kafka.security.producer;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the asynchronous publish path delivers every message in order against an embedded broker,
+ * and logs its throughput compared with the synchronous path
+ */
+class KafkaProducerThroughputTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaProducerThroughputTests.class);
+
+    private static final String TOPIC = "sim-poc-throughput";
+
+    private static final int MESSAGES = 2000;
+
+    private static EmbeddedKafkaBroker broker;
+
+    private static KafkaTemplate<String, String> template;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, true, 1, TOPIC);
+        broker.afterPropertiesSet();
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 2);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void asyncPublishDeliversEveryMessageInOrder() throws Exception {
+        KafkaProducer producer = new KafkaProducer(template, TOPIC, 1000, new SimpleMeterRegistry(), new SampledLoggerFactory(new StandardEnvironment()));
+
+        // Warm up the producer connection and metadata
+        producer.publish("warm-up");
+
+        long start = System.nanoTime();
+        for (int num = 0; num < MESSAGES; num++) {
+            producer.publish("sync message " + num);
+        }
+        double syncRate = MESSAGES / ((System.nanoTime() - start) / 1e9);
+
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>();
+        start = System.nanoTime();
+        for (int num = 0; num < MESSAGES; num++) {
+            futures.add(producer.publishAsync("async message " + num));
+        }
+        producer.flush();
+        double asyncRate = MESSAGES / ((System.nanoTime() - start) / 1e9);
+
+        LOGGER.info(">>> Publish throughput: sync={} records/sec - async={} records/sec",
+                String.format("%.0f", syncRate), String.format("%.0f", asyncRate));
+
+        // Every send is completed after the flush, and the messages are in the partition in the order they were sent
+        long firstOffset = futures.get(0).getNow(null).getRecordMetadata().offset();
+        for (int num = 0; num < MESSAGES; num++) {
+            CompletableFuture<SendResult<String, String>> future = futures.get(num);
+            assertTrue(future.isDone() && !future.isCompletedExceptionally());
+            assertEquals(firstOffset + num, future.getNow(null).getRecordMetadata().offset());
+        }
+        assertEquals(MESSAGES + 1, firstOffset);
+    }
+}
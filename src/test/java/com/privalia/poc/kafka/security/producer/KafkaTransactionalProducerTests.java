@@ -0,0 +1,116 @@
+package com.privalia.poc.kafka.security.producer;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the transactional producer groups the messages in transactions of up to N records or T milliseconds,
+ * and fails every message of an aborted transaction
+ */
+class KafkaTransactionalProducerTests {
+
+    private static final String TOPIC = "sim-poc-test1";
+
+    private final AtomicLong nextOffset = new AtomicLong();
+
+    private KafkaTemplate<String, String> template;
+
+    private KafkaTransactionalProducer producer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void mockTemplate() {
+        template = mock(KafkaTemplate.class);
+        when(template.executeInTransaction(any())).thenAnswer(invocation ->
+                invocation.<KafkaOperations.OperationsCallback<String, String, Object>>getArgument(0).doInOperations(template));
+        when(template.send(eq(TOPIC), any(), anyString())).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = new ProducerRecord<>(TOPIC, invocation.getArgument(1), invocation.getArgument(2));
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(TOPIC, 0), nextOffset.getAndIncrement(), 0, 0L, null, 0, 0);
+            SettableListenableFuture<SendResult<String, String>> future = new SettableListenableFuture<>();
+            future.set(new SendResult<>(record, metadata));
+            return future;
+        });
+    }
+
+    @AfterEach
+    void destroyProducer() {
+        if (null != producer) {
+            producer.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void commitsATransactionEveryMaxRecords() throws Exception {
+        producer = new KafkaTransactionalProducer(template, TOPIC, 3, 60000);
+
+        CompletableFuture<KafkaProducerBatchResult.RecordResult> first = producer.publish("message 0", "key");
+        producer.publish("message 1");
+        assertFalse(first.isDone());
+        verify(template, never()).executeInTransaction(any());
+
+        CompletableFuture<KafkaProducerBatchResult.RecordResult> last = producer.publish("message 2");
+        verify(template, times(1)).executeInTransaction(any());
+        assertEquals(0, first.get().getOffset());
+        assertEquals(2, last.get().getOffset());
+        verify(template).send(TOPIC, "key", "message 0");
+    }
+
+    @Test
+    void commitsThePendingMessagesAfterTheMaxInterval() throws Exception {
+        producer = new KafkaTransactionalProducer(template, TOPIC, 500, 50);
+
+        CompletableFuture<KafkaProducerBatchResult.RecordResult> future = producer.publish("message 0");
+        assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failsEveryMessageOfAnAbortedTransaction() {
+        producer = new KafkaTransactionalProducer(template, TOPIC, 500, 60000);
+        when(template.executeInTransaction(any())).thenThrow(new ProducerFencedException("Fenced"));
+
+        CompletableFuture<KafkaProducerBatchResult.RecordResult> pending = producer.publish("pending");
+        KafkaProducerBatchResult result = producer.publishAll(Arrays.asList(new KafkaMessage("message 0"), new KafkaMessage("message 1")));
+
+        assertEquals(2, result.size());
+        assertEquals(2, result.getFailed().size());
+        assertTrue(result.getSucceeded().isEmpty());
+        ExecutionException thrown = assertThrows(ExecutionException.class, pending::get);
+        assertTrue(thrown.getCause() instanceof KafkaProducerException);
+    }
+
+    @Test
+    void rejectsNonPositiveLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new KafkaTransactionalProducer(template, TOPIC, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new KafkaTransactionalProducer(template, TOPIC, 500, 0));
+    }
+}
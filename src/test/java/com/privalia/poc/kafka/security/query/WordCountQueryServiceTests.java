@@ -0,0 +1,53 @@
+package com.privalia.poc.kafka.security.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the upper bound of the prefix scans against the UTF-8 order of the store
+ */
+class WordCountQueryServiceTests {
+
+    @Test
+    void successorIncrementsTheLastCodePoint() {
+        assertEquals("lores", WordCountQueryService.successor("lorer"));
+        assertEquals("ab", WordCountQueryService.successor("aa"));
+        assertNull(WordCountQueryService.successor(""));
+    }
+
+    @Test
+    void successorSkipsTheSurrogatesAndTheMaximumCodePoint() {
+        assertEquals("a\uE000", WordCountQueryService.successor("a\uD7FF"));
+        assertEquals("b", WordCountQueryService.successor("a" + new String(Character.toChars(Character.MAX_CODE_POINT))));
+        assertNull(WordCountQueryService.successor(new String(Character.toChars(Character.MAX_CODE_POINT))));
+    }
+
+    @Test
+    void successorIsAfterTheWordsWithSupplementaryCharacters() {
+        String prefix = "caf\u00E9";
+        String word = prefix + new String(Character.toChars(0x1F600)) + "s";
+        String successor = WordCountQueryService.successor(prefix);
+
+        assertTrue(compareUtf8(prefix, word) < 0);
+        assertTrue(compareUtf8(word, successor) < 0);
+        // The previous bound, prefix + Character.MAX_VALUE, was before the word in the UTF-8 order
+        assertTrue(compareUtf8(prefix + Character.MAX_VALUE, word) < 0);
+    }
+
+    private static int compareUtf8(String left, String right) {
+        byte[] leftBytes = left.getBytes(StandardCharsets.UTF_8);
+        byte[] rightBytes = right.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(leftBytes.length, rightBytes.length); i++) {
+            int diff = (leftBytes[i] & 0xFF) - (rightBytes[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return leftBytes.length - rightBytes.length;
+    }
+}
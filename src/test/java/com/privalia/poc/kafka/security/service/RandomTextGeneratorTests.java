@@ -0,0 +1,52 @@
+package com.privalia.poc.kafka.security.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RandomTextGeneratorTests {
+
+    private final RandomTextGenerator generator = new RandomTextGenerator();
+
+    @Test
+    void seededStreamsAreReproducible() {
+        RandomTextGenerator.TextStream first = generator.newStream(42);
+        RandomTextGenerator.TextStream second = generator.newStream(42);
+        for (int num = 0; num < 100; num++) {
+            assertEquals(first.nextText(), second.nextText());
+        }
+    }
+
+    @Test
+    void writtenBytesAreTheUtf8OfTheText() {
+        RandomTextGenerator.TextStream texts = generator.newStream(7);
+        RandomTextGenerator.TextStream bytes = generator.newStream(7);
+        ByteBuffer buffer = ByteBuffer.allocate(generator.getMaxTextBytes());
+        for (int num = 0; num < 100; num++) {
+            buffer.clear();
+            int length = bytes.writeNextText(buffer);
+            assertEquals(texts.nextText(), new String(buffer.array(), 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void zipfDistributionFavoursTheFirstWords() {
+        RandomTextGenerator zipf = new RandomTextGenerator(
+                TextCorpus.of("alpha", "beta", "gamma", "delta", "epsilon"), RandomTextGenerator.Distribution.ZIPF, 1.0, 10, 10);
+        Map<String, Integer> counts = new HashMap<>();
+        RandomTextGenerator.TextStream stream = zipf.newStream(1);
+        for (int num = 0; num < 1000; num++) {
+            for (String word : stream.nextText().split(" ")) {
+                counts.merge(word, 1, Integer::sum);
+            }
+        }
+        assertTrue(counts.get("alpha") > counts.get("beta"));
+        assertTrue(counts.get("beta") > counts.get("epsilon"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.privalia.poc.kafka.security.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.KafkaException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextCorpusTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheWordsSeparatedByWhitespace() throws Exception {
+        TextCorpus corpus = TextCorpus.load(write("corpus.txt", "  lorem ipsum\n\n\tdolor  sit\r\namet \n"));
+        assertEquals(Arrays.asList("lorem", "ipsum", "dolor", "sit", "amet"), corpus.getWords());
+    }
+
+    @Test
+    void rejectsACorpusWithoutWords() throws Exception {
+        for (String text : Arrays.asList("", " \n\t \r\n  \n")) {
+            String location = write("empty.txt", text);
+            KafkaException thrown = assertThrows(KafkaException.class, () -> TextCorpus.load(location));
+            assertTrue(thrown.getMessage().startsWith("TextCorpus:"));
+        }
+    }
+
+    @Test
+    void rejectsAMissingCorpus() {
+        assertThrows(KafkaException.class, () -> TextCorpus.load("file:" + directory.resolve("missing.txt")));
+    }
+
+    private String write(String name, String text) throws Exception {
+        Path file = directory.resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return "file:" + file;
+    }
+}
@@ -0,0 +1,84 @@
+package com.privalia.poc.kafka.security.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WordTokenizerTests {
+
+    private final WordTokenizer tokenizer = new WordTokenizer(false);
+
+    private final WordTokenizer lowerCaseTokenizer = new WordTokenizer(true);
+
+    @Test
+    void punctuationSeparatesTheWords() {
+        assertEquals(Arrays.asList("Hello", "world", "It", "s", "2024"), words(tokenizer, "Hello, world! It's 2024."));
+        assertEquals(Arrays.asList("e", "mail", "a", "b", "c"), words(tokenizer, "e-mail (a/b;c)"));
+    }
+
+    @Test
+    void repeatedSeparatorsProduceNoEmptyWords() {
+        assertEquals(Arrays.asList("a", "b", "c"), words(tokenizer, "  a -- b\t\n\r  ,,c...  "));
+        assertEquals(Collections.emptyList(), words(tokenizer, " ,.;-\t\n "));
+        assertEquals(Collections.emptyList(), words(tokenizer, ""));
+        assertEquals(Collections.emptyList(), words(tokenizer, null));
+    }
+
+    @Test
+    void wordsAreLowerCasedOnlyIfConfigured() {
+        assertEquals(Arrays.asList("Hello", "WORLD", "mixedCase"), words(tokenizer, "Hello WORLD mixedCase"));
+        assertEquals(Arrays.asList("hello", "world", "mixedcase"), words(lowerCaseTokenizer, "Hello WORLD mixedCase"));
+    }
+
+    @Test
+    void nonAsciiLettersAndDigitsAreWordCharacters() {
+        // Latin letters with diacritics, a Japanese word, two Arabic-Indic digits and a no-break space
+        assertEquals(Arrays.asList("caf\u00E9", "\u00DCBER", "na\u00EFve", "\u65E5\u672C\u8A9E", "\u0661\u0662"),
+                words(tokenizer, "caf\u00E9, \u00DCBER\u00A0na\u00EFve \u00AB\u65E5\u672C\u8A9E\u00BB \u0661\u0662"));
+        assertEquals(Arrays.asList("caf\u00E9", "\u00FCber"), words(lowerCaseTokenizer, "Caf\u00C9 \u00DCBER"));
+    }
+
+    @Test
+    void titleCaseLettersAreLowerCased() {
+        // U+01C5 (Latin capital D with small z with caron) is title case, not upper case
+        assertEquals(Arrays.asList("\u01C6ungla", "\u01C6"), words(lowerCaseTokenizer, "\u01C5ungla \u01C4"));
+        assertEquals(Arrays.asList("\u01C5ungla"), words(tokenizer, "\u01C5ungla"));
+    }
+
+    @Test
+    void supplementaryCharactersAreNotSplit() {
+        // U+1D400 (mathematical bold capital A) is a letter, U+1F600 (an emoji) is a separator
+        assertEquals(Arrays.asList("\uD835\uDC00bc", "d"), words(tokenizer, "\uD835\uDC00bc\uD83D\uDE00d"));
+        assertEquals(Collections.emptyList(), words(tokenizer, "\uD83D\uDE00 \uD83D\uDE00"));
+    }
+
+    @Test
+    void mapperConvertsEveryWord() {
+        List<Integer> lengths = new ArrayList<>();
+        tokenizer.words("one, three  five", String::length).forEach(lengths::add);
+        assertEquals(Arrays.asList(3, 5, 4), lengths);
+    }
+
+    @Test
+    void exhaustedIteratorThrows() {
+        Iterator<String> words = tokenizer.words("word").iterator();
+        assertEquals("word", words.next());
+        assertFalse(words.hasNext());
+        assertThrows(NoSuchElementException.class, words::next);
+    }
+
+    private static List<String> words(WordTokenizer tokenizer, String text) {
+        List<String> words = new ArrayList<>();
+        tokenizer.words(text).forEach(words::add);
+        return words;
+    }
+}
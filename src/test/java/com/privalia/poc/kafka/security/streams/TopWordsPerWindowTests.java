@@ -0,0 +1,130 @@
+package com.privalia.poc.kafka.security.streams;
+
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks that the trending words topology writes the top words of every tumbling or hopping window only after
+ * the window closes, and keeps them in the changelogged store until the next punctuation
+ */
+class TopWordsPerWindowTests {
+
+    private static final String APPLICATION_ID = "trending-words-test";
+
+    private static final String INPUT_TOPIC = "sim-poc-test1";
+
+    private static final String OUTPUT_TOPIC = "sim-poc-test3";
+
+    private static final String TOP_WORDS_CHANGELOG = APPLICATION_ID + "-" + TopWordsPerWindow.STORE_NAME + "-changelog";
+
+    private static final long EMIT_INTERVAL_MS = 1000;
+
+    private static final ConsumerRecordFactory<String, String> RECORD_FACTORY =
+            new ConsumerRecordFactory<>(INPUT_TOPIC, new StringSerializer(), new StringSerializer());
+
+    @Test
+    void writesTheTopWordsOfATumblingWindowAfterItCloses() throws Exception {
+        try (TopologyTestDriver driver = newDriver(10000, 10000, 2)) {
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "a a b c", 0L));
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "a b", 5000L));
+            driver.advanceWallClockTime(EMIT_INTERVAL_MS);
+
+            // The window is still open
+            assertEquals(Collections.emptyList(), readOutput(driver));
+            assertEquals(Collections.emptyList(), storeContents(driver));
+
+            // Closed by the stream time: the final counts are kept in the store, trimmed to the top size
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "d", 10000L));
+            KeyValue<String, String> window = KeyValue.pair("1970-01-01T00:00:00Z/1970-01-01T00:00:10Z", "a=3,b=2");
+            assertEquals(Collections.singletonList(window), storeContents(driver));
+            assertEquals(Collections.emptyList(), readOutput(driver));
+            assertNotNull(driver.readOutput(TOP_WORDS_CHANGELOG, new StringDeserializer(), new StringDeserializer()));
+
+            // Written on the next punctuation, and removed from the store
+            driver.advanceWallClockTime(EMIT_INTERVAL_MS);
+            assertEquals(Collections.singletonList(window), readOutput(driver));
+            assertEquals(Collections.emptyList(), storeContents(driver));
+        }
+    }
+
+    @Test
+    void writesEveryHoppingWindowWhenItCloses() throws Exception {
+        try (TopologyTestDriver driver = newDriver(10000, 5000, 1)) {
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "x x", 2000L));
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "y y y", 7000L));
+
+            // Closes [0s, 10s) only: [5s, 15s) is still open
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "z", 10000L));
+            driver.advanceWallClockTime(EMIT_INTERVAL_MS);
+            assertEquals(Collections.singletonList(KeyValue.pair("1970-01-01T00:00:00Z/1970-01-01T00:00:10Z", "y=3")), readOutput(driver));
+
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "z", 15000L));
+            driver.advanceWallClockTime(EMIT_INTERVAL_MS);
+            assertEquals(Collections.singletonList(KeyValue.pair("1970-01-01T00:00:05Z/1970-01-01T00:00:15Z", "y=3")), readOutput(driver));
+            assertEquals(Collections.emptyList(), storeContents(driver));
+        }
+    }
+
+    private static List<KeyValue<String, String>> readOutput(TopologyTestDriver driver) {
+        List<KeyValue<String, String>> records = new ArrayList<>();
+        StringDeserializer deserializer = new StringDeserializer();
+        for (ProducerRecord<String, String> record = driver.readOutput(OUTPUT_TOPIC, deserializer, deserializer);
+             null != record;
+             record = driver.readOutput(OUTPUT_TOPIC, deserializer, deserializer)) {
+            records.add(KeyValue.pair(record.key(), record.value()));
+        }
+        return records;
+    }
+
+    private static List<KeyValue<String, String>> storeContents(TopologyTestDriver driver) {
+        KeyValueStore<String, String> store = driver.getKeyValueStore(TopWordsPerWindow.STORE_NAME);
+        List<KeyValue<String, String>> contents = new ArrayList<>();
+        try (KeyValueIterator<String, String> iterator = store.all()) {
+            iterator.forEachRemaining(contents::add);
+        }
+        return contents;
+    }
+
+    private static TopologyTestDriver newDriver(long windowSize, long windowAdvance, int topSize) throws Exception {
+        KafkaStreamsTrendingWordsStream stream = new KafkaStreamsTrendingWordsStream(
+                INPUT_TOPIC,
+                OUTPUT_TOPIC,
+                new WordTokenizer(false),
+                windowSize,
+                windowAdvance,
+                0,
+                topSize,
+                EMIT_INTERVAL_MS
+        );
+        StreamsBuilder builder = stream.startProcessing(new StreamsBuilder());
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, APPLICATION_ID);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory(APPLICATION_ID).toString());
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, 0);
+        return new TopologyTestDriver(builder.build(), props);
+    }
+}
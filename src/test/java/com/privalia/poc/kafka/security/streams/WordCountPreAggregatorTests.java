@@ -0,0 +1,144 @@
+package com.privalia.poc.kafka.security.streams;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the micro-batch pre-aggregation keeps the partial counts in a cached and changelogged store until they
+ * are flushed, writing fewer records to the changelog and the repartition topics than without pre-aggregation
+ */
+class WordCountPreAggregatorTests {
+
+    private static final String APPLICATION_ID = "count-words-pre-aggregation-test";
+
+    private static final String INPUT_TOPIC = "sim-poc-test1";
+
+    private static final String OUTPUT_TOPIC = "sim-poc-test2";
+
+    private static final String PARTIAL_COUNTS_CHANGELOG = APPLICATION_ID + "-" + WordCountPreAggregator.STORE_NAME + "-changelog";
+
+    private static final String COUNT_STORE = "count-words-pre-aggregation-test-store";
+
+    private static final String COUNT_REPARTITION = APPLICATION_ID + "-" + COUNT_STORE + "-repartition";
+
+    private static final ConsumerRecordFactory<String, String> RECORD_FACTORY =
+            new ConsumerRecordFactory<>(INPUT_TOPIC, new StringSerializer(), new StringSerializer());
+
+    @Test
+    void keepsThePartialCountsInTheChangelogUntilTheFlush() throws Exception {
+        try (TopologyTestDriver driver = newDriver("batch", 0)) {
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "lorem ipsum lorem"));
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "ipsum dolor"));
+
+            KeyValueStore<String, Long> partialCounts = driver.getKeyValueStore(WordCountPreAggregator.STORE_NAME);
+            assertEquals(Long.valueOf(2L), partialCounts.get("lorem"));
+            assertEquals(Long.valueOf(2L), partialCounts.get("ipsum"));
+            assertNull(driver.readOutput(OUTPUT_TOPIC));
+
+            ByteArrayDeserializer bytes = new ByteArrayDeserializer();
+            assertNotNull(driver.readOutput(PARTIAL_COUNTS_CHANGELOG, bytes, bytes));
+
+            driver.advanceWallClockTime(1000);
+
+            Map<String, Long> counts = new HashMap<>();
+            StringDeserializer keys = new StringDeserializer();
+            LongDeserializer values = new LongDeserializer();
+            for (ProducerRecord<String, Long> record = driver.readOutput(OUTPUT_TOPIC, keys, values);
+                 null != record;
+                 record = driver.readOutput(OUTPUT_TOPIC, keys, values)) {
+                counts.put(record.key(), record.value());
+            }
+            assertEquals(Long.valueOf(2L), counts.get("lorem"));
+            assertEquals(Long.valueOf(2L), counts.get("ipsum"));
+            assertEquals(Long.valueOf(1L), counts.get("dolor"));
+            assertNull(partialCounts.get("lorem"));
+        }
+    }
+
+    @Test
+    void writesFewerChangelogAndRepartitionRecordsThanWithoutPreAggregation() throws Exception {
+        long withoutPreAggregation;
+        try (TopologyTestDriver driver = newDriver("none", 10 * 1024 * 1024)) {
+            pipeMessages(driver);
+            withoutPreAggregation = countRecords(driver, COUNT_REPARTITION);
+        }
+        assertEquals(50, withoutPreAggregation);
+
+        try (TopologyTestDriver driver = newDriver("batch", 10 * 1024 * 1024)) {
+            pipeMessages(driver);
+
+            // The increments of a message are combined in the cache: at most 2 words per commit, plus 2 tombstones
+            long changelog = countRecords(driver, PARTIAL_COUNTS_CHANGELOG);
+            long repartition = countRecords(driver, COUNT_REPARTITION);
+            assertTrue(changelog <= 22, "changelog records: " + changelog);
+            assertEquals(2, repartition);
+            assertTrue(changelog + repartition < withoutPreAggregation);
+        }
+    }
+
+    /**
+     * Pipes 10 messages with 3 + 2 words and flushes the partial counts
+     */
+    private static void pipeMessages(TopologyTestDriver driver) {
+        for (int num = 0; num < 10; num++) {
+            driver.pipeInput(RECORD_FACTORY.create(INPUT_TOPIC, null, "lorem lorem lorem ipsum ipsum"));
+        }
+        driver.advanceWallClockTime(1000);
+    }
+
+    private static long countRecords(TopologyTestDriver driver, String topic) {
+        ByteArrayDeserializer bytes = new ByteArrayDeserializer();
+        long count = 0;
+        while (null != driver.readOutput(topic, bytes, bytes)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static TopologyTestDriver newDriver(String preAggregation, long cacheBytes) throws Exception {
+        KafkaStreamsReducerStream stream = new KafkaStreamsReducerStream(
+                INPUT_TOPIC,
+                OUTPUT_TOPIC,
+                new WordTokenizer(false),
+                preAggregation,
+                10000,
+                1000,
+                Stores.inMemoryKeyValueStore(COUNT_STORE),
+                Serdes.String(),
+                Serdes.Long(),
+                new SampledLoggerFactory(new StandardEnvironment())
+        );
+        StreamsBuilder builder = stream.startProcessing(new StreamsBuilder());
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, APPLICATION_ID);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory(APPLICATION_ID).toString());
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, cacheBytes);
+        return new TopologyTestDriver(builder.build(), props);
+    }
+}
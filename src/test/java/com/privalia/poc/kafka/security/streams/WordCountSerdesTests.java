@@ -0,0 +1,174 @@
+package com.privalia.poc.kafka.security.streams;
+
+import com.privalia.poc.kafka.security.logging.SampledLoggerFactory;
+import com.privalia.poc.kafka.security.service.RandomTextGenerator;
+import com.privalia.poc.kafka.security.service.WordTokenizer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the bytes per record of the internal topics and the throughput of the count-words topology
+ * with the String/Long serdes and with the dictionary/varint serdes
+ */
+class WordCountSerdesTests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WordCountSerdesTests.class);
+
+    private static final String APPLICATION_ID = "count-words-serdes-test";
+
+    private static final String STORE_NAME = "count-words-serdes-test-store";
+
+    private static final String INPUT_TOPIC = "sim-poc-test1";
+
+    private static final String OUTPUT_TOPIC = "sim-poc-test2";
+
+    private static final String REPARTITION_TOPIC = APPLICATION_ID + "-" + STORE_NAME + "-repartition";
+
+    private static final String CHANGELOG_TOPIC = APPLICATION_ID + "-" + STORE_NAME + "-changelog";
+
+    private static final int MESSAGES = 2000;
+
+    private final WordTokenizer wordTokenizer = new WordTokenizer(false);
+
+    private final RandomTextGenerator generator = new RandomTextGenerator();
+
+    @Test
+    void dictionarySerdesRoundTrip() {
+        WordDictionary dictionary = newDictionary();
+        DictionaryWordSerde wordSerde = new DictionaryWordSerde(dictionary);
+        VarLongSerde countSerde = new VarLongSerde();
+
+        byte[] known = wordSerde.serializer().serialize(REPARTITION_TOPIC, "Lorem");
+        assertEquals(1, known.length);
+        assertEquals("Lorem", wordSerde.deserializer().deserialize(REPARTITION_TOPIC, known));
+
+        byte[] unknown = wordSerde.serializer().serialize(REPARTITION_TOPIC, "unknown");
+        assertEquals(1 + "unknown".length(), unknown.length);
+        assertEquals("unknown", wordSerde.deserializer().deserialize(REPARTITION_TOPIC, unknown));
+
+        assertEquals(1, countSerde.serializer().serialize(CHANGELOG_TOPIC, 42L).length);
+        assertEquals(Long.valueOf(123456789L), countSerde.deserializer().deserialize(
+                CHANGELOG_TOPIC, countSerde.serializer().serialize(CHANGELOG_TOPIC, 123456789L)));
+    }
+
+    @Test
+    void dictionarySerdesWriteSmallerInternalRecords() throws Exception {
+        String[] texts = new String[MESSAGES];
+        for (int num = 0; num < MESSAGES; num++) {
+            texts[num] = generator.getRandomText();
+        }
+
+        for (String preAggregation : new String[] { "none", "message" }) {
+            Result plain = run(texts, preAggregation, Serdes.String(), Serdes.Long());
+            Result dictionary = run(texts, preAggregation, new DictionaryWordSerde(newDictionary()), new VarLongSerde());
+
+            LOGGER.info(">>> Count words ({}) with String/Long serdes: repartition={} bytes/record - changelog={} bytes/record - {} messages/sec",
+                    preAggregation, String.format("%.2f", plain.repartitionBytesPerRecord),
+                    String.format("%.2f", plain.changelogBytesPerRecord), String.format("%.0f", plain.messagesPerSecond));
+            LOGGER.info(">>> Count words ({}) with dictionary/varint serdes: repartition={} bytes/record - changelog={} bytes/record - {} messages/sec",
+                    preAggregation, String.format("%.2f", dictionary.repartitionBytesPerRecord),
+                    String.format("%.2f", dictionary.changelogBytesPerRecord), String.format("%.0f", dictionary.messagesPerSecond));
+
+            assertEquals(plain.outputRecords, dictionary.outputRecords);
+            assertTrue(dictionary.repartitionBytesPerRecord < plain.repartitionBytesPerRecord);
+            assertTrue(dictionary.changelogBytesPerRecord < plain.changelogBytesPerRecord);
+        }
+    }
+
+    private WordDictionary newDictionary() {
+        WordDictionary dictionary = new WordDictionary("sim-poc-words-dictionary", (short) 1, Collections.emptyMap(), Duration.ofSeconds(30));
+        Set<String> words = new LinkedHashSet<>();
+        wordTokenizer.words(String.join(" ", generator.getCorpus())).forEach(words::add);
+        for (String word : words) {
+            dictionary.register(word, dictionary.size());
+        }
+        return dictionary;
+    }
+
+    private Result run(String[] texts, String preAggregation, Serde<String> wordSerde, Serde<Long> countSerde) throws Exception {
+        KafkaStreamsReducerStream stream = new KafkaStreamsReducerStream(
+                INPUT_TOPIC,
+                OUTPUT_TOPIC,
+                wordTokenizer,
+                preAggregation,
+                10000,
+                1000,
+                Stores.inMemoryKeyValueStore(STORE_NAME),
+                wordSerde,
+                countSerde,
+                new SampledLoggerFactory(new StandardEnvironment())
+        );
+        StreamsBuilder builder = stream.startProcessing(new StreamsBuilder());
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, APPLICATION_ID);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory(APPLICATION_ID).toString());
+        props.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, 0);
+
+        ConsumerRecordFactory<String, String> recordFactory =
+                new ConsumerRecordFactory<>(INPUT_TOPIC, new StringSerializer(), new StringSerializer());
+
+        Result result = new Result();
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props)) {
+            long start = System.nanoTime();
+            for (String text : texts) {
+                driver.pipeInput(recordFactory.create(INPUT_TOPIC, null, text));
+            }
+            result.messagesPerSecond = texts.length / ((System.nanoTime() - start) / 1e9);
+            result.repartitionBytesPerRecord = bytesPerRecord(driver, REPARTITION_TOPIC);
+            result.changelogBytesPerRecord = bytesPerRecord(driver, CHANGELOG_TOPIC);
+            while (null != driver.readOutput(OUTPUT_TOPIC)) {
+                result.outputRecords++;
+            }
+        }
+        return result;
+    }
+
+    private double bytesPerRecord(TopologyTestDriver driver, String topic) {
+        ByteArrayDeserializer deserializer = new ByteArrayDeserializer();
+        long records = 0;
+        long bytes = 0;
+        for (ProducerRecord<byte[], byte[]> record = driver.readOutput(topic, deserializer, deserializer);
+             null != record;
+             record = driver.readOutput(topic, deserializer, deserializer)) {
+            records++;
+            bytes += record.key().length + (null == record.value() ? 0 : record.value().length);
+        }
+        assertTrue(records > 0, "No records in " + topic);
+        return (double) bytes / records;
+    }
+
+    private static class Result {
+
+        private double repartitionBytesPerRecord;
+
+        private double changelogBytesPerRecord;
+
+        private double messagesPerSecond;
+
+        private long outputRecords;
+    }
+}